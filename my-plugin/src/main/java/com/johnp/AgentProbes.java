@@ -0,0 +1,80 @@
+package com.johnp;
+
+import org.jacoco.core.data.ExecutionDataReader;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfoStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Probes of the JaCoCo agent instrumenting this JVM, the {@code -javaagent} added by {@code prepare-agent}.
+ * <p>
+ * The agent is reached through {@code org.jacoco.agent.rt.RT} on the system class loader, reflectively: Surefire
+ * may load the listener in an isolated class loader that does not see the agent's classes. A test boundary is one
+ * {@code getExecutionData(true)} call, which dumps the classes with hits and resets the probes in the same step.
+ */
+final class AgentProbes {
+
+    private static final String RT_CLASS = "org.jacoco.agent.rt.RT";
+    private static final String AGENT_INTERFACE = "org.jacoco.agent.rt.IAgent";
+
+    private final Object agent;
+    private final Method getExecutionData;
+    private final Method reset;
+
+    private AgentProbes(Object agent, Method getExecutionData, Method reset) {
+        this.agent = agent;
+        this.getExecutionData = getExecutionData;
+        this.reset = reset;
+    }
+
+    /**
+     * @return the running agent, or {@code null} if this JVM was started without one
+     */
+    static AgentProbes find() {
+        try {
+            Class<?> rt = Class.forName(RT_CLASS, true, ClassLoader.getSystemClassLoader());
+            Class<?> agentInterface = Class.forName(AGENT_INTERFACE, true, rt.getClassLoader());
+            Object agent = rt.getMethod("getAgent").invoke(null);
+            return new AgentProbes(agent, agentInterface.getMethod("getExecutionData", boolean.class),
+                    agentInterface.getMethod("reset"));
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        } catch (InvocationTargetException e) {
+            // ** RT.getAgent() throws IllegalStateException while the agent is not started
+            return null;
+        }
+    }
+
+    /**
+     * Dumps the execution data of every class with hits and resets all probes.
+     */
+    byte[] snapshotAndReset() {
+        try {
+            return (byte[]) getExecutionData.invoke(agent, true);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Failed to read execution data from the JaCoCo agent", e);
+        }
+    }
+
+    void reset() {
+        try {
+            reset.invoke(agent);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Failed to reset the JaCoCo agent", e);
+        }
+    }
+
+    /**
+     * Parses a {@link #snapshotAndReset()} dump into {@code store}, probes already in the store are kept.
+     */
+    static void read(byte[] executionData, ExecutionDataStore store) throws IOException {
+        ExecutionDataReader reader = new ExecutionDataReader(new ByteArrayInputStream(executionData));
+        reader.setExecutionDataVisitor(store);
+        reader.setSessionInfoVisitor(new SessionInfoStore());
+        reader.read();
+    }
+}
@@ -0,0 +1,221 @@
+package com.johnp;
+
+import com.johnp.util.CoverageFormat;
+import com.johnp.util.LatencyHistogram;
+import com.johnp.util.PipelineMetrics;
+import com.johnp.util.SpectrumStoreWriter;
+import org.jacoco.core.data.ExecutionDataStore;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.stream.IntStream;
+
+/**
+ * Writes test records to the spectrum store on a background thread.
+ * <p>
+ * The test thread only hands over the agent's execution data dumps ({@link #submit}); parsing them, mapping probes
+ * to methods, encoding and writing happen here, in batches of up to {@link #BATCH_SIZE} records per store write. The queue is bounded, so a
+ * suite that outruns the disk waits for the writer instead of buffering every probe snapshot in memory.
+ */
+class CoverageWriter implements Closeable {
+
+    static final int QUEUE_CAPACITY = 1024;
+    static final int BATCH_SIZE = 64;
+
+    // ** Per-test latencies: parsing and mapping the probes, and from submit until the record is in the store
+    static final String ANALYZE_HISTOGRAM = "analyze";
+    static final String WRITE_HISTOGRAM = "write";
+
+    private static final PendingTest END = new PendingTest(null, true, null);
+
+    private final SpectrumStoreWriter store;
+    private final ProbeIndex probeIndex;
+    private final LatencyHistogram analyzeLatency;
+    private final LatencyHistogram writeLatency;
+    private final BlockingQueue<PendingTest> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread thread;
+
+    // ** Guarded by this, submitted counts queued tests, written the ones the store has seen
+    private long submitted;
+    private long written;
+    private IOException failure;
+    private boolean closed;
+
+    CoverageWriter(SpectrumStoreWriter store, ProbeIndex probeIndex, PipelineMetrics metrics) {
+        this.store = store;
+        this.probeIndex = probeIndex;
+        this.analyzeLatency = metrics.histogram(ANALYZE_HISTOGRAM);
+        this.writeLatency = metrics.histogram(WRITE_HISTOGRAM);
+        this.thread = new Thread(this::run, "sbfl-coverage-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues the coverage of one test, blocking while the queue is full.
+     *
+     * @param executionData execution data dumps of the windows the test ran in, see
+     *                      {@link AgentProbes#snapshotAndReset()}
+     */
+    void submit(String testName, boolean passed, List<byte[]> executionData) throws InterruptedException {
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Coverage writer is closed");
+            }
+            submitted++;
+        }
+        queue.put(new PendingTest(testName, passed, executionData));
+    }
+
+    /**
+     * Waits until every submitted test is written to the store.
+     *
+     * @throws IOException the first write failure, tests submitted after it are dropped
+     */
+    synchronized void flush() throws IOException, InterruptedException {
+        while (written < submitted) {
+            wait();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    int testCount() {
+        return store.testCount();
+    }
+
+    /**
+     * Writes the remaining tests, stops the writer thread and closes the store.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            queue.put(END);
+            thread.join();
+            synchronized (this) {
+                if (failure != null) {
+                    throw failure;
+                }
+                if (written < submitted) {
+                    throw new IOException((submitted - written) + " tests were submitted after close");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing coverage", e);
+        } finally {
+            store.close();
+        }
+    }
+
+    private void run() {
+        List<PendingTest> batch = new ArrayList<>(BATCH_SIZE);
+        List<byte[]> records = new ArrayList<>(BATCH_SIZE);
+        List<PendingTest> encoded = new ArrayList<>(BATCH_SIZE);
+        boolean end = false;
+        while (!end) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                // ** Only close() ends the writer, the remaining tests still have to be written
+                continue;
+            }
+            queue.drainTo(batch, BATCH_SIZE - 1);
+
+            int dropped = 0;
+            for (PendingTest test : batch) {
+                if (test == END) {
+                    end = true;
+                    continue;
+                }
+                try {
+                    long start = System.nanoTime();
+                    records.add(encode(test));
+                    analyzeLatency.record(System.nanoTime() - start);
+                    encoded.add(test);
+                } catch (IOException | RuntimeException e) {
+                    // ** Keep the thread alive, flush() and close() wait for every submitted test
+                    System.err.println("Error encoding method coverage data for " + test.testName + ": " + e);
+                    dropped++;
+                }
+            }
+            if (write(records, dropped)) {
+                long now = System.nanoTime();
+                for (PendingTest test : encoded) {
+                    writeLatency.record(now - test.submitted);
+                }
+            }
+            batch.clear();
+            records.clear();
+            encoded.clear();
+        }
+    }
+
+    private byte[] encode(PendingTest test) throws IOException {
+        // Several windows merge into one store, a probe hit in any of them is covered
+        ExecutionDataStore hits = new ExecutionDataStore();
+        for (byte[] window : test.executionData) {
+            AgentProbes.read(window, hits);
+        }
+
+        // Intersect hit probes with the prebuilt index, sorted by ID for the delta and run encodings
+        IntStream.Builder covered = IntStream.builder();
+        probeIndex.forEachCovered(hits, covered::add);
+        IntStream sorted = covered.build().sorted();
+        int[] coveredMethods = (probeIndex.isMethods() ? sorted : sorted.distinct()).toArray();
+
+        // Method signatures live in the store's dictionary, the record only carries their IDs
+        return CoverageFormat.encodeTest(test.testName, test.passed, coveredMethods, coveredMethods.length,
+                probeIndex.size());
+    }
+
+    /**
+     * @return whether the records are in the store
+     */
+    private boolean write(List<byte[]> records, int dropped) {
+        IOException error = null;
+        boolean appended = false;
+        if (!records.isEmpty() && failure == null) {
+            try {
+                store.append(records);
+                appended = true;
+            } catch (IOException e) {
+                System.err.println("Error saving method coverage data: " + e.getMessage());
+                e.printStackTrace();
+                error = e;
+            }
+        }
+        synchronized (this) {
+            if (failure == null) {
+                failure = error;
+            }
+            written += records.size() + dropped;
+            notifyAll();
+        }
+        return appended;
+    }
+
+    private static final class PendingTest {
+        private final String testName;
+        private final boolean passed;
+        private final List<byte[]> executionData;
+        private final long submitted = System.nanoTime();
+
+        private PendingTest(String testName, boolean passed, List<byte[]> executionData) {
+            this.testName = testName;
+            this.passed = passed;
+            this.executionData = executionData;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.johnp;
+
+import com.johnp.util.CoverageFormat;
+import com.johnp.util.LatencyHistogram;
+import com.johnp.util.PipelineMetrics;
+import com.johnp.util.SpectrumStoreWriter;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coverage collection state of one test JVM, shared by the JUnit 4 and JUnit Platform listeners.
+ * <p>
+ * A reused fork runs many test classes, possibly through several listener instances and test runs, so the agent,
+ * probe index and store are set up once per JVM. Tests are tracked as windows: at every test start and finish the
+ * agent's probes are dumped and reset, and the dump is attributed to every test running at that moment. Tests
+ * that run one at a time get exactly their own coverage; tests that overlap each get the coverage of the whole
+ * time they ran, a superset instead of a misattribution.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class ForkCoverage {
+
+    private static final String COVERAGE_DIR = System.getProperty(PerTestCoverageListener.COVERAGE_DIR_PROPERTY,
+            "target/per-test-coverage/");
+    private static final String CLASSES_DIR = System.getProperty(PerTestCoverageListener.CLASSES_DIR_PROPERTY,
+            "target/classes");
+
+    private static AgentProbes agent;
+    private static ProbeIndex probeIndex;
+    private static CoverageWriter writer;
+    private static int activeRuns;
+    private static boolean shutdownHookAdded;
+
+    // ** Execution data dumps of each running test, keyed by the listener's test identity
+    private static final Map<Object, List<byte[]>> running = new HashMap<>();
+    private static long concurrentStarts;
+
+    // ** Per-test latencies while the store is open, the writer adds its own; written for the SBFL Mojo when the
+    // ** store closes. Collect is dumping and resetting the agent when a test finishes.
+    private static PipelineMetrics metrics;
+    private static LatencyHistogram collectLatency;
+
+    static Path coverageDir() {
+        return Paths.get(COVERAGE_DIR);
+    }
+
+    /**
+     * Starts a test run, the first one of the JVM opens the store.
+     */
+    static synchronized void startRun() throws IOException {
+        if (probeIndex == null) {
+            // Create output directory
+            new File(COVERAGE_DIR).mkdirs();
+
+            // Probes come from the JaCoCo agent that instruments this JVM
+            agent = AgentProbes.find();
+            if (agent == null) {
+                System.err.println("JaCoCo agent not found, tests are recorded without coverage."
+                        + " Run prepare-agent before the tests.");
+            }
+
+            // Index probe ranges of all production methods once, each test only intersects its hits with it
+            File classesDir = new File(CLASSES_DIR);
+            if (!classesDir.isDirectory()) {
+                System.err.println("Classes directory not found: " + classesDir.getAbsolutePath());
+            }
+            String granularity = System.getProperty(PerTestCoverageListener.GRANULARITY_PROPERTY,
+                    PerTestCoverageListener.GRANULARITY_METHOD);
+            probeIndex = ProbeIndex.build(classesDir, ForkCoverage::isTestClass, granularity);
+            System.out.println("Indexed " + probeIndex.size() + " " + granularity + " elements from "
+                    + classesDir.getAbsolutePath());
+        }
+        if (writer == null) {
+            // All tests of this JVM are appended to the store of its fork, later JVMs of the fork continue
+            // the same log. Records are encoded and written off the test thread.
+            metrics = new PipelineMetrics();
+            collectLatency = metrics.histogram("collect");
+            writer = new CoverageWriter(SpectrumStoreWriter.open(storeFile(), probeIndex.signatures()), probeIndex,
+                    metrics);
+            if (!shutdownHookAdded) {
+                // A fork may be ended without finishing its run, still close the log with its footer
+                Runtime.getRuntime().addShutdownHook(new Thread(ForkCoverage::closeStore));
+                shutdownHookAdded = true;
+            }
+        }
+        activeRuns++;
+    }
+
+    /**
+     * Ends a test run, the store stays open until the last test run of this JVM has finished.
+     */
+    static synchronized void finishRun() throws IOException, InterruptedException {
+        if (--activeRuns <= 0) {
+            activeRuns = 0;
+            closeStore();
+        } else if (writer != null) {
+            // Another run continues, only wait until this run's tests are written
+            writer.flush();
+        }
+        if (concurrentStarts > 0) {
+            System.out.println(concurrentStarts + " tests started while others were running, their coverage"
+                    + " includes what ran next to them");
+        }
+    }
+
+    /**
+     * Ends the current window, e.g. between test classes: what ran since the last boundary belongs to the running
+     * tests, or to none.
+     */
+    static synchronized void boundary() {
+        if (agent == null) {
+            return;
+        }
+        if (running.isEmpty()) {
+            agent.reset();
+            return;
+        }
+        byte[] executionData = agent.snapshotAndReset();
+        for (List<byte[]> windows : running.values()) {
+            windows.add(executionData);
+        }
+    }
+
+    static synchronized void testStarted(Object test) {
+        boundary();
+        if (!running.isEmpty()) {
+            concurrentStarts++;
+        }
+        running.put(test, new ArrayList<>(1));
+    }
+
+    /**
+     * Records the coverage of a test started with {@link #testStarted}.
+     */
+    static synchronized void testFinished(Object test, String testName, boolean passed) {
+        if (!running.containsKey(test)) {
+            // Finished without a matching start, there is no coverage that belongs to it
+            return;
+        }
+        long start = System.nanoTime();
+        boundary();
+        if (collectLatency != null) {
+            collectLatency.record(System.nanoTime() - start);
+        }
+        List<byte[]> windows = running.remove(test);
+
+        if (writer == null) {
+            System.err.println("Spectrum store is closed, coverage of " + testName + " is lost");
+            return;
+        }
+        // Parsing and mapping the probes to methods happen on the writer thread
+        try {
+            writer.submit(testName, passed, windows);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Interrupted while saving method coverage data for " + testName);
+        }
+    }
+
+    static Path storeFile() {
+        String partition = partition();
+        return partition == null
+                ? Paths.get(COVERAGE_DIR, CoverageFormat.STORE_FILE)
+                : Paths.get(COVERAGE_DIR, CoverageFormat.partitionFile(partition));
+    }
+
+    /**
+     * @return the partition of this fork, or {@code null} when all tests go to the single store
+     */
+    private static String partition() {
+        String partition = System.getProperty(PerTestCoverageListener.PARTITION_PROPERTY);
+        if (partition == null || partition.isEmpty()) {
+            return null;
+        }
+        if (partition.indexOf('$') >= 0 || partition.indexOf('{') >= 0) {
+            // Fork number placeholder was not replaced, fall back to a partition per JVM
+            partition = "pid" + ProcessHandle.current().pid();
+        }
+        return partition;
+    }
+
+    private static synchronized void closeStore() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            // Waits for the queued tests, then ends the log with its footer
+            writer.close();
+            System.out.println("Tests recorded in spectrum store: " + writer.testCount());
+        } catch (IOException e) {
+            System.err.println("Error closing spectrum store: " + e.getMessage());
+        } finally {
+            writer = null;
+        }
+        writeMetrics();
+    }
+
+    private static void writeMetrics() {
+        metrics.summary().forEach(line -> System.out.println("Coverage latency: " + line));
+        String partition = partition();
+        try {
+            // ** Single store runs are one JVM at a time, its pid keeps a later JVM from replacing the file
+            metrics.writeForkMetrics(coverageDir(),
+                    partition != null ? partition : "pid" + ProcessHandle.current().pid());
+        } catch (IOException e) {
+            System.err.println("Error writing coverage metrics: " + e.getMessage());
+        }
+    }
+
+    private static boolean isTestClass(String className) {
+        // Convert slash format to dot format for checking
+        String dotClassName = className.replace('/', '.');
+        return dotClassName.toLowerCase().contains("test") ||
+                dotClassName.toLowerCase().endsWith("tests") ||
+                dotClassName.toLowerCase().contains("mock");
+    }
+}
@@ -0,0 +1,92 @@
+package com.johnp;
+
+import com.johnp.util.BytecodeHashes;
+import com.johnp.util.CoverageFormat;
+import com.johnp.util.IncrementalPlan;
+import com.johnp.util.PipelineMetrics;
+import com.johnp.util.SpectrumPartitions;
+import com.johnp.util.SpectrumSnapshot;
+import com.johnp.util.SpectrumStoreWriter;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Starts the runs of the coverage Mojos and decides which tests they have to run against the snapshot of the
+ * previous build, see {@link SpectrumSnapshot}. The SBFL Mojo later merges what they recorded into that snapshot.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class IncrementalCoverage {
+
+    static final String COVERAGE_DIR = "per-test-coverage";
+
+    private static final String SUREFIRE = "org.apache.maven.plugins:maven-surefire-plugin";
+
+    /**
+     * Starts a coverage run, incremental or not, with a new spectrum store and without the fork partitions and
+     * metrics of the previous run, so they only receive this run's tests.
+     */
+    static void startRun(MavenProject project) throws IOException {
+        Path coverageDir = Paths.get(project.getBuild().getDirectory(), COVERAGE_DIR);
+        SpectrumStoreWriter.reset(coverageDir.resolve(CoverageFormat.STORE_FILE));
+        SpectrumPartitions.delete(coverageDir);
+        PipelineMetrics.deleteForkMetrics(coverageDir);
+    }
+
+    /**
+     * Computes which tests to run against the snapshot of the previous build. A snapshot of another granularity
+     * cannot be extended, every test runs again.
+     */
+    static IncrementalPlan prepare(MavenProject project, String granularity, Log log) throws IOException {
+        String target = project.getBuild().getDirectory();
+        BytecodeHashes hashes = scanHashes(project);
+        SpectrumSnapshot snapshot = SpectrumSnapshot.load(Paths.get(target, CoverageFormat.SNAPSHOT_DIR));
+        if (snapshot != null && snapshot.testCount() > 0 && !snapshot.granularity().equals(granularity)) {
+            log.info("Spectrum snapshot was recorded at another granularity than " + granularity);
+            snapshot = null;
+        }
+        IncrementalPlan plan = snapshot == null ? IncrementalPlan.full() : snapshot.plan(hashes);
+
+        if (snapshot == null) {
+            log.info("No spectrum snapshot found, collecting coverage of every test");
+        } else if (plan.isEmpty()) {
+            log.info("Spectrum snapshot of " + snapshot.testCount() + " tests is up to date, no tests to run");
+        } else {
+            log.info("Spectrum snapshot of " + snapshot.testCount() + " tests: " + plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Hashes the compiled classes and resources of {@code project} along with its test environment: the
+     * artifacts on the test classpath, the JVM running the build and the project's argLine and Surefire
+     * configuration. The Mojo has to resolve the test dependencies, or the classpath reads as empty.
+     */
+    static BytecodeHashes scanHashes(MavenProject project) throws IOException {
+        List<String> environment = new ArrayList<>();
+        for (Artifact artifact : project.getArtifacts()) {
+            // ** Snapshot dependencies keep their version, their file changes
+            File file = artifact.getFile();
+            environment.add(artifact.getId() + (file == null ? "" : " " + file.length() + " " + file.lastModified()));
+        }
+        Collections.sort(environment);
+        environment.add("java " + System.getProperty("java.home") + " " + System.getProperty("java.version"));
+        // ** The original model, JaCoCo's prepare-agent adds its agent to the argLine of the running build
+        environment.add("argLine " + project.getOriginalModel().getProperties().getProperty("argLine", ""));
+        Plugin surefire = project.getPlugin(SUREFIRE);
+        environment.add("surefire " + (surefire == null ? "" : surefire.getConfiguration()));
+        return BytecodeHashes.scan(Paths.get(project.getBuild().getOutputDirectory()),
+                Paths.get(project.getBuild().getTestOutputDirectory()), environment);
+    }
+}
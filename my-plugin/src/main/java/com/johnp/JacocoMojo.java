@@ -1,10 +1,12 @@
 package com.johnp;
 
+import com.johnp.util.IncrementalPlan;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.settings.Settings;
 import org.apache.maven.shared.invoker.*;
@@ -16,7 +18,8 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 
-@Mojo(name = "jacocoSurefireCoverage", defaultPhase = LifecyclePhase.TEST)
+@Mojo(name = "jacocoSurefireCoverage", defaultPhase = LifecyclePhase.TEST,
+        requiresDependencyResolution = ResolutionScope.TEST)
 public class JacocoMojo extends AbstractMojo {
 
     @Parameter(defaultValue = "${project}", readonly = true, required = true)
@@ -34,12 +37,57 @@ public class JacocoMojo extends AbstractMojo {
     @Parameter(property = "jacocoDestFile")
     private String jacocoDestFile;
 
+    /**
+     * Only run the tests affected by changes since the spectrum snapshot of the previous build.
+     */
+    @Parameter(property = "sbfl.incremental", defaultValue = "true")
+    private boolean incremental;
+
+    /**
+     * Number of parallel test JVMs collecting coverage, a number or a multiple of the cores like {@code 1C}.
+     */
+    @Parameter(property = "sbfl.forkCount", defaultValue = "1C")
+    private String forkCount;
+
+    /**
+     * Spectrum elements, {@code method}, {@code line} or {@code branch}. Line spectra are 10 to 50 times wider,
+     * branch spectra hold the outgoing edges of conditional jumps and switches.
+     */
+    @Parameter(property = "sbfl.granularity", defaultValue = PerTestCoverageListener.GRANULARITY_METHOD)
+    private String granularity;
+
+    /**
+     * Runs the tests of each fork one at a time, so every test gets exactly its own coverage. Parallelism comes from
+     * {@code sbfl.forkCount} instead.
+     */
+    @Parameter(property = "sbfl.serialTests", defaultValue = "true")
+    private boolean serialTests;
+
+    private IncrementalPlan plan = IncrementalPlan.full();
+
     public void execute() throws MojoExecutionException {
         if (skipTests) {
             getLog().info("Tests are skipped.");
             return;
         }
 
+        try {
+            IncrementalCoverage.startRun(project);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to clear the coverage of the previous run", e);
+        }
+
+        if (incremental) {
+            try {
+                plan = IncrementalCoverage.prepare(project, granularity, getLog());
+            } catch (IOException e) {
+                throw new MojoExecutionException("Failed to read the spectrum snapshot", e);
+            }
+            if (plan.isEmpty()) {
+                return;
+            }
+        }
+
         try {
             // Execute the plugin sequence
             executeJaCoCoAndTests();
@@ -135,11 +183,23 @@ public class JacocoMojo extends AbstractMojo {
         // Set Surefire properties
         Properties props = new Properties();
         props.setProperty("maven.test.failure.ignore", String.valueOf(testFailureIgnore));
-        props.setProperty("forkCount", "1");
-        props.setProperty("reuseForks", "false");
+        props.setProperty("forkCount", forkCount);
+        props.setProperty("reuseForks", "true");
+        if (!plan.isFull()) {
+            // ** Only the tests affected since the last spectrum snapshot, deleted selections are not an error
+            props.setProperty("test", plan.testSelection());
+            props.setProperty("surefire.failIfNoSpecifiedTests", "false");
+        }
 
 //        // CRITICAL FIX: Add JaCoCo argLine (this was the main missing piece!)
-        props.setProperty("argLine", "${jacocoArgLine}");
+        props.setProperty("argLine", "${jacocoArgLine}"
+                + systemProperty(PerTestCoverageListener.PARTITION_PROPERTY, "${surefire.forkNumber}")
+                + systemProperty(PerTestCoverageListener.COVERAGE_DIR_PROPERTY,
+                new File(project.getBuild().getDirectory(), IncrementalCoverage.COVERAGE_DIR).getAbsolutePath())
+                + systemProperty(PerTestCoverageListener.CLASSES_DIR_PROPERTY, project.getBuild().getOutputDirectory())
+                + systemProperty(PerTestCoverageListener.GRANULARITY_PROPERTY, granularity)
+                // ** System properties override the project's junit-platform.properties, JUnit 4 ignores it
+                + (serialTests ? systemProperty(JacocoSurefireInvokerMojo.SERIAL_EXECUTION, "false") : ""));
 
         // CRITICAL FIX: Configure listener properly for Surefire 3.0+
         String listenerClass = "com.johnp.PerTestCoverageListener";
@@ -172,6 +232,13 @@ public class JacocoMojo extends AbstractMojo {
         executeWithInvoker(request, "Surefire tests");
     }
 
+    /**
+     * @return {@code -Dkey=value} for the argLine, quoted as a whole so paths with spaces stay one argument
+     */
+    static String systemProperty(String key, String value) {
+        return " \"-D" + key + "=" + value + "\"";
+    }
+
     private void executeWithInvoker(InvocationRequest request, String stepName)
             throws MavenInvocationException {
 
@@ -1,5 +1,6 @@
 package com.johnp;
 
+import com.johnp.util.IncrementalPlan;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.BuildPluginManager;
@@ -9,13 +10,26 @@ import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import static org.twdata.maven.mojoexecutor.MojoExecutor.*;
 
-@Mojo(name = "myCoverage", defaultPhase = LifecyclePhase.TEST)
+@Mojo(name = "myCoverage", defaultPhase = LifecyclePhase.TEST,
+        requiresDependencyResolution = ResolutionScope.TEST)
 public class JacocoSurefireInvokerMojo extends AbstractMojo {
 
+    static final String PROVIDER_JUNIT4 = "junit4";
+    static final String PROVIDER_JUNIT_PLATFORM = "junit-platform";
+    static final String SERIAL_EXECUTION = "junit.jupiter.execution.parallel.enabled";
+
     @Parameter(defaultValue = "${session}", readonly = true)
     private MavenSession session;
 
@@ -25,9 +39,60 @@ public class JacocoSurefireInvokerMojo extends AbstractMojo {
     @Component
     private BuildPluginManager pluginManager;
 
+    /**
+     * Only run the tests affected by changes since the spectrum snapshot of the previous build.
+     */
+    @Parameter(property = "sbfl.incremental", defaultValue = "true")
+    private boolean incremental;
+
+    /**
+     * Number of parallel test JVMs collecting coverage, a number or a multiple of the cores like {@code 1C}.
+     */
+    @Parameter(property = "sbfl.forkCount", defaultValue = "1C")
+    private String forkCount;
+
+    /**
+     * Spectrum elements, {@code method}, {@code line} or {@code branch}. Line spectra are 10 to 50 times wider,
+     * branch spectra hold the outgoing edges of conditional jumps and switches.
+     */
+    @Parameter(property = "sbfl.granularity", defaultValue = PerTestCoverageListener.GRANULARITY_METHOD)
+    private String granularity;
+
+    /**
+     * Surefire provider running the tests, {@code junit4} or {@code junit-platform} (Jupiter, Vintage, ...).
+     */
+    @Parameter(property = "sbfl.testProvider", defaultValue = PROVIDER_JUNIT4)
+    private String testProvider;
+
+    /**
+     * Runs the tests of each fork one at a time, so every test gets exactly its own coverage. Parallelism comes from
+     * {@code sbfl.forkCount} instead. When off, Jupiter's parallel execution stays as the project configures it and
+     * overlapping tests share the coverage of what ran next to them.
+     */
+    @Parameter(property = "sbfl.serialTests", defaultValue = "true")
+    private boolean serialTests;
+
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
 
+        try {
+            IncrementalCoverage.startRun(project);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to clear the coverage of the previous run", e);
+        }
+
+        IncrementalPlan plan = IncrementalPlan.full();
+        if (incremental) {
+            try {
+                plan = IncrementalCoverage.prepare(project, granularity, getLog());
+            } catch (IOException e) {
+                throw new MojoExecutionException("Failed to read the spectrum snapshot", e);
+            }
+            if (plan.isEmpty()) {
+                return;
+            }
+        }
+
         // Set system properties to help with classloading
         System.setProperty("surefire.useSystemClassLoader", "false");
         System.setProperty("surefire.useManifestOnlyJar", "false");
@@ -61,7 +126,7 @@ public class JacocoSurefireInvokerMojo extends AbstractMojo {
                         dependencies(
                                 dependency(
                                         groupId("org.apache.maven.surefire"),
-                                        artifactId("surefire-junit4"),
+                                        artifactId(providerArtifact(testProvider)),
                                         version("3.2.5")
                                 ),
                                 dependency(
@@ -72,24 +137,7 @@ public class JacocoSurefireInvokerMojo extends AbstractMojo {
                         )
                 ),
                 goal("test"),
-                configuration(
-                        element(name("forkCount"), "1"),
-                        element(name("reuseForks"), "false"),
-                        element(name("properties"),
-                                element(name("property"),
-                                        element(name("name"), "listener"),
-                                        element(name("value"), "com.johnp.PerTestCoverageListener")
-                                )
-                        ), element(name("includes"),
-                                element(name("include"), "**/*Test.java"),
-                                element(name("include"), "**/*Tests.java")
-                        ),
-                        element(name("testClassesDirectory"), "${project.build.testOutputDirectory}"),
-                        element(name("classesDirectory"), "${project.build.outputDirectory}"),
-                        element(name("classpathDependencyExcludes"), ""),
-                        element(name("additionalClasspathElements"),
-                                element(name("additionalClasspathElement"), "${project.build.testOutputDirectory}"))
-                ),
+                configuration(surefireConfiguration(plan)),
                 executionEnvironment(
                         project,
                         session,
@@ -98,4 +146,65 @@ public class JacocoSurefireInvokerMojo extends AbstractMojo {
         );
 
     }
+
+    private Element[] surefireConfiguration(IncrementalPlan plan) {
+        Path coverageDir = Paths.get(project.getBuild().getDirectory(), IncrementalCoverage.COVERAGE_DIR);
+        List<Element> elements = new ArrayList<>(Arrays.asList(
+                element(name("forkCount"), forkCount),
+                element(name("reuseForks"), "true"),
+                element(name("properties"), providerProperties()),
+                // ** "$$" survives parameter evaluation as "$", Surefire replaces the fork number per fork
+                element(name("systemPropertyVariables"),
+                        element(name(PerTestCoverageListener.PARTITION_PROPERTY), "$${surefire.forkNumber}"),
+                        element(name(PerTestCoverageListener.COVERAGE_DIR_PROPERTY), coverageDir.toString()),
+                        element(name(PerTestCoverageListener.CLASSES_DIR_PROPERTY),
+                                project.getBuild().getOutputDirectory()),
+                        element(name(PerTestCoverageListener.GRANULARITY_PROPERTY), granularity)
+                ), element(name("includes"),
+                        element(name("include"), "**/*Test.java"),
+                        element(name("include"), "**/*Tests.java")
+                ),
+                element(name("testClassesDirectory"), "${project.build.testOutputDirectory}"),
+                element(name("classesDirectory"), "${project.build.outputDirectory}"),
+                element(name("classpathDependencyExcludes"), ""),
+                element(name("additionalClasspathElements"),
+                        element(name("additionalClasspathElement"), "${project.build.testOutputDirectory}"))
+        ));
+        if (!plan.isFull()) {
+            // ** Selected classes may have been deleted or hold no tests, that is not an error
+            getLog().info("Running affected tests: " + plan.testSelection());
+            elements.add(element(name("test"), plan.testSelection()));
+            elements.add(element(name("failIfNoSpecifiedTests"), "false"));
+        }
+        return elements.toArray(new Element[0]);
+    }
+
+    private Element[] providerProperties() {
+        List<Element> properties = new ArrayList<>();
+        // JUnit 4 runs report to the RunListener, JUnit Platform runs find PlatformCoverageListener on their own
+        properties.add(element(name("property"),
+                element(name("name"), "listener"),
+                element(name("value"), "com.johnp.PerTestCoverageListener")));
+        if (serialTests && PROVIDER_JUNIT_PLATFORM.equals(testProvider)) {
+            // ** Launcher configuration parameters take precedence over junit-platform.properties of the project
+            properties.add(element(name("property"),
+                    element(name("name"), "configurationParameters"),
+                    element(name("value"), SERIAL_EXECUTION + " = false")));
+        }
+        return properties.toArray(new Element[0]);
+    }
+
+    /**
+     * @return the Surefire provider artifact for an {@code sbfl.testProvider} value
+     */
+    static String providerArtifact(String testProvider) throws MojoExecutionException {
+        if (PROVIDER_JUNIT4.equals(testProvider)) {
+            return "surefire-junit4";
+        }
+        if (PROVIDER_JUNIT_PLATFORM.equals(testProvider)) {
+            return "surefire-junit-platform";
+        }
+        throw new MojoExecutionException("Unknown sbfl.testProvider '" + testProvider + "', expected "
+                + PROVIDER_JUNIT4 + " or " + PROVIDER_JUNIT_PLATFORM);
+    }
 }
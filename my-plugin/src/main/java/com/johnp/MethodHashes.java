@@ -0,0 +1,299 @@
+package com.johnp;
+
+import org.jacoco.core.internal.instr.InstrSupport;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Hashes of every method body of the production classes, keyed like coverage signatures
+ * ({@code className:methodName:desc}), plus one hash of each class's declaration (super types and fields) keyed
+ * by the bare class name.
+ * <p>
+ * Method hashes cover the instructions, their operands and the exception table, but not line numbers, local
+ * variable names or stack map frames, so moving code around or renaming a local does not count as a change.
+ */
+class MethodHashes {
+
+    static final String FILE = "method.hashes";
+
+    private static final int MAGIC = 0x5342464d; // SBFM
+    private static final byte VERSION = 1;
+
+    private final Map<String, Long> hashes;
+
+    private MethodHashes(Map<String, Long> hashes) {
+        this.hashes = hashes;
+    }
+
+    static MethodHashes scan(Path classesDir) throws IOException {
+        Map<String, Long> hashes = new HashMap<>();
+        if (!Files.isDirectory(classesDir)) {
+            return new MethodHashes(hashes);
+        }
+        List<Path> classFiles;
+        try (Stream<Path> paths = Files.walk(classesDir)) {
+            classFiles = paths.filter(p -> p.toString().endsWith(".class")).collect(Collectors.toList());
+        }
+        for (Path classFile : classFiles) {
+            ClassReader reader = InstrSupport.classReaderFor(Files.readAllBytes(classFile));
+            reader.accept(new ClassHasher(hashes), ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        }
+        return new MethodHashes(hashes);
+    }
+
+    /**
+     * @return the hashes stored in {@code file}, or {@code null} if there are none
+     */
+    static MethodHashes read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                return null;
+            }
+            int size = in.readInt();
+            Map<String, Long> hashes = new HashMap<>(size * 4 / 3 + 1);
+            for (int i = 0; i < size; i++) {
+                hashes.put(in.readUTF(), in.readLong());
+            }
+            return new MethodHashes(hashes);
+        }
+    }
+
+    void write(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = Files.createTempFile(file.getParent(), FILE, ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(hashes.size());
+            for (Map.Entry<String, Long> entry : hashes.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue());
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    Map<String, Long> getHashes() {
+        return hashes;
+    }
+
+    /**
+     * 64-bit FNV-1a over the visited values.
+     */
+    private static class Hasher {
+        private long hash = 0xcbf29ce484222325L;
+
+        void add(int value) {
+            for (int shift = 0; shift < 32; shift += 8) {
+                hash = (hash ^ (value >>> shift & 0xFF)) * 0x100000001b3L;
+            }
+        }
+
+        void add(Object value) {
+            String text = value == null ? "" : value.getClass().getSimpleName() + value;
+            for (int i = 0; i < text.length(); i++) {
+                add(text.charAt(i));
+            }
+            add(-1);
+        }
+    }
+
+    private static final class ClassHasher extends ClassVisitor {
+        private final Map<String, Long> hashes;
+        private final Hasher declaration = new Hasher();
+        private String className;
+
+        private ClassHasher(Map<String, Long> hashes) {
+            super(InstrSupport.ASM_API_VERSION);
+            this.hashes = hashes;
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName,
+                          String[] interfaces) {
+            className = name;
+            declaration.add(access);
+            declaration.add(superName);
+            declaration.add(Arrays.toString(interfaces));
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+            declaration.add(access);
+            declaration.add(name);
+            declaration.add(descriptor);
+            declaration.add(value);
+            return null;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+                                         String[] exceptions) {
+            return new MethodHasher(className + ":" + name + ":" + descriptor, access, hashes);
+        }
+
+        @Override
+        public void visitEnd() {
+            hashes.put(className, declaration.hash);
+        }
+    }
+
+    private static final class MethodHasher extends MethodVisitor {
+        private final String methodSignature;
+        private final Map<String, Long> hashes;
+        private final Hasher hasher = new Hasher();
+        // ** Labels are numbered in order of appearance, their bytecode offsets shift with unrelated edits
+        private final Map<Label, Integer> labels = new IdentityHashMap<>();
+
+        private MethodHasher(String methodSignature, int access, Map<String, Long> hashes) {
+            super(InstrSupport.ASM_API_VERSION);
+            this.methodSignature = methodSignature;
+            this.hashes = hashes;
+            hasher.add(access);
+        }
+
+        private void add(Label label) {
+            hasher.add(labels.computeIfAbsent(label, key -> labels.size()).intValue());
+        }
+
+        @Override
+        public void visitInsn(int opcode) {
+            hasher.add(opcode);
+        }
+
+        @Override
+        public void visitIntInsn(int opcode, int operand) {
+            hasher.add(opcode);
+            hasher.add(operand);
+        }
+
+        @Override
+        public void visitVarInsn(int opcode, int var) {
+            hasher.add(opcode);
+            hasher.add(var);
+        }
+
+        @Override
+        public void visitTypeInsn(int opcode, String type) {
+            hasher.add(opcode);
+            hasher.add(type);
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+            hasher.add(opcode);
+            hasher.add(owner);
+            hasher.add(name);
+            hasher.add(descriptor);
+        }
+
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+            hasher.add(opcode);
+            hasher.add(owner);
+            hasher.add(name);
+            hasher.add(descriptor);
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle,
+                                           Object... bootstrapMethodArguments) {
+            hasher.add(Opcodes.INVOKEDYNAMIC);
+            hasher.add(name);
+            hasher.add(descriptor);
+            hasher.add(bootstrapMethodHandle);
+            for (Object argument : bootstrapMethodArguments) {
+                hasher.add(argument);
+            }
+        }
+
+        @Override
+        public void visitJumpInsn(int opcode, Label label) {
+            hasher.add(opcode);
+            add(label);
+        }
+
+        @Override
+        public void visitLabel(Label label) {
+            add(label);
+        }
+
+        @Override
+        public void visitLdcInsn(Object value) {
+            hasher.add(Opcodes.LDC);
+            hasher.add(value);
+        }
+
+        @Override
+        public void visitIincInsn(int var, int increment) {
+            hasher.add(Opcodes.IINC);
+            hasher.add(var);
+            hasher.add(increment);
+        }
+
+        @Override
+        public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+            hasher.add(Opcodes.TABLESWITCH);
+            hasher.add(min);
+            hasher.add(max);
+            add(dflt);
+            for (Label label : labels) {
+                add(label);
+            }
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+            hasher.add(Opcodes.LOOKUPSWITCH);
+            add(dflt);
+            for (int i = 0; i < keys.length; i++) {
+                hasher.add(keys[i]);
+                add(labels[i]);
+            }
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+            hasher.add(Opcodes.MULTIANEWARRAY);
+            hasher.add(descriptor);
+            hasher.add(numDimensions);
+        }
+
+        @Override
+        public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+            add(start);
+            add(end);
+            add(handler);
+            hasher.add(type);
+        }
+
+        @Override
+        public void visitEnd() {
+            hashes.put(methodSignature, hasher.hash);
+        }
+    }
+}
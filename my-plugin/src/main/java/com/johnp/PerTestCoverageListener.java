@@ -1,25 +1,17 @@
 package com.johnp;
 
-import org.jacoco.core.analysis.Analyzer;
-import org.jacoco.core.analysis.CoverageBuilder;
-import org.jacoco.core.analysis.IClassCoverage;
-import org.jacoco.core.analysis.IMethodCoverage;
-import org.jacoco.core.data.ExecutionDataStore;
-import org.jacoco.core.data.SessionInfoStore;
-import org.jacoco.core.runtime.IRuntime;
-import org.jacoco.core.runtime.LoggerRuntime;
-import org.jacoco.core.runtime.RuntimeData;
+import com.johnp.util.CoverageFormat;
 import org.junit.runner.Description;
 import org.junit.runner.Result;
 import org.junit.runner.notification.Failure;
 import org.junit.runner.notification.RunListener;
 
-import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Records the coverage of every JUnit 4 test. JUnit Platform runs use {@link PlatformCoverageListener} instead.
+ */
 public class PerTestCoverageListener extends RunListener {
 
     public PerTestCoverageListener() {
@@ -27,25 +19,32 @@ public class PerTestCoverageListener extends RunListener {
         System.err.println("*** PerTestCoverageListener CONSTRUCTOR CALLED ***");
     }
 
-    private static final String COVERAGE_DIR = "target/per-test-coverage/";
-    private final Map<String, Boolean> testResults = new HashMap<>();
-    private IRuntime runtime;
-    private RuntimeData data;
-    private String currentTest;
+    // ** System properties set by the Mojos, forks started from another directory need absolute paths
+    public static final String COVERAGE_DIR_PROPERTY = "sbfl.coverageDir";
+    public static final String CLASSES_DIR_PROPERTY = "sbfl.classesDir";
+    // ** Fork number, each parallel fork writes its own store partition
+    public static final String PARTITION_PROPERTY = "sbfl.partition";
+    // ** "method" (default), "line" or "branch" spectra
+    public static final String GRANULARITY_PROPERTY = "sbfl.granularity";
+    public static final String GRANULARITY_METHOD = CoverageFormat.GRANULARITY_METHOD;
+    public static final String GRANULARITY_LINE = CoverageFormat.GRANULARITY_LINE;
+    public static final String GRANULARITY_BRANCH = CoverageFormat.GRANULARITY_BRANCH;
+
+    // ** Tests of this listener that failed, a RunListener may be notified from several threads at once
+    private final Set<Description> failed = ConcurrentHashMap.newKeySet();
 
     @Override
     public void testRunStarted(Description description) throws Exception {
-
-        // Create output directory
-        new File(COVERAGE_DIR).mkdirs();
-
-        // Initialize JaCoCo runtime
-        runtime = new LoggerRuntime();
-        data = new RuntimeData();
-        runtime.startup(data);
+        ForkCoverage.startRun();
 
         System.out.println("JaCoCo method-level coverage collection started");
-        System.out.println("Output directory: " + new File(COVERAGE_DIR).getAbsolutePath());
+        System.out.println("Output directory: " + ForkCoverage.coverageDir().toAbsolutePath());
+    }
+
+    @Override
+    public void testSuiteStarted(Description description) throws Exception {
+        // Next test class in a reused fork, nothing of the class setup may leak into its first test
+        ForkCoverage.boundary();
     }
 
     @Override
@@ -53,129 +52,39 @@ public class PerTestCoverageListener extends RunListener {
         System.out.println("*** TEST STARTED: " + description.getDisplayName() + " ***");
         System.err.println("*** TEST STARTED: " + description.getDisplayName() + " ***");
 
-        currentTest = description.getClassName() + "." + description.getMethodName();
+        failed.remove(description);
+        ForkCoverage.testStarted(description);
 
-        // Reset coverage data for this test
-        data.reset();
-
-        System.out.println("Starting test: " + currentTest);
+        System.out.println("Starting test: " + testName(description));
     }
 
     @Override
     public void testFinished(Description description) throws Exception {
-        // Mark test as passed (will be overridden if failed)
-        testResults.putIfAbsent(currentTest, true);
-
+        String testName = testName(description);
         // Collect and save coverage data for this test
-        collectAndSaveCoverage();
+        ForkCoverage.testFinished(description, testName, !failed.remove(description));
 
-        System.out.println("Finished test: " + currentTest);
+        System.out.println("Finished test: " + testName);
     }
 
     @Override
     public void testFailure(Failure failure) throws Exception {
-        // Mark test as failed
-        String testName = failure.getDescription().getClassName() + "." + failure.getDescription().getMethodName();
-        testResults.put(testName, false);
-        System.out.println("Test failed: " + testName + " - " + failure.getMessage());
+        // Class level failures (e.g. in @BeforeClass) have a class description, no test of the class is marked
+        if (failure.getDescription().isTest()) {
+            failed.add(failure.getDescription());
+        }
+        System.out.println("Test failed: " + testName(failure.getDescription()) + " - " + failure.getMessage());
     }
 
     @Override
     public void testRunFinished(Result result) throws Exception {
-        if (runtime != null) {
-            runtime.shutdown();
-        }
-        System.out.println("Coverage collection completed. Files in: " + new File(COVERAGE_DIR).getAbsolutePath());
+        ForkCoverage.finishRun();
+        System.out.println("Coverage collection completed. Store: " + ForkCoverage.storeFile().toAbsolutePath());
         System.out.println("Total tests run: " + result.getRunCount());
         System.out.println("Failures: " + result.getFailureCount());
     }
 
-    private void collectAndSaveCoverage() {
-        try {
-            final ExecutionDataStore executionData = new ExecutionDataStore();
-            final SessionInfoStore sessionInfos = new SessionInfoStore();
-
-            data.collect(executionData, sessionInfos, false);
-
-            // Analyze coverage
-            final CoverageBuilder coverageBuilder = new CoverageBuilder();
-            final Analyzer analyzer = new Analyzer(executionData, coverageBuilder);
-
-            // Analyze all class files
-            File classesDir = new File("target/classes");
-            if (classesDir.exists() && classesDir.isDirectory()) {
-                analyzer.analyzeAll(classesDir);
-            } else {
-                System.err.println("Classes directory not found: " + classesDir.getAbsolutePath());
-                return;
-            }
-
-            // Save method-level coverage data
-            saveMethodCoverageData(currentTest, coverageBuilder);
-
-        } catch (IOException e) {
-            System.err.println("Error collecting coverage for test " + currentTest + ": " + e.getMessage());
-            e.printStackTrace();
-        }
-    }
-
-    private void saveMethodCoverageData(String testName, CoverageBuilder coverageBuilder) {
-        try {
-            String fileName = COVERAGE_DIR + sanitizeFileName(testName) + ".txt";
-            FileWriter writer = new FileWriter(fileName);
-
-            // First line: test name and result
-            Boolean testPassed = testResults.get(testName);
-            if (testPassed == null) {
-                testPassed = true; // Default to true if not found
-            }
-            writer.write(testName + " " + testPassed.toString().toLowerCase() + "\n");
-            writer.write(coverageBuilder.toString());
-
-            // Write covered methods
-            for (final IClassCoverage classCoverage : coverageBuilder.getClasses()) {
-                String className = classCoverage.getName(); // Keep the slash format: org/example/Class
-
-                // Skip test classes - only analyze production code
-                if (isTestClass(className)) {
-                    continue;
-                }
-
-                // Iterate through methods
-                for (final IMethodCoverage methodCoverage : classCoverage.getMethods()) {
-                    String methodName = methodCoverage.getName();
-                    String methodDesc = methodCoverage.getDesc();
-
-                    // Format: className:methodName:methodDescriptor
-                    String methodSignature = className + ":" + methodName + ":" + methodDesc;
-                    writer.write(methodSignature + "\n");
-
-                }
-            }
-
-            writer.close();
-            System.out.println("Saved method coverage data: " + fileName);
-
-        } catch (IOException e) {
-            System.err.println("Error saving method coverage data for " + testName + ": " + e.getMessage());
-            e.printStackTrace();
-        }
-    }
-
-    private boolean isTestClass(String className) {
-        // Convert slash format to dot format for checking
-        String dotClassName = className.replace('/', '.');
-        return dotClassName.toLowerCase().contains("test") ||
-                dotClassName.toLowerCase().endsWith("tests") ||
-                dotClassName.toLowerCase().contains("mock");
-    }
-
-    private String sanitizeFileName(String testName) {
-        return testName.replace(".", "_")
-                .replace("#", "_")
-                .replace("/", "_")
-                .replace("\\", "_")
-                .replace(":", "_")
-                .replace(" ", "_");
+    private static String testName(Description description) {
+        return description.getClassName() + "." + description.getMethodName();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,97 @@
+package com.johnp;
+
+import org.junit.platform.engine.TestExecutionResult;
+import org.junit.platform.engine.UniqueId;
+import org.junit.platform.engine.support.descriptor.MethodSource;
+import org.junit.platform.launcher.TestExecutionListener;
+import org.junit.platform.launcher.TestIdentifier;
+import org.junit.platform.launcher.TestPlan;
+
+import java.io.IOException;
+
+/**
+ * Records the coverage of every JUnit Platform test (Jupiter, Vintage, ...), the counterpart of
+ * {@link PerTestCoverageListener}.
+ * <p>
+ * Registered through {@code META-INF/services}, so the launcher picks it up whenever the plugin is on the test
+ * classpath; it only records in JVMs started by the Mojos, which set {@value PerTestCoverageListener#COVERAGE_DIR_PROPERTY}.
+ * Tests may finish on any thread and in any order. The Mojos turn Jupiter's parallel execution off in coverage
+ * forks and run forks in parallel instead; where tests still overlap, each gets the coverage of everything that ran
+ * while it did, see {@link ForkCoverage}.
+ */
+public class PlatformCoverageListener implements TestExecutionListener {
+
+    private static final String METHOD_SEGMENT = "method";
+
+    private final boolean enabled = System.getProperty(PerTestCoverageListener.COVERAGE_DIR_PROPERTY) != null;
+
+    @Override
+    public void testPlanExecutionStarted(TestPlan testPlan) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            ForkCoverage.startRun();
+            System.out.println("JaCoCo coverage collection started for JUnit Platform tests");
+        } catch (IOException e) {
+            // ** The launcher only logs listener exceptions, fail the run instead of writing no spectrum
+            throw new IllegalStateException("Failed to open the spectrum store", e);
+        }
+    }
+
+    @Override
+    public void executionStarted(TestIdentifier testIdentifier) {
+        if (!enabled) {
+            return;
+        }
+        if (testIdentifier.isTest()) {
+            ForkCoverage.testStarted(testIdentifier.getUniqueIdObject());
+        } else {
+            // Class or container setup, not attributed to the next test
+            ForkCoverage.boundary();
+        }
+    }
+
+    @Override
+    public void executionFinished(TestIdentifier testIdentifier, TestExecutionResult testExecutionResult) {
+        if (!enabled || !testIdentifier.isTest()) {
+            return;
+        }
+        boolean passed = testExecutionResult.getStatus() != TestExecutionResult.Status.FAILED;
+        ForkCoverage.testFinished(testIdentifier.getUniqueIdObject(), testName(testIdentifier), passed);
+    }
+
+    @Override
+    public void testPlanExecutionFinished(TestPlan testPlan) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            ForkCoverage.finishRun();
+            System.out.println("Coverage collection completed. Store: " + ForkCoverage.storeFile().toAbsolutePath());
+        } catch (IOException e) {
+            System.err.println("Error writing spectrum store: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Interrupted while writing spectrum store");
+        }
+    }
+
+    /**
+     * {@code Class.method} like the JUnit 4 listener, tests of a parameterized, repeated or dynamic method get the
+     * invocation's segment appended, e.g. {@code Class.method[test-template-invocation:#2]}.
+     */
+    static String testName(TestIdentifier testIdentifier) {
+        return testIdentifier.getSource()
+                .filter(MethodSource.class::isInstance)
+                .map(MethodSource.class::cast)
+                .map(source -> {
+                    String name = source.getClassName() + "." + source.getMethodName();
+                    UniqueId.Segment last = testIdentifier.getUniqueIdObject().getLastSegment();
+                    return METHOD_SEGMENT.equals(last.getType())
+                            ? name
+                            : name + "[" + last.getType() + ":" + last.getValue() + "]";
+                })
+                .orElseGet(testIdentifier::getLegacyReportingName);
+    }
+}
@@ -0,0 +1,887 @@
+package com.johnp;
+
+import com.johnp.util.CoverageFormat;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.internal.analysis.filter.Filters;
+import org.jacoco.core.internal.analysis.filter.IFilter;
+import org.jacoco.core.internal.analysis.filter.IFilterContext;
+import org.jacoco.core.internal.analysis.filter.IFilterOutput;
+import org.jacoco.core.internal.data.CRC64;
+import org.jacoco.core.internal.flow.ClassProbesAdapter;
+import org.jacoco.core.internal.flow.ClassProbesVisitor;
+import org.jacoco.core.internal.flow.IFrame;
+import org.jacoco.core.internal.flow.LabelInfo;
+import org.jacoco.core.internal.flow.MethodProbesVisitor;
+import org.jacoco.core.internal.instr.InstrSupport;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.Attribute;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Maps JaCoCo class IDs and probe ranges to method signatures, or in line and branch mode to source lines and
+ * their branches.
+ * <p>
+ * Built once per test run from the class files, so that each test only has to intersect its hit probes with
+ * the index instead of re-analyzing every class. JaCoCo assigns probe IDs to the methods of a class in visiting
+ * order, which makes the probes of one method a contiguous range.
+ * <p>
+ * In line mode every covered line of a method is an element ({@link CoverageFormat#lineSignature}), in branch mode
+ * every outgoing edge of a conditional jump or switch ({@link CoverageFormat#branchSignature}). A hit probe covers
+ * the instructions JaCoCo's analysis marks as executed for it: the instruction before the probe and its chain of
+ * predecessors (the previous instruction, or the last jump targeting it). The predecessors only depend on the
+ * bytecode and are linked once here; a test's hit probes then walk their chains like JaCoCo does, each ending at
+ * an instruction an earlier chain covered, so no instruction of a class is visited twice per test.
+ * <p>
+ * JaCoCo's filters run over every method like in its own analysis: instructions they ignore (the rethrow of a
+ * finally handler, the cleanup of try-with-resources, Lombok generated methods) are no element, duplicated finally
+ * blocks share the elements of their first copy, and the branches a filter replaces (the hash lookup of a string
+ * switch) are covered by the instructions it names instead. Methods left without instructions are not indexed.
+ */
+class ProbeIndex {
+
+    private final Map<Long, ClassProbes> classes = new HashMap<>();
+    private final List<String> signatures = new ArrayList<>();
+    private final boolean methods;
+    private final boolean branches;
+
+    private ProbeIndex(String granularity) {
+        this.methods = CoverageFormat.GRANULARITY_METHOD.equals(granularity);
+        this.branches = CoverageFormat.GRANULARITY_BRANCH.equals(granularity);
+    }
+
+    /**
+     * Reads every class file below {@code classesDir} once. Classes matching {@code exclude} (slash format names)
+     * are left out of the index.
+     */
+    static ProbeIndex build(File classesDir, Predicate<String> exclude) throws IOException {
+        return build(classesDir, exclude, CoverageFormat.GRANULARITY_METHOD);
+    }
+
+    /**
+     * @param granularity {@code method}, or {@code line} and {@code branch} to index source lines or their branches
+     *                    instead, both need class files compiled with line numbers
+     */
+    static ProbeIndex build(File classesDir, Predicate<String> exclude, String granularity) throws IOException {
+        if (!CoverageFormat.GRANULARITY_METHOD.equals(granularity)
+                && !CoverageFormat.GRANULARITY_LINE.equals(granularity)
+                && !CoverageFormat.GRANULARITY_BRANCH.equals(granularity)) {
+            throw new IllegalArgumentException("Unknown granularity " + granularity
+                    + ", expected method, line or branch");
+        }
+        ProbeIndex index = new ProbeIndex(granularity);
+        if (!classesDir.isDirectory()) {
+            return index;
+        }
+
+        // ** Sorted walk keeps method IDs stable between runs over the same classes
+        List<Path> classFiles;
+        try (Stream<Path> paths = Files.walk(classesDir.toPath())) {
+            classFiles = paths.filter(p -> p.toString().endsWith(".class"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        for (Path classFile : classFiles) {
+            index.addClass(Files.readAllBytes(classFile), exclude);
+        }
+        return index;
+    }
+
+    int size() {
+        return signatures.size();
+    }
+
+    String signature(int methodId) {
+        return signatures.get(methodId);
+    }
+
+    List<String> signatures() {
+        return signatures;
+    }
+
+    boolean isMethods() {
+        return methods;
+    }
+
+    /**
+     * Calls {@code action} with the ID of every indexed method (or line, or branch) that has at least one hit probe
+     * in {@code store}. Lines and branches may be reported more than once.
+     */
+    void forEachCovered(ExecutionDataStore store, IntConsumer action) {
+        for (ExecutionData data : store.getContents()) {
+            ClassProbes probes = classes.get(data.getId());
+            if (probes == null) {
+                continue;
+            }
+            boolean[] hits = data.getProbes();
+            if (hits.length != probes.probeCount) {
+                // ** Class changed since the index was built, the probe layout can no longer be trusted
+                continue;
+            }
+            if (!methods) {
+                probes.flow.cover(hits, branches, action);
+                continue;
+            }
+            for (int m = 0; m < probes.methodIds.length; m++) {
+                for (int p = probes.firstProbe[m]; p <= probes.lastProbe[m]; p++) {
+                    if (hits[p]) {
+                        action.accept(probes.methodIds[m]);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private void addClass(byte[] bytes, Predicate<String> exclude) {
+        ClassReader reader = InstrSupport.classReaderFor(bytes);
+        if (exclude.test(reader.getClassName())) {
+            return;
+        }
+        ClassIndexer indexer = new ClassIndexer(reader.getClassName());
+        int elements = signatures.size();
+        reader.accept(new ClassProbesAdapter(indexer, false), 0);
+
+        if (indexer.probeCount > 0 && signatures.size() > elements) {
+            classes.put(CRC64.classId(bytes), indexer.toClassProbes());
+        }
+    }
+
+    private static final class ClassProbes {
+        private final int probeCount;
+        private final int[] methodIds;
+        private final int[] firstProbe;
+        private final int[] lastProbe;
+        // ** Line and branch mode only
+        private final InstructionFlow flow;
+
+        private ClassProbes(int probeCount, int[] methodIds, int[] firstProbe, int[] lastProbe,
+                            InstructionFlow flow) {
+            this.probeCount = probeCount;
+            this.methodIds = methodIds;
+            this.firstProbe = firstProbe;
+            this.lastProbe = lastProbe;
+            this.flow = flow;
+        }
+    }
+
+    /**
+     * The instructions of all methods of a class in one sequence: the predecessor of each (-1 for none), the branch
+     * of the predecessor leading to it and its element, the ID of its line or, in branch mode, of its branch 0
+     * (-1 for none). Probes point to the instruction before them and the branch of it they are on. In branch mode
+     * an instruction can also cover branches a filter replaced, {@code replacedBranches} from
+     * {@code replacedOffsets[i]} up to {@code replacedOffsets[i + 1]}.
+     */
+    private static final class InstructionFlow {
+        private final int[] probeInstructions;
+        private final int[] probeBranches;
+        private final int[] predecessors;
+        private final int[] predecessorBranches;
+        private final int[] elements;
+        private final int[] branchCounts;
+        private final int[] replacedOffsets;
+        private final int[] replacedBranches;
+
+        private InstructionFlow(int[] probeInstructions, int[] probeBranches, int[] predecessors,
+                                int[] predecessorBranches, int[] elements, int[] branchCounts,
+                                int[] replacedOffsets, int[] replacedBranches) {
+            this.probeInstructions = probeInstructions;
+            this.probeBranches = probeBranches;
+            this.predecessors = predecessors;
+            this.predecessorBranches = predecessorBranches;
+            this.elements = elements;
+            this.branchCounts = branchCounts;
+            this.replacedOffsets = replacedOffsets;
+            this.replacedBranches = replacedBranches;
+        }
+
+        // ** JaCoCo's propagation: a chain ends at an instruction covered before, only the branch taken out of it
+        // ** is new
+        private void cover(boolean[] hits, boolean branches, IntConsumer action) {
+            boolean[] covered = new boolean[predecessors.length];
+            for (int p = 0; p < hits.length; p++) {
+                if (!hits[p]) {
+                    continue;
+                }
+                int branch = probeBranches[p];
+                for (int i = probeInstructions[p]; i >= 0; i = predecessors[i]) {
+                    if (branches) {
+                        if (elements[i] >= 0 && branch < branchCounts[i]) {
+                            action.accept(elements[i] + branch);
+                        }
+                        // ** A replaced branch is covered with its instruction, whichever branch led there
+                        for (int r = replacedOffsets[i]; !covered[i] && r < replacedOffsets[i + 1]; r++) {
+                            action.accept(replacedBranches[r]);
+                        }
+                    } else if (!covered[i] && elements[i] >= 0) {
+                        action.accept(elements[i]);
+                    }
+                    if (covered[i]) {
+                        break;
+                    }
+                    covered[i] = true;
+                    branch = predecessorBranches[i];
+                }
+            }
+        }
+    }
+
+    private final class ClassIndexer extends ClassProbesVisitor implements IFilterContext {
+        private final String className;
+        // ** Stateful, one instance per class like JaCoCo's ClassAnalyzer
+        private final IFilter filter = Filters.all();
+        private final Set<String> classAnnotations = new HashSet<>();
+        private final Set<String> classAttributes = new HashSet<>();
+        private String superClassName;
+        private String sourceFileName;
+        private String sourceDebugExtension;
+        private final List<Integer> methodIds = new ArrayList<>();
+        private final List<int[]> ranges = new ArrayList<>();
+        // ** Line and branch mode, the instructions of the methods indexed so far, see InstructionFlow
+        private final Map<Integer, int[]> probeInstructions = new HashMap<>();
+        private final List<int[]> predecessors = new ArrayList<>();
+        private final List<int[]> predecessorBranches = new ArrayList<>();
+        private final List<int[]> elements = new ArrayList<>();
+        private final List<int[]> branchCounts = new ArrayList<>();
+        // ** Branch mode, pairs of an instruction and a replaced branch it covers
+        private final List<int[]> replaced = new ArrayList<>();
+        private int instructionCount;
+        private int probeCount;
+
+        private ClassIndexer(String className) {
+            this.className = className;
+        }
+
+        @Override
+        public void visit(int version, int access, String name, String signature, String superName,
+                          String[] interfaces) {
+            superClassName = superName;
+        }
+
+        @Override
+        public void visitSource(String source, String debug) {
+            sourceFileName = source;
+            sourceDebugExtension = debug;
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+            classAnnotations.add(descriptor);
+            return null;
+        }
+
+        @Override
+        public void visitAttribute(Attribute attribute) {
+            classAttributes.add(attribute.type);
+        }
+
+        @Override
+        public String getClassName() {
+            return className;
+        }
+
+        @Override
+        public String getSuperClassName() {
+            return superClassName;
+        }
+
+        @Override
+        public Set<String> getClassAnnotations() {
+            return classAnnotations;
+        }
+
+        @Override
+        public Set<String> getClassAttributes() {
+            return classAttributes;
+        }
+
+        @Override
+        public String getSourceFileName() {
+            return sourceFileName;
+        }
+
+        @Override
+        public String getSourceDebugExtension() {
+            return sourceDebugExtension;
+        }
+
+        @Override
+        public MethodProbesVisitor visitMethod(int access, String name, String desc, String signature,
+                                               String[] exceptions) {
+            // ** Mirror JaCoCo's synthetic filter, lambda bodies are kept as they carry user code
+            if ((access & Opcodes.ACC_SYNTHETIC) != 0 && !name.startsWith("lambda$")) {
+                return null;
+            }
+            String methodSignature = className + ":" + name + ":" + desc;
+            return methods ? new MethodIndexer(methodSignature) : new InstructionIndexer(methodSignature);
+        }
+
+        @Override
+        public void visitTotalProbeCount(int count) {
+            probeCount = count;
+        }
+
+        private ClassProbes toClassProbes() {
+            int size = methodIds.size();
+            int[] ids = new int[size];
+            int[] first = new int[size];
+            int[] last = new int[size];
+            for (int i = 0; i < size; i++) {
+                ids[i] = methodIds.get(i);
+                first[i] = ranges.get(i)[0];
+                last[i] = ranges.get(i)[1];
+            }
+            if (methods) {
+                return new ClassProbes(probeCount, ids, first, last, null);
+            }
+            int[] probeInstruction = new int[probeCount];
+            int[] probeBranch = new int[probeCount];
+            Arrays.fill(probeInstruction, -1);
+            probeInstructions.forEach((p, probe) -> {
+                probeInstruction[p] = probe[0];
+                probeBranch[p] = probe[1];
+            });
+            // ** Replaced branches grouped by instruction, offsets like a CSR matrix
+            replaced.sort(Comparator.comparingInt(pair -> pair[0]));
+            int[] replacedOffsets = new int[instructionCount + 1];
+            int[] replacedBranches = new int[replaced.size()];
+            for (int r = 0; r < replacedBranches.length; r++) {
+                replacedOffsets[replaced.get(r)[0] + 1]++;
+                replacedBranches[r] = replaced.get(r)[1];
+            }
+            for (int i = 0; i < instructionCount; i++) {
+                replacedOffsets[i + 1] += replacedOffsets[i];
+            }
+            return new ClassProbes(probeCount, ids, first, last, new InstructionFlow(probeInstruction, probeBranch,
+                    concat(predecessors), concat(predecessorBranches), concat(elements), concat(branchCounts),
+                    replacedOffsets, replacedBranches));
+        }
+
+        /**
+         * Appends the instructions of one method, its instruction and predecessor indexes counting from 0.
+         */
+        private void addInstructions(int[] methodPredecessors, int[] methodPredecessorBranches, int[] methodElements,
+                                     int[] methodBranchCounts, Map<Integer, int[]> methodProbes,
+                                     List<int[]> methodReplaced) {
+            int offset = instructionCount;
+            for (int[] pair : methodReplaced) {
+                replaced.add(new int[]{pair[0] + offset, pair[1]});
+            }
+            for (int i = 0; i < methodPredecessors.length; i++) {
+                if (methodPredecessors[i] >= 0) {
+                    methodPredecessors[i] += offset;
+                }
+            }
+            predecessors.add(methodPredecessors);
+            predecessorBranches.add(methodPredecessorBranches);
+            elements.add(methodElements);
+            branchCounts.add(methodBranchCounts);
+            methodProbes.forEach((probeId, probe) -> probeInstructions.put(probeId,
+                    new int[]{probe[0] < 0 ? -1 : probe[0] + offset, probe[1]}));
+            instructionCount += methodPredecessors.length;
+        }
+
+        private int[] concat(List<int[]> chunks) {
+            int[] all = new int[instructionCount];
+            int offset = 0;
+            for (int[] chunk : chunks) {
+                System.arraycopy(chunk, 0, all, offset, chunk.length);
+                offset += chunk.length;
+            }
+            return all;
+        }
+
+        private final class MethodIndexer extends MethodProbesVisitor {
+            private final String methodSignature;
+            private int first = Integer.MAX_VALUE;
+            private int last = -1;
+
+            private MethodIndexer(String methodSignature) {
+                this.methodSignature = methodSignature;
+            }
+
+            private void probe(int id) {
+                if (id == LabelInfo.NO_PROBE) {
+                    return;
+                }
+                first = Math.min(first, id);
+                last = Math.max(last, id);
+            }
+
+            private void probes(Label dflt, Label[] labels) {
+                probe(LabelInfo.getProbeId(dflt));
+                Arrays.stream(labels).forEach(label -> probe(LabelInfo.getProbeId(label)));
+            }
+
+            @Override
+            public void visitProbe(int probeId) {
+                probe(probeId);
+            }
+
+            @Override
+            public void visitJumpInsnWithProbe(int opcode, Label label, int probeId, IFrame frame) {
+                probe(probeId);
+            }
+
+            @Override
+            public void visitInsnWithProbe(int opcode, int probeId) {
+                probe(probeId);
+            }
+
+            @Override
+            public void visitTableSwitchInsnWithProbes(int min, int max, Label dflt, Label[] labels, IFrame frame) {
+                probes(dflt, labels);
+            }
+
+            @Override
+            public void visitLookupSwitchInsnWithProbes(Label dflt, int[] keys, Label[] labels, IFrame frame) {
+                probes(dflt, labels);
+            }
+
+            @Override
+            public void accept(MethodNode methodNode, MethodVisitor methodVisitor) {
+                super.accept(methodNode, methodVisitor);
+                // ** Abstract and native methods have no probes and can never show up as covered, methods JaCoCo's
+                // ** filters drop entirely have no code left to cover
+                if (last < 0 || !FilterOutput.of(filter, methodNode, ClassIndexer.this).hasCode(methodNode)) {
+                    return;
+                }
+                methodIds.add(signatures.size());
+                signatures.add(methodSignature);
+                ranges.add(new int[]{first, last});
+            }
+        }
+        /**
+         * Replays JaCoCo's method analysis: a hit probe covers the instruction before it and that instruction's
+         * chain of predecessors, each the previous instruction or the source of the last jump targeting it. JaCoCo
+         * puts a probe on every edge into an instruction with several predecessors, so this one predecessor is
+         * never ambiguous. The predecessors are linked in one pass over the jumps and handed to the class's
+         * {@link InstructionFlow}, with the lines (or branches) of the instructions.
+         * <p>
+         * Branches follow JaCoCo's numbering: an instruction has one branch per outgoing edge, the fall-through
+         * being branch 0 and a jump branch 1, switch targets numbered from the default in key order with a shared
+         * target counted once. Instructions with at least two branches contribute branch elements. Walking a chain
+         * from an instruction to its predecessor covers the branch that leads from the predecessor to it.
+         */
+        private final class InstructionIndexer extends MethodProbesVisitor {
+            private final String methodSignature;
+            private final List<Label> pendingLabels = new ArrayList<>();
+            private final Map<Label, Integer> labelInstructions = new IdentityHashMap<>();
+            // ** Instructions by index, each with its line, fall-through predecessor (-1 for none) and branches
+            private final List<Integer> instructionLines = new ArrayList<>();
+            private final List<Integer> fallThrough = new ArrayList<>();
+            private final List<Integer> branchCounts = new ArrayList<>();
+            private final List<Integer> jumpSources = new ArrayList<>();
+            private final List<Label> jumpTargets = new ArrayList<>();
+            private final List<Integer> jumpBranches = new ArrayList<>();
+            private final List<AbstractInsnNode> instructionNodes = new ArrayList<>();
+            // ** Probe ID to the instruction it follows and the branch of that instruction it is on
+            private final Map<Integer, int[]> probes = new HashMap<>();
+            private FilterOutput output;
+            private AbstractInsnNode currentNode;
+            private int current = -1;
+            private int currentLine = -1;
+
+            private InstructionIndexer(String methodSignature) {
+                this.methodSignature = methodSignature;
+            }
+
+            private void instruction() {
+                int instruction = instructionLines.size();
+                instructionLines.add(currentLine);
+                instructionNodes.add(currentNode);
+                fallThrough.add(current);
+                branchCounts.add(0);
+                if (current >= 0) {
+                    addBranch(current);
+                }
+                for (Label label : pendingLabels) {
+                    labelInstructions.put(label, instruction);
+                }
+                pendingLabels.clear();
+                current = instruction;
+            }
+
+            private void addBranch(int instruction) {
+                branchCounts.set(instruction, branchCounts.get(instruction) + 1);
+            }
+
+            private void jump(Label target, int branch) {
+                jumpSources.add(current);
+                jumpTargets.add(target);
+                jumpBranches.add(branch);
+                addBranch(current);
+            }
+
+            private void probe(int probeId, int branch) {
+                probes.put(probeId, new int[]{current, branch});
+                if (current >= 0) {
+                    addBranch(current);
+                }
+            }
+
+            private void switchTargets(Label dflt, Label[] labels) {
+                instruction();
+                Set<Label> targets = Collections.newSetFromMap(new IdentityHashMap<>());
+                int branch = 0;
+                targets.add(dflt);
+                switchTarget(dflt, branch);
+                for (Label label : labels) {
+                    if (targets.add(label)) {
+                        switchTarget(label, ++branch);
+                    }
+                }
+            }
+
+            private void switchTarget(Label label, int branch) {
+                int probeId = LabelInfo.getProbeId(label);
+                if (probeId == LabelInfo.NO_PROBE) {
+                    jump(label, branch);
+                } else {
+                    probe(probeId, branch);
+                }
+            }
+
+            // ** Replays the method like JaCoCo's MethodAnalyzer, to know the tree node of each visited instruction
+            @Override
+            public void accept(MethodNode methodNode, MethodVisitor methodVisitor) {
+                output = FilterOutput.of(filter, methodNode, ClassIndexer.this);
+                methodVisitor.visitCode();
+                for (TryCatchBlockNode block : methodNode.tryCatchBlocks) {
+                    block.accept(methodVisitor);
+                }
+                for (AbstractInsnNode node : methodNode.instructions) {
+                    currentNode = node;
+                    node.accept(methodVisitor);
+                }
+                methodVisitor.visitEnd();
+            }
+
+            @Override
+            public void visitLabel(Label label) {
+                pendingLabels.add(label);
+                if (!LabelInfo.isSuccessor(label)) {
+                    current = -1;
+                }
+            }
+
+            @Override
+            public void visitLineNumber(int line, Label start) {
+                currentLine = line;
+            }
+
+            @Override
+            public void visitInsn(int opcode) {
+                instruction();
+            }
+
+            @Override
+            public void visitIntInsn(int opcode, int operand) {
+                instruction();
+            }
+
+            @Override
+            public void visitVarInsn(int opcode, int var) {
+                instruction();
+            }
+
+            @Override
+            public void visitTypeInsn(int opcode, String type) {
+                instruction();
+            }
+
+            @Override
+            public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+                instruction();
+            }
+
+            @Override
+            public void visitMethodInsn(int opcode, String owner, String name, String descriptor,
+                                        boolean isInterface) {
+                instruction();
+            }
+
+            @Override
+            public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle,
+                                               Object... bootstrapMethodArguments) {
+                instruction();
+            }
+
+            @Override
+            public void visitJumpInsn(int opcode, Label label) {
+                instruction();
+                jump(label, 1);
+            }
+
+            @Override
+            public void visitLdcInsn(Object value) {
+                instruction();
+            }
+
+            @Override
+            public void visitIincInsn(int var, int increment) {
+                instruction();
+            }
+
+            @Override
+            public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+                switchTargets(dflt, labels);
+            }
+
+            @Override
+            public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+                switchTargets(dflt, labels);
+            }
+
+            @Override
+            public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+                instruction();
+            }
+
+            @Override
+            public void visitProbe(int probeId) {
+                probe(probeId, 0);
+                current = -1;
+            }
+
+            @Override
+            public void visitJumpInsnWithProbe(int opcode, Label label, int probeId, IFrame frame) {
+                instruction();
+                probe(probeId, 1);
+            }
+
+            @Override
+            public void visitInsnWithProbe(int opcode, int probeId) {
+                instruction();
+                probe(probeId, 0);
+            }
+
+            @Override
+            public void visitTableSwitchInsnWithProbes(int min, int max, Label dflt, Label[] labels, IFrame frame) {
+                switchTargets(dflt, labels);
+            }
+
+            @Override
+            public void visitLookupSwitchInsnWithProbes(Label dflt, int[] keys, Label[] labels, IFrame frame) {
+                switchTargets(dflt, labels);
+            }
+
+            @Override
+            public void visitEnd() {
+                int size = instructionLines.size();
+                int[] predecessors = new int[size];
+                int[] predecessorBranches = new int[size];
+                for (int i = 0; i < size; i++) {
+                    predecessors[i] = fallThrough.get(i);
+                }
+                for (int j = 0; j < jumpTargets.size(); j++) {
+                    Integer target = labelInstructions.get(jumpTargets.get(j));
+                    if (target != null) {
+                        predecessors[target] = jumpSources.get(j);
+                        predecessorBranches[target] = jumpBranches.get(j);
+                    }
+                }
+
+                // ** Filtered instructions count as their representative, the first copy of a duplicated block
+                Map<AbstractInsnNode, Integer> nodeIndexes = new IdentityHashMap<>();
+                for (int i = 0; i < size; i++) {
+                    nodeIndexes.put(instructionNodes.get(i), i);
+                }
+                int[] representatives = new int[size];
+                boolean[] live = new boolean[size];
+                for (int i = 0; i < size; i++) {
+                    AbstractInsnNode representative = output.representative(instructionNodes.get(i));
+                    representatives[i] = nodeIndexes.getOrDefault(representative, i);
+                    live[i] = !output.ignored.contains(representative);
+                }
+
+                int[] elements;
+                List<int[]> replaced = new ArrayList<>();
+                if (branches) {
+                    elements = indexBranches(nodeIndexes, representatives, live, replaced);
+                } else {
+                    // ** Only lines some probe covers are elements, a chain ends where an earlier one passed
+                    boolean[] reachable = new boolean[size];
+                    TreeSet<Integer> methodLines = new TreeSet<>();
+                    for (int[] probe : probes.values()) {
+                        for (int i = probe[0]; i >= 0 && !reachable[i]; i = predecessors[i]) {
+                            reachable[i] = true;
+                            if (live[i] && instructionLines.get(representatives[i]) >= 0) {
+                                methodLines.add(instructionLines.get(representatives[i]));
+                            }
+                        }
+                    }
+                    // ** Line IDs in line order within the method, methods in visiting order
+                    Map<Integer, Integer> lineIds = new HashMap<>();
+                    for (int line : methodLines) {
+                        lineIds.put(line, signatures.size());
+                        signatures.add(CoverageFormat.lineSignature(methodSignature, line));
+                    }
+                    elements = new int[size];
+                    for (int i = 0; i < size; i++) {
+                        elements[i] = reachable[i] && live[i]
+                                ? lineIds.getOrDefault(instructionLines.get(representatives[i]), -1) : -1;
+                    }
+                }
+                addInstructions(predecessors, predecessorBranches, elements,
+                        branchCounts.stream().mapToInt(Integer::intValue).toArray(), probes, replaced);
+            }
+
+            /**
+             * Adds a branch element for every branch of the instructions with at least two, in line order and
+             * within a line in bytecode order, numbered per line. An instruction whose branches a filter replaced
+             * has one per replacement target instead, covered together with any copy of that target.
+             *
+             * @param replaced receives the pairs of an instruction and the replaced branch it covers
+             * @return the ID of branch 0 of every instruction, -1 for instructions without branch elements or with
+             * replaced branches
+             */
+            private int[] indexBranches(Map<AbstractInsnNode, Integer> nodeIndexes, int[] representatives,
+                                        boolean[] live, List<int[]> replaced) {
+                int size = instructionLines.size();
+                int[] totals = new int[size];
+                for (int i = 0; i < size; i++) {
+                    totals[i] = branchCounts.get(i);
+                }
+                Map<Integer, Set<AbstractInsnNode>> replacements = new HashMap<>();
+                output.replacements.forEach((source, targets) -> {
+                    Integer instruction = nodeIndexes.get(source);
+                    if (instruction != null) {
+                        replacements.put(instruction, targets);
+                        totals[instruction] = targets.size();
+                    }
+                });
+
+                int[] firstBranch = new int[size];
+                Arrays.fill(firstBranch, -1);
+                List<Integer> branching = new ArrayList<>();
+                for (int i = 0; i < size; i++) {
+                    if (representatives[i] == i && live[i] && totals[i] >= 2 && instructionLines.get(i) >= 0) {
+                        branching.add(i);
+                    }
+                }
+                branching.sort(Comparator.comparing(instructionLines::get));
+
+                int line = -1;
+                int lineBranch = 0;
+                for (int i : branching) {
+                    if (instructionLines.get(i) != line) {
+                        line = instructionLines.get(i);
+                        lineBranch = 0;
+                    }
+                    firstBranch[i] = signatures.size();
+                    for (int b = 0; b < totals[i]; b++) {
+                        signatures.add(CoverageFormat.branchSignature(methodSignature, line, lineBranch++));
+                    }
+                }
+
+                replacements.forEach((source, targets) -> {
+                    if (firstBranch[source] < 0) {
+                        return;
+                    }
+                    int branch = firstBranch[source];
+                    for (AbstractInsnNode target : targets) {
+                        Integer instruction = nodeIndexes.get(target);
+                        for (int i = 0; instruction != null && i < size; i++) {
+                            if (representatives[i] == representatives[instruction]) {
+                                replaced.add(new int[]{i, branch});
+                            }
+                        }
+                        branch++;
+                    }
+                });
+
+                int[] elements = new int[size];
+                for (int i = 0; i < size; i++) {
+                    int representative = representatives[i];
+                    elements[i] = live[i] && !replacements.containsKey(representative) ? firstBranch[representative]
+                            : -1;
+                }
+                return elements;
+            }
+        }
+    }
+
+    /**
+     * What JaCoCo's filters decide for one method, kept like its MethodCoverageCalculator: merged instructions
+     * point to the instruction they are merged into.
+     */
+    private static final class FilterOutput implements IFilterOutput {
+        private final Set<AbstractInsnNode> ignored = Collections.newSetFromMap(new IdentityHashMap<>());
+        private final Map<AbstractInsnNode, AbstractInsnNode> merged = new IdentityHashMap<>();
+        private final Map<AbstractInsnNode, Set<AbstractInsnNode>> replacements = new IdentityHashMap<>();
+
+        private static FilterOutput of(IFilter filter, MethodNode method, IFilterContext context) {
+            FilterOutput output = new FilterOutput();
+            filter.filter(method, context, output);
+            return output;
+        }
+
+        @Override
+        public void ignore(AbstractInsnNode fromInclusive, AbstractInsnNode toInclusive) {
+            for (AbstractInsnNode node = fromInclusive; node != toInclusive; node = node.getNext()) {
+                ignored.add(node);
+            }
+            ignored.add(toInclusive);
+        }
+
+        @Override
+        public void merge(AbstractInsnNode i1, AbstractInsnNode i2) {
+            AbstractInsnNode representative = representative(i1);
+            AbstractInsnNode duplicate = representative(i2);
+            if (representative != duplicate) {
+                merged.put(duplicate, representative);
+            }
+        }
+
+        @Override
+        public void replaceBranches(AbstractInsnNode source, Set<AbstractInsnNode> newTargets) {
+            replacements.put(source, newTargets);
+        }
+
+        private AbstractInsnNode representative(AbstractInsnNode node) {
+            AbstractInsnNode representative = node;
+            while (merged.containsKey(representative)) {
+                representative = merged.get(representative);
+            }
+            return representative;
+        }
+
+        private boolean hasCode(MethodNode method) {
+            for (AbstractInsnNode node : method.instructions) {
+                if (node.getOpcode() >= 0 && !ignored.contains(node) && !merged.containsKey(node)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
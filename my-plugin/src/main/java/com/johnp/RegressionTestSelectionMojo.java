@@ -0,0 +1,118 @@
+package com.johnp;
+
+import com.johnp.util.BytecodeHashes;
+import com.johnp.util.CoverageFormat;
+import com.johnp.util.IncrementalPlan;
+import com.johnp.util.SpectrumSnapshot;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.BuildPluginManager;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.twdata.maven.mojoexecutor.MojoExecutor.*;
+
+/**
+ * Regression test selection: runs only the tests whose recorded coverage includes a method changed since the
+ * spectrum snapshot of the last SBFL run, see {@link SpectrumSnapshot#planByMethod}. Changes without coverage
+ * history (new classes, never covered classes, shared test helpers) run the full suite.
+ */
+@Mojo(name = "selectTests", defaultPhase = LifecyclePhase.TEST,
+        requiresDependencyResolution = ResolutionScope.TEST)
+public class RegressionTestSelectionMojo extends AbstractMojo {
+
+    @Parameter(defaultValue = "${session}", readonly = true)
+    private MavenSession session;
+
+    @Parameter(defaultValue = "${project}", readonly = true)
+    private MavenProject project;
+
+    @Component
+    private BuildPluginManager pluginManager;
+
+    @Parameter(property = "testFailureIgnore", defaultValue = "false")
+    private boolean testFailureIgnore;
+
+    /**
+     * Surefire provider running the tests, {@code junit4} or {@code junit-platform} (Jupiter, Vintage, ...), like
+     * the coverage goal's.
+     */
+    @Parameter(property = "sbfl.testProvider", defaultValue = JacocoSurefireInvokerMojo.PROVIDER_JUNIT4)
+    private String testProvider;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        String provider = JacocoSurefireInvokerMojo.providerArtifact(testProvider);
+        IncrementalPlan plan;
+        try {
+            plan = selectTests();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to select tests from the spectrum snapshot", e);
+        }
+        if (plan.isEmpty()) {
+            getLog().info("No changed methods are covered by any test, nothing to run");
+            return;
+        }
+
+        List<Element> configuration = new ArrayList<>();
+        configuration.add(element(name("testFailureIgnore"), String.valueOf(testFailureIgnore)));
+        if (plan.isFull()) {
+            getLog().info("Running the full test suite");
+        } else {
+            getLog().info("Running selected tests: " + plan.testSelection());
+            configuration.add(element(name("test"), plan.testSelection()));
+            configuration.add(element(name("failIfNoSpecifiedTests"), "false"));
+        }
+
+        executeMojo(
+                plugin(
+                        groupId("org.apache.maven.plugins"),
+                        artifactId("maven-surefire-plugin"),
+                        version("3.2.5"),
+                        dependencies(
+                                dependency(
+                                        groupId("org.apache.maven.surefire"),
+                                        artifactId(provider),
+                                        version("3.2.5")
+                                )
+                        )
+                ),
+                goal("test"),
+                configuration(configuration.toArray(new Element[0])),
+                executionEnvironment(
+                        project,
+                        session,
+                        pluginManager
+                )
+        );
+    }
+
+    private IncrementalPlan selectTests() throws IOException {
+        Path snapshotDir = Paths.get(project.getBuild().getDirectory(), CoverageFormat.SNAPSHOT_DIR);
+        SpectrumSnapshot snapshot = SpectrumSnapshot.load(snapshotDir);
+        MethodHashes previousMethods = MethodHashes.read(snapshotDir.resolve(MethodHashes.FILE));
+        if (snapshot == null || previousMethods == null) {
+            getLog().info("No coverage history in " + snapshotDir + ", run the SBFL goal to record one");
+            return IncrementalPlan.full();
+        }
+
+        Path classesDir = Paths.get(project.getBuild().getOutputDirectory());
+        BytecodeHashes hashes = IncrementalCoverage.scanHashes(project);
+        IncrementalPlan plan = snapshot.planByMethod(hashes, previousMethods.getHashes(),
+                MethodHashes.scan(classesDir).getHashes());
+        getLog().info("Coverage history of " + snapshot.testCount() + " tests: " + plan);
+        return plan;
+    }
+}
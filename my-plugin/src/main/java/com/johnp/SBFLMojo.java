@@ -1,11 +1,19 @@
 package com.johnp;
 
+import com.johnp.util.BytecodeHashes;
+import com.johnp.util.CoverageFormat;
+import com.johnp.util.ExportSinks;
+import com.johnp.util.PipelineMetrics;
+import com.johnp.util.SpectrumSnapshot;
+import com.johnp.util.SuspicionFormula;
+import com.johnp.util.SuspicionFormulas;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
 
 import java.io.File;
@@ -13,8 +21,11 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
 
-@Mojo(name = "SBFL", defaultPhase = LifecyclePhase.TEST)
+@Mojo(name = "SBFL", defaultPhase = LifecyclePhase.TEST,
+        requiresDependencyResolution = ResolutionScope.TEST)
 public class SBFLMojo extends AbstractMojo {
 
     @Parameter(defaultValue = "${project}", required = true, readonly = true)
@@ -22,9 +33,51 @@ public class SBFLMojo extends AbstractMojo {
     private File outputDirectory;
     private Runner runner;
 
+    /**
+     * Suspicion formulas to compute, by built-in name (Tarantula, SBI, Jaccard, Ochiai, DStar2, DStar3, Op2,
+     * Barinel, Kulczynski2, Ochiai2) or fully qualified SuspicionFormula class name. The first one ranks.
+     */
+    @Parameter(property = "sbfl.formulas", defaultValue = "Tarantula,SBI,Jaccard,Ochiai")
+    private List<String> formulas;
+
+    /**
+     * Number of top-ranked methods written to the report; 0 (the default) exports every covered method.
+     */
+    @Parameter(property = "sbfl.top", defaultValue = "0")
+    private int top;
+
+    /**
+     * Merge this build's coverage into the spectrum snapshot of the previous build instead of scoring it alone.
+     */
+    @Parameter(property = "sbfl.incremental", defaultValue = "true")
+    private boolean incremental;
+
+    /**
+     * Report formats written side by side into the coverage directory: csv, csv.gz, xlsx, arrow, json, html.
+     */
+    @Parameter(property = "sbfl.exports", defaultValue = "csv,xlsx,arrow,json,html")
+    private List<String> exports;
+
+    /**
+     * Write the CSV report gzip compressed, as Suspicion.csv.gz.
+     */
+    @Parameter(property = "sbfl.csvGzip", defaultValue = "false")
+    private boolean csvGzip;
+
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
         runner = new Runner();
+        List<SuspicionFormula> enabledFormulas;
+        try {
+            enabledFormulas = SuspicionFormulas.forNames(formulas);
+            runner.setExports(ExportSinks.forNames(exports, csvGzip));
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+        getLog().info("Suspicion formulas: " + enabledFormulas);
+        if (top > 0) {
+            getLog().info("Reports are limited to the top " + top + " methods (sbfl.top), 0 reports all of them");
+        }
         try {
             getLog().info("LOLOL :outputDirectory" + project.getBuild().getDirectory());
             try {
@@ -38,9 +91,36 @@ public class SBFLMojo extends AbstractMojo {
             } catch (IOException e) {
                 getLog().error("Failed to create per-test-coverage directory", e);
             }
-            runner.runSbfl(project.getBuild().getDirectory() + "/per-test-coverage", 1);
+            String coverageDir = project.getBuild().getDirectory() + "/per-test-coverage";
+            if (incremental) {
+                Path snapshotDir = Paths.get(project.getBuild().getDirectory(), CoverageFormat.SNAPSHOT_DIR);
+                Path classesDir = Paths.get(project.getBuild().getOutputDirectory());
+                BytecodeHashes hashes = IncrementalCoverage.scanHashes(project);
+                SpectrumSnapshot snapshot = runner.runIncrementalSbfl(coverageDir, snapshotDir, hashes, 1,
+                        enabledFormulas, top);
+                // ** Method-level baseline for regression test selection, only valid for up-to-date coverage
+                if (snapshot.matches(hashes)) {
+                    MethodHashes.scan(classesDir).write(snapshotDir.resolve(MethodHashes.FILE));
+                }
+            } else {
+                runner.runSbfl(coverageDir, 1, enabledFormulas, top);
+            }
+            runner.getExportTimes().forEach((fileName, nanos) ->
+                    getLog().info(String.format(Locale.ROOT, "Exported %s in %.1f ms", fileName, nanos / 1e6)));
+            writeMetrics(Paths.get(coverageDir));
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
+
+    // ** Pipeline phases of this run and per-test latencies of the test JVMs, one summary to track over builds
+    private void writeMetrics(Path coverageDir) throws IOException {
+        PipelineMetrics metrics = runner.getMetrics();
+        int forks = metrics.mergeForkMetrics(coverageDir);
+        Path file = Paths.get(project.getBuild().getDirectory(), PipelineMetrics.JSON_FILE);
+        metrics.writeJson(file);
+
+        getLog().info("SBFL pipeline metrics (" + forks + " test JVMs): " + file);
+        metrics.summary().forEach(line -> getLog().info("  " + line));
+    }
 }
@@ -0,0 +1,24 @@
+package com.johnp;
+
+import org.codehaus.plexus.util.cli.CommandLineUtils;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class JacocoMojoTest {
+
+    @Test
+    public void pathsWithSpacesStayOneArgument() throws Exception {
+        String argLine = "-ea"
+                + JacocoMojo.systemProperty(PerTestCoverageListener.COVERAGE_DIR_PROPERTY,
+                "/Users/Jane Doe/my project/target/per-test-coverage")
+                + JacocoMojo.systemProperty(PerTestCoverageListener.GRANULARITY_PROPERTY, "line");
+
+        // ** Surefire splits the argLine like a shell command line
+        assertArrayEquals(new String[]{"-ea",
+                        "-D" + PerTestCoverageListener.COVERAGE_DIR_PROPERTY
+                                + "=/Users/Jane Doe/my project/target/per-test-coverage",
+                        "-D" + PerTestCoverageListener.GRANULARITY_PROPERTY + "=line"},
+                CommandLineUtils.translateCommandline(argLine));
+    }
+}
@@ -0,0 +1,97 @@
+package com.johnp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MethodHashesTest {
+
+    private static final String CLASS = "com/example/Calculator";
+    private static final String ADD = CLASS + ":add:(II)I";
+    private static final String DIVIDE = CLASS + ":divide:(II)I";
+
+    private static final String CALCULATOR = "package com.example;\n"
+            + "public class Calculator {\n"
+            + "    private int offset;\n"
+            + "    public int add(int a, int b) {\n"
+            + "        return a + b + offset;\n"
+            + "    }\n"
+            + "    public int divide(int a, int b) {\n"
+            + "        return a / b;\n"
+            + "    }\n"
+            + "}\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void lineNumberChangesKeepTheHashes() throws IOException {
+        Map<String, Long> moved = hashes(CALCULATOR.replace("public class Calculator {\n",
+                "public class Calculator {\n\n\n    // moved down\n"));
+
+        assertEquals(hashes(CALCULATOR), moved);
+    }
+
+    @Test
+    public void changedBodyChangesOnlyItsMethod() throws IOException {
+        Map<String, Long> before = hashes(CALCULATOR);
+        Map<String, Long> after = hashes(CALCULATOR.replace("a + b + offset", "a + b - offset"));
+
+        assertNotEquals(before.get(ADD), after.get(ADD));
+        assertEquals(before.get(DIVIDE), after.get(DIVIDE));
+        assertEquals(before.get(CLASS), after.get(CLASS));
+    }
+
+    @Test
+    public void changedDeclarationChangesTheClassHash() throws IOException {
+        Map<String, Long> before = hashes(CALCULATOR);
+        Map<String, Long> after = hashes(CALCULATOR.replace("private int offset;", "private long offset;")
+                .replace("a + b + offset", "(int) (a + b + offset)"));
+
+        assertNotEquals(before.get(CLASS), after.get(CLASS));
+        assertEquals(before.get(DIVIDE), after.get(DIVIDE));
+    }
+
+    @Test
+    public void addedMethodGetsItsOwnHash() throws IOException {
+        Map<String, Long> before = hashes(CALCULATOR);
+        Map<String, Long> after = hashes(CALCULATOR.replace("    public int divide",
+                "    public int negate(int a) {\n        return -a;\n    }\n    public int divide"));
+
+        String negate = CLASS + ":negate:(I)I";
+        assertNull(before.get(negate));
+        assertTrue(after.containsKey(negate));
+        assertEquals(before.get(ADD), after.get(ADD));
+        assertEquals(before.get(CLASS), after.get(CLASS));
+    }
+
+    @Test
+    public void writtenHashesReadBackTheSame() throws IOException {
+        Path classesDir = folder.getRoot().toPath().resolve("classes");
+        TestCompiler.compile(classesDir, "com.example.Calculator", CALCULATOR);
+        MethodHashes hashes = MethodHashes.scan(classesDir);
+
+        Path file = folder.getRoot().toPath().resolve("snapshot").resolve(MethodHashes.FILE);
+        hashes.write(file);
+
+        assertEquals(hashes.getHashes(), MethodHashes.read(file).getHashes());
+        assertNull(MethodHashes.read(file.resolveSibling("missing.hashes")));
+        assertFalse(hashes.getHashes().isEmpty());
+    }
+
+    private Map<String, Long> hashes(String source) throws IOException {
+        Path classesDir = folder.newFolder().toPath().resolve("classes");
+        TestCompiler.compile(classesDir, "com.example.Calculator", source);
+        return MethodHashes.scan(classesDir).getHashes();
+    }
+}
@@ -0,0 +1,276 @@
+package com.johnp;
+
+import com.johnp.util.CoverageFormat;
+import org.jacoco.core.analysis.Analyzer;
+import org.jacoco.core.analysis.CoverageBuilder;
+import org.jacoco.core.analysis.IClassCoverage;
+import org.jacoco.core.analysis.ILine;
+import org.jacoco.core.analysis.IMethodCoverage;
+import org.jacoco.core.data.ExecutionData;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.internal.data.CRC64;
+import org.jacoco.core.internal.flow.ClassProbesAdapter;
+import org.jacoco.core.internal.flow.ClassProbesVisitor;
+import org.jacoco.core.internal.flow.MethodProbesVisitor;
+import org.jacoco.core.internal.instr.InstrSupport;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.objectweb.asm.ClassReader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Replays random probe hits through {@link ProbeIndex} and through JaCoCo's own analysis of the same classes:
+ * both have to report the same covered lines, and the same number of covered branches per line. The fixtures
+ * include what JaCoCo's filters rewrite: finally blocks, string switches, try-with-resources, assert, enums and
+ * private empty constructors.
+ */
+public class ProbeIndexTest {
+
+    private static final int ROUNDS = 200;
+
+    private static final String BRANCHES = "package fixture;\n"
+            + "import java.util.List;\n"
+            + "import java.util.function.IntPredicate;\n"
+            + "public class Branches {\n"
+            + "    private int total;\n"
+            + "    public int classify(int value) {\n"
+            + "        if (value < 0) {\n"
+            + "            return -1;\n"
+            + "        } else if (value == 0) {\n"
+            + "            return 0;\n"
+            + "        }\n"
+            + "        return value > 100 && value % 2 == 0 ? 2 : 1;\n"
+            + "    }\n"
+            + "    public int loop(int[] values) {\n"
+            + "        int sum = 0;\n"
+            + "        for (int value : values) {\n"
+            + "            if (value > 0) {\n"
+            + "                sum += value;\n"
+            + "            } else {\n"
+            + "                continue;\n"
+            + "            }\n"
+            + "            total++;\n"
+            + "        }\n"
+            + "        while (sum > 1000 || sum < -1000) {\n"
+            + "            sum /= 2;\n"
+            + "        }\n"
+            + "        return sum;\n"
+            + "    }\n"
+            + "    public String days(int day) {\n"
+            + "        switch (day) {\n"
+            + "            case 1: return \"mon\";\n"
+            + "            case 2:\n"
+            + "            case 3: return \"tue-wed\";\n"
+            + "            case 4: return \"thu\";\n"
+            + "            default: return \"other\";\n"
+            + "        }\n"
+            + "    }\n"
+            + "    public int codes(int code) {\n"
+            + "        int result = 0;\n"
+            + "        switch (code) {\n"
+            + "            case 10: result = 1; break;\n"
+            + "            case 1000: result = 2;\n"
+            + "            case 100000: result += 3; break;\n"
+            + "            default: result = -1;\n"
+            + "        }\n"
+            + "        return result;\n"
+            + "    }\n"
+            + "    public int guarded(int value) {\n"
+            + "        total++;\n"
+            + "        try {\n"
+            + "            if (value == 0) {\n"
+            + "                throw new IllegalArgumentException(\"zero\");\n"
+            + "            }\n"
+            + "            return 10 / value;\n"
+            + "        } finally {\n"
+            + "            total = total > 5 ? 0 : total - 1;\n"
+            + "        }\n"
+            + "    }\n"
+            + "    public int command(String name) {\n"
+            + "        switch (name) {\n"
+            + "            case \"start\": return 1;\n"
+            + "            case \"stop\":\n"
+            + "            case \"halt\": return 2;\n"
+            + "            default: return 0;\n"
+            + "        }\n"
+            + "    }\n"
+            + "    public int firstChar(String text) throws java.io.IOException {\n"
+            + "        try (java.io.StringReader reader = new java.io.StringReader(text)) {\n"
+            + "            return reader.read();\n"
+            + "        }\n"
+            + "    }\n"
+            + "    public int checked(int value) {\n"
+            + "        assert value >= 0 : \"negative\";\n"
+            + "        return value;\n"
+            + "    }\n"
+            + "    enum Mode { ON, OFF }\n"
+            + "    static final class Holder {\n"
+            + "        private Holder() {\n"
+            + "        }\n"
+            + "    }\n"
+            + "    public int parse(String text) {\n"
+            + "        try {\n"
+            + "            return Integer.parseInt(text);\n"
+            + "        } catch (NumberFormatException e) {\n"
+            + "            return text.isEmpty() ? 0 : -1;\n"
+            + "        }\n"
+            + "    }\n"
+            + "    public long lambdas(List<Integer> values) {\n"
+            + "        IntPredicate even = v -> v % 2 == 0 && v != 4;\n"
+            + "        return values.stream().filter(v -> v > 0).mapToInt(Integer::intValue).filter(even).count();\n"
+            + "    }\n"
+            + "    public Runnable anonymous() {\n"
+            + "        return new Runnable() {\n"
+            + "            @Override\n"
+            + "            public void run() {\n"
+            + "                total = total > 0 ? total - 1 : 0;\n"
+            + "            }\n"
+            + "        };\n"
+            + "    }\n"
+            + "}\n";
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static Path classesDir;
+
+    @BeforeClass
+    public static void compileFixtures() throws IOException {
+        classesDir = folder.getRoot().toPath().resolve("classes");
+        TestCompiler.compile(classesDir, "fixture.Branches", BRANCHES);
+    }
+
+    @Test
+    public void coveredLinesMatchJacoco() throws IOException {
+        assertMatchesJacoco(CoverageFormat.GRANULARITY_LINE);
+    }
+
+    @Test
+    public void coveredBranchesMatchJacoco() throws IOException {
+        assertMatchesJacoco(CoverageFormat.GRANULARITY_BRANCH);
+    }
+
+    @Test
+    public void methodsAreCoveredByTheirOwnProbes() throws IOException {
+        ProbeIndex index = ProbeIndex.build(classesDir.toFile(), className -> false);
+        for (Path classFile : classFiles()) {
+            byte[] bytes = Files.readAllBytes(classFile);
+            Map<String, Integer> mine = covered(index, bytes, allProbes(bytes));
+
+            Map<String, Integer> theirs = new TreeMap<>();
+            for (IClassCoverage coverage : analyze(bytes, allProbes(bytes), classFile)) {
+                for (IMethodCoverage method : coverage.getMethods()) {
+                    theirs.put(coverage.getName() + ":" + method.getName() + ":" + method.getDesc(), 1);
+                }
+            }
+            assertEquals(classFile.toString(), theirs, mine);
+        }
+    }
+
+    private static void assertMatchesJacoco(String granularity) throws IOException {
+        ProbeIndex index = ProbeIndex.build(classesDir.toFile(), className -> false, granularity);
+        Random random = new Random(15);
+        for (Path classFile : classFiles()) {
+            byte[] bytes = Files.readAllBytes(classFile);
+            int probeCount = allProbes(bytes).length;
+            for (int round = 0; round < ROUNDS; round++) {
+                // ** Sparse to dense hit sets, so chains end at instructions covered before as well as at the start
+                double density = random.nextDouble();
+                boolean[] probes = new boolean[probeCount];
+                for (int p = 0; p < probeCount; p++) {
+                    probes[p] = random.nextDouble() < density;
+                }
+
+                Map<String, Integer> mine = new TreeMap<>();
+                covered(index, bytes, probes).forEach((signature, count) -> mine.merge(
+                        granularity.equals(CoverageFormat.GRANULARITY_BRANCH)
+                                ? signature.substring(0, signature.lastIndexOf(CoverageFormat.BRANCH_SEPARATOR))
+                                : signature, 1, Integer::sum));
+                assertEquals(classFile + " " + granularity + " round " + round,
+                        jacocoLines(bytes, probes, classFile, granularity), mine);
+            }
+        }
+    }
+
+    private static List<Path> classFiles() throws IOException {
+        List<Path> classFiles;
+        try (Stream<Path> files = Files.walk(classesDir)) {
+            classFiles = files.filter(file -> file.toString().endsWith(".class")).sorted().collect(Collectors.toList());
+        }
+        assertTrue(classFiles.size() > 1);
+        return classFiles;
+    }
+
+    // ** Signatures of the elements reported for the hit probes, each counted once
+    private static Map<String, Integer> covered(ProbeIndex index, byte[] bytes, boolean[] probes) {
+        ExecutionDataStore store = new ExecutionDataStore();
+        store.put(new ExecutionData(CRC64.classId(bytes), new ClassReader(bytes).getClassName(), probes));
+        Map<String, Integer> covered = new TreeMap<>();
+        index.forEachCovered(store, id -> covered.put(index.signature(id), 1));
+        return covered;
+    }
+
+    // ** Covered lines, or the number of covered branches of each line, as JaCoCo's analysis reports them
+    private static Map<String, Integer> jacocoLines(byte[] bytes, boolean[] probes, Path classFile,
+                                                    String granularity) throws IOException {
+        Map<String, Integer> lines = new TreeMap<>();
+        for (IClassCoverage coverage : analyze(bytes, probes, classFile)) {
+            for (IMethodCoverage method : coverage.getMethods()) {
+                String signature = coverage.getName() + ":" + method.getName() + ":" + method.getDesc();
+                for (int line = method.getFirstLine(); line > 0 && line <= method.getLastLine(); line++) {
+                    ILine counters = method.getLine(line);
+                    int covered = granularity.equals(CoverageFormat.GRANULARITY_BRANCH)
+                            ? counters.getBranchCounter().getCoveredCount()
+                            : Math.min(1, counters.getInstructionCounter().getCoveredCount());
+                    if (covered > 0) {
+                        lines.put(CoverageFormat.lineSignature(signature, line), covered);
+                    }
+                }
+            }
+        }
+        return lines;
+    }
+
+    private static Iterable<IClassCoverage> analyze(byte[] bytes, boolean[] probes, Path classFile)
+            throws IOException {
+        ExecutionDataStore store = new ExecutionDataStore();
+        store.put(new ExecutionData(CRC64.classId(bytes), new ClassReader(bytes).getClassName(), probes));
+        CoverageBuilder builder = new CoverageBuilder();
+        new Analyzer(store, builder).analyzeClass(bytes, classFile.toString());
+        return builder.getClasses();
+    }
+
+    private static boolean[] allProbes(byte[] bytes) {
+        int[] count = {0};
+        InstrSupport.classReaderFor(bytes).accept(new ClassProbesAdapter(new ClassProbesVisitor() {
+            @Override
+            public MethodProbesVisitor visitMethod(int access, String name, String desc, String signature,
+                                                   String[] exceptions) {
+                return null;
+            }
+
+            @Override
+            public void visitTotalProbeCount(int probeCount) {
+                count[0] = probeCount;
+            }
+        }, false), 0);
+        boolean[] probes = new boolean[count[0]];
+        Arrays.fill(probes, true);
+        return probes;
+    }
+}
@@ -0,0 +1,37 @@
+package com.johnp;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Compiles fixture sources with the JDK's compiler, with debug information like a Maven build.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class TestCompiler {
+
+    /**
+     * Compiles the top-level class {@code className} (dotted) from {@code source} into {@code classesDir}.
+     */
+    static void compile(Path classesDir, String className, String source) throws IOException {
+        Path sourceFile = classesDir.resolveSibling(classesDir.getFileName() + "-src")
+                .resolve(className.replace('.', '/') + ".java");
+        Files.createDirectories(sourceFile.getParent());
+        Files.createDirectories(classesDir);
+        Files.write(sourceFile, source.getBytes(StandardCharsets.UTF_8));
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        int exitCode = compiler.run(null, null, errors, "-g", "-d", classesDir.toString(), sourceFile.toString());
+        if (exitCode != 0) {
+            throw new IllegalStateException("Fixture " + className + " does not compile:\n" + errors);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.johnp.benchmarks;
+
+import com.johnp.bean.MethodInfo;
+import com.johnp.bean.Spectrum;
+import com.johnp.util.Analyzer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingestion of a spectrum store: {@link Analyzer#analyzeFolder} (counts, scores and the {@link MethodInfo} map) and
+ * {@link Analyzer#analyzeSpectrum} (counts only, the path the Runner takes).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AnalyzerBenchmark {
+
+    @Param({"1000", "10000"})
+    private int tests;
+
+    @Param({"1000", "10000"})
+    private int methods;
+
+    // ** Fraction of the methods each test covers
+    @Param({"0.01", "0.05"})
+    private double density;
+
+    private Path dir;
+
+    @Setup(Level.Trial)
+    public void writeStore() throws IOException {
+        dir = Files.createTempDirectory("sbfl-bench-analyzer");
+        SpectrumFixture.writeStore(dir, tests, methods, density);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteStore() throws IOException {
+        SpectrumFixture.delete(dir);
+    }
+
+    @Benchmark
+    public Map<String, MethodInfo> analyzeFolder() throws IOException {
+        return Analyzer.analyzeFolder(dir.toFile(), 1);
+    }
+
+    @Benchmark
+    public Spectrum analyzeSpectrum() throws IOException {
+        return new Analyzer().analyzeSpectrum(dir.toFile(), 1);
+    }
+}
@@ -0,0 +1,132 @@
+package com.johnp.benchmarks;
+
+import com.johnp.bean.MethodInfo;
+import com.johnp.bean.RankingSnapshot;
+import com.johnp.bean.ScoreTable;
+import com.johnp.bean.Spectrum;
+import com.johnp.util.ExportPipeline;
+import com.johnp.util.ExportSinks;
+import com.johnp.util.FileExportUtil;
+import com.johnp.util.HtmlReportExporter;
+import com.johnp.util.PipelineMetrics;
+import com.johnp.util.SuspicionProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Report export of every ranked method: CSV (plain and gzip), Arrow, XLSX and the paginated HTML report from the
+ * columnar scores, CSV and XLSX from the sorted {@link MethodInfo} list, and every default format at once through
+ * the {@link ExportPipeline}. Each invocation overwrites the same files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ExportBenchmark {
+
+    @Param({"1000"})
+    private int tests;
+
+    @Param({"1000", "10000"})
+    private int methods;
+
+    @Param({"0.05"})
+    private double density;
+
+    private Spectrum spectrum;
+    private ScoreTable scores;
+    private int[] order;
+    private RankingSnapshot ranking;
+    private List<Map.Entry<String, MethodInfo>> sorted;
+    private Path dir;
+
+    @Setup(Level.Trial)
+    public void rankSpectrum() throws IOException {
+        spectrum = SpectrumFixture.spectrum(tests, methods, density);
+        scores = SuspicionProcessor.calculateAll(spectrum);
+        order = SuspicionProcessor.rank(scores);
+        ranking = new RankingSnapshot(spectrum, scores, order);
+        sorted = SuspicionProcessor.sortSuspicion(spectrum.toMethodMap(scores));
+        dir = Files.createTempDirectory("sbfl-bench-export");
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteReports() throws IOException {
+        SpectrumFixture.delete(dir);
+    }
+
+    @Benchmark
+    public Path csvExport() throws IOException {
+        Path file = dir.resolve("Suspicion.csv");
+        FileExportUtil.csvExport(file.toString(), spectrum, scores, order);
+        return file;
+    }
+
+    @Benchmark
+    public Path csvExportGzip() throws IOException {
+        Path file = dir.resolve("Suspicion.csv.gz");
+        FileExportUtil.csvExport(file.toString(), spectrum, scores, order, true);
+        return file;
+    }
+
+    @Benchmark
+    public Path csvExportMethodInfo() throws IOException {
+        Path file = dir.resolve("SuspicionMethodInfo.csv");
+        FileExportUtil.csvExport(file.toString(), sorted);
+        return file;
+    }
+
+    @Benchmark
+    public Path arrowExport() throws IOException {
+        Path file = dir.resolve("Suspicion.arrow");
+        FileExportUtil.arrowExport(file.toString(), spectrum, scores, order);
+        return file;
+    }
+
+    @Benchmark
+    public Path xlsExportColumnar() throws IOException {
+        Path file = dir.resolve("SuspicionColumnar.xlsx");
+        FileExportUtil.xlsExport(file.toString(), spectrum, scores, order);
+        return file;
+    }
+
+    @Benchmark
+    public Path htmlReport() throws IOException {
+        Path reportDir = dir.resolve("Suspicion-report");
+        HtmlReportExporter.export(reportDir, spectrum, scores, order);
+        return reportDir;
+    }
+
+    @Benchmark
+    public Path exportPipeline() throws IOException {
+        new ExportPipeline(ExportSinks.DEFAULTS, new PipelineMetrics()).export(ranking, dir);
+        return dir;
+    }
+
+    @Benchmark
+    public Path xlsExport() throws IOException {
+        Path file = dir.resolve("Suspicion.xlsx");
+        FileExportUtil.xlsExport(file.toString(), sorted);
+        return file;
+    }
+}
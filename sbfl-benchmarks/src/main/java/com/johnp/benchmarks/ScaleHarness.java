@@ -0,0 +1,131 @@
+package com.johnp.benchmarks;
+
+import com.johnp.Runner;
+import com.johnp.util.SpectrumGenerator;
+import com.johnp.util.SuspicionFormulas;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Generates a synthetic spectrum ({@link SpectrumGenerator}) and runs {@link Runner#runSbfl} against it, reporting
+ * wall time, peak heap, garbage collection and the rank of every planted fault.
+ * <p>
+ * {@code java -cp sbfl-benchmarks/target/benchmarks.jar com.johnp.benchmarks.ScaleHarness --tests 200000
+ * --methods 100000 --density 0.005}. Options and defaults: {@code --tests 10000 --methods 10000 --density 0.01
+ * --zipf 1.0 --failure-rate 0.01 --faults 3 --partitions 1 --seed 42 --top 0 --dir target/scale-spectrum}.
+ * Give the JVM enough heap with {@code -Xmx}, an out of memory error is a result too.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class ScaleHarness {
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = parse(args);
+        int tests = Integer.parseInt(options.getOrDefault("tests", "10000"));
+        int methods = Integer.parseInt(options.getOrDefault("methods", "10000"));
+        int top = Integer.parseInt(options.getOrDefault("top", "0"));
+        Path dir = Paths.get(options.getOrDefault("dir", "target/scale-spectrum"));
+
+        SpectrumGenerator generator = new SpectrumGenerator(tests, methods)
+                .density(Double.parseDouble(options.getOrDefault("density", "0.01")))
+                .zipfExponent(Double.parseDouble(options.getOrDefault("zipf", "1.0")))
+                .failureRate(Double.parseDouble(options.getOrDefault("failure-rate", "0.01")))
+                .faults(Integer.parseInt(options.getOrDefault("faults", "3")))
+                .partitions(Integer.parseInt(options.getOrDefault("partitions", "1")))
+                .seed(Long.parseLong(options.getOrDefault("seed", "42")));
+
+        long start = System.nanoTime();
+        SpectrumGenerator.Result generated = generator.generate(dir);
+        System.out.printf(Locale.ROOT, "Generated %,d tests (%,d failing, %,d coverage entries) in %.1f s%n",
+                generated.getTests(), generated.getFailedTests(), generated.getCoveredEntries(),
+                (System.nanoTime() - start) / 1e9);
+
+        // ** Only the SBFL run is measured, not the generator
+        System.gc();
+        List<MemoryPoolMXBean> heapPools = heapPools();
+        heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+        long gcCount = gcCount();
+        long gcMillis = gcMillis();
+
+        Runner runner = new Runner();
+        start = System.nanoTime();
+        // ** failCount 0, the generator decided which tests fail
+        runner.runSbfl(dir.toString(), 0, SuspicionFormulas.DEFAULTS, top);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+        System.out.printf(Locale.ROOT, "runSbfl: %.2f s wall, %,d MB peak heap (sum of pool peaks, max %,d MB),"
+                        + " %d GCs taking %,d ms%n", seconds, peakHeap >> 20,
+                Runtime.getRuntime().maxMemory() >> 20, gcCount() - gcCount, gcMillis() - gcMillis);
+        runner.getMetrics().summary().forEach(line -> System.out.println("  " + line));
+
+        Map<String, Integer> ranks = faultRanks(dir.resolve("Suspicion.csv"));
+        for (String fault : generated.getFaults()) {
+            Integer rank = ranks.get(fault);
+            System.out.println("Planted fault " + fault + ": " + (rank == null ? "not in the top " + top : "#" + rank));
+        }
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 == args.length) {
+                throw new IllegalArgumentException("Expected --option value pairs, got: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+
+    private static Map<String, Integer> faultRanks(Path report) throws IOException {
+        Map<String, Integer> ranks = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(report, StandardCharsets.UTF_8)) {
+            reader.readLine();
+            String line;
+            for (int rank = 1; (line = reader.readLine()) != null; rank++) {
+                int comma = line.indexOf(',');
+                ranks.put(comma < 0 ? line : line.substring(0, comma), rank);
+            }
+        }
+        return ranks;
+    }
+
+    private static List<MemoryPoolMXBean> heapPools() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .toList();
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(gc.getCollectionCount(), 0);
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(gc.getCollectionTime(), 0);
+        }
+        return millis;
+    }
+}
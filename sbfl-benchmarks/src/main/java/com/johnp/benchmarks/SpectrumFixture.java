@@ -0,0 +1,73 @@
+package com.johnp.benchmarks;
+
+import com.johnp.bean.Spectrum;
+import com.johnp.util.SpectrumGenerator;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+/**
+ * Deterministic benchmark inputs: every test covers {@code density * methods} methods drawn uniformly at random and
+ * about 1 in {@value #FAILING_EVERY} tests fails. The same parameters always produce the same data.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class SpectrumFixture {
+
+    static final long SEED = 42;
+    static final int FAILING_EVERY = 100;
+
+    static String[] signatures(int methods) {
+        String[] signatures = new String[methods];
+        for (int id = 0; id < methods; id++) {
+            signatures[id] = SpectrumGenerator.signature(id);
+        }
+        return signatures;
+    }
+
+    /**
+     * Writes a spectrum store of {@code tests} tests to {@code dir}, as the coverage listener would.
+     */
+    static void writeStore(Path dir, int tests, int methods, double density) throws IOException {
+        new SpectrumGenerator(tests, methods)
+                .density(density)
+                .zipfExponent(0)
+                .failureRate(1.0 / FAILING_EVERY)
+                .faults(0)
+                .seed(SEED)
+                .generate(dir);
+    }
+
+    /**
+     * The counts {@link #writeStore} would aggregate to, drawn directly per method.
+     */
+    static Spectrum spectrum(int tests, int methods, double density) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        int failedTests = (tests + FAILING_EVERY - 1) / FAILING_EVERY;
+        int passedTests = tests - failedTests;
+        int[] failed = new int[methods];
+        int[] passed = new int[methods];
+        for (int id = 0; id < methods; id++) {
+            // ** Expected count scaled by a uniform factor in [0, 2), enough spread to exercise the ranking ties
+            failed[id] = Math.min(failedTests, (int) (failedTests * density * 2 * random.nextDouble() + 0.5));
+            passed[id] = Math.min(passedTests, (int) (passedTests * density * 2 * random.nextDouble() + 0.5));
+        }
+        return new Spectrum(signatures(methods), failed, passed, failedTests, passedTests);
+    }
+
+    static void delete(Path dir) throws IOException {
+        if (dir == null || !Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.johnp.benchmarks;
+
+import com.johnp.bean.MethodInfo;
+import com.johnp.bean.ScoreTable;
+import com.johnp.bean.Spectrum;
+import com.johnp.util.SuspicionProcessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formula evaluation and ranking of {@link SuspicionProcessor}: scoring with the default formulas, the columnar
+ * {@code rank} and the map based {@code sortSuspicion}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SuspicionBenchmark {
+
+    @Param({"1000", "100000"})
+    private int tests;
+
+    @Param({"1000", "100000"})
+    private int methods;
+
+    @Param({"0.01", "0.05"})
+    private double density;
+
+    private Spectrum spectrum;
+    private ScoreTable scores;
+    private Map<String, MethodInfo> methodMap;
+
+    @Setup(Level.Trial)
+    public void buildSpectrum() {
+        spectrum = SpectrumFixture.spectrum(tests, methods, density);
+        scores = SuspicionProcessor.calculateAll(spectrum);
+        methodMap = spectrum.toMethodMap(scores);
+    }
+
+    @Benchmark
+    public ScoreTable calculateAll() {
+        return SuspicionProcessor.calculateAll(spectrum);
+    }
+
+    @Benchmark
+    public int[] rank() {
+        return SuspicionProcessor.rank(scores);
+    }
+
+    @Benchmark
+    public int[] rankTop200() {
+        return SuspicionProcessor.rank(scores, 200);
+    }
+
+    @Benchmark
+    public List<Map.Entry<String, MethodInfo>> sortSuspicion() {
+        return SuspicionProcessor.sortSuspicion(methodMap);
+    }
+}
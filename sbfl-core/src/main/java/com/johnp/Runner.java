@@ -1,36 +1,144 @@
 package com.johnp;
 
-import com.johnp.bean.MethodInfo;
+import com.johnp.bean.RankingSnapshot;
+import com.johnp.bean.ScoreTable;
+import com.johnp.bean.Spectrum;
 import com.johnp.util.Analyzer;
-import com.johnp.util.FileExportUtil;
+import com.johnp.util.BytecodeHashes;
+import com.johnp.util.CoverageFormat;
+import com.johnp.util.ExportPipeline;
+import com.johnp.util.ExportSink;
+import com.johnp.util.ExportSinks;
+import com.johnp.util.PipelineMetrics;
+import com.johnp.util.SpectrumPartitions;
+import com.johnp.util.SpectrumSnapshot;
+import com.johnp.util.SuspicionEngine;
+import com.johnp.util.SuspicionFormula;
+import com.johnp.util.SuspicionFormulas;
 import com.johnp.util.SuspicionProcessor;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 @Slf4j
 public class Runner {
 
+    // ** Phases of every run of this runner, see getMetrics()
+    private final PipelineMetrics metrics = new PipelineMetrics();
+    private List<ExportSink> exports = ExportSinks.DEFAULTS;
+    private Map<String, Long> exportTimes = Collections.emptyMap();
+
+    /**
+     * Duration and throughput of the phases run so far: partition merge, ingest, snapshot update, scoring, ranking
+     * and export.
+     */
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Nanoseconds each report file of the last run took to write, by file name in export order.
+     */
+    public Map<String, Long> getExportTimes() {
+        return exportTimes;
+    }
+
+    /**
+     * Report formats written after scoring, {@link ExportSinks#DEFAULTS} unless set.
+     */
+    public void setExports(List<ExportSink> exports) {
+        this.exports = exports;
+    }
+
     public void runSbfl(String pathname, int failCount) throws IOException {
+        runSbfl(pathname, failCount, SuspicionFormulas.DEFAULTS);
+    }
+
+    /**
+     * @param formulas formulas to compute, the first one decides the ranking and the others break its ties
+     */
+    public void runSbfl(String pathname, int failCount, List<SuspicionFormula> formulas) throws IOException {
+        runSbfl(pathname, failCount, formulas, 0);
+    }
+
+    /**
+     * @param formulas formulas to compute, the first one decides the ranking and the others break its ties
+     * @param limit    number of top-ranked methods to export, {@code 0} exports every covered method
+     */
+    public void runSbfl(String pathname, int failCount, List<SuspicionFormula> formulas, int limit) throws IOException {
 
         File folder = new File(pathname);
 
+        // ** Combine the partitions of parallel test forks
+        mergePartitions(folder.toPath());
+
         // ** Read and Collect Data
-        Map<String, MethodInfo> calculatedSuspicion = Analyzer.analyzeFolder(folder, failCount);
+        Spectrum spectrum = new Analyzer(ForkJoinPool.commonPool(), metrics).analyzeSpectrum(folder, failCount);
 
-        // ** Sort Suspicion
-        List<Map.Entry<String, MethodInfo>> sortedDataList = SuspicionProcessor.sortSuspicion(calculatedSuspicion);
+        scoreAndExport(pathname, spectrum, formulas, limit);
+    }
+
+    /**
+     * Merges the tests recorded in {@code pathname}'s spectrum store into the snapshot of the previous build and
+     * scores the merged spectrum, so only the tests affected by a change had to be re-collected.
+     *
+     * @param snapshotDir snapshot of the previous build, updated in place
+     * @param hashes      bytecode the coverage was collected against
+     * @return the updated snapshot
+     */
+    public SpectrumSnapshot runIncrementalSbfl(String pathname, Path snapshotDir, BytecodeHashes hashes,
+                                               int failCount, List<SuspicionFormula> formulas, int limit)
+            throws IOException {
+
+        // ** Combine the partitions of parallel test forks, then merge this run's tests into the stored counts
+        mergePartitions(Paths.get(pathname));
+        long start = System.nanoTime();
+        SpectrumSnapshot snapshot = SpectrumSnapshot.update(snapshotDir, SpectrumSnapshot.load(snapshotDir), hashes,
+                Paths.get(pathname, CoverageFormat.STORE_FILE));
+        Spectrum spectrum = snapshot.toSpectrum(failCount);
+        metrics.phase("snapshot", System.nanoTime() - start, snapshot.testCount(), "tests");
+        System.out.println("Spectrum snapshot holds " + snapshot.testCount() + " tests.");
+
+        scoreAndExport(pathname, spectrum, formulas, limit);
+        return snapshot;
+    }
 
-//        FileExportUtil.xlsExport(pathname + "/Suspicion.xlsx", sortedDataList);
+    private void scoreAndExport(String pathname, Spectrum spectrum, List<SuspicionFormula> formulas, int limit)
+            throws IOException {
 
-        FileExportUtil.csvExport(pathname + "/Suspicion.csv", sortedDataList);
+        // ** Compute all enabled formulas in one pass
+        long start = System.nanoTime();
+        ScoreTable scores = new SuspicionEngine(formulas).score(spectrum);
+        metrics.phase("score", System.nanoTime() - start, (long) spectrum.size() * formulas.size(), "scores");
+
+        // ** Sort Suspicion
+        start = System.nanoTime();
+        int[] order = SuspicionProcessor.rank(scores, limit);
+        metrics.phase("rank", System.nanoTime() - start, scores.size(), "methods");
+        if (order.length < scores.size()) {
+            System.out.println("Exporting the top " + order.length + " of " + scores.size() + " ranked methods.");
+        }
+
+        // ** Every format streams from the same snapshot at once, the export takes as long as the slowest one
+        exportTimes = new ExportPipeline(exports, metrics).export(new RankingSnapshot(spectrum, scores, order),
+                Paths.get(pathname));
 
         System.out.println("Completed Exporting Suspicion Data.");
 
     }
 
-
-}
\ No newline at end of file
+    private void mergePartitions(Path coverageDir) throws IOException {
+        long start = System.nanoTime();
+        int tests = SpectrumPartitions.merge(coverageDir);
+        if (tests > 0) {
+            metrics.phase("merge", System.nanoTime() - start, tests, "tests");
+        }
+    }
+}
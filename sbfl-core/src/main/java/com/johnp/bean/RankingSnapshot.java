@@ -0,0 +1,40 @@
+package com.johnp.bean;
+
+/**
+ * A finished ranking as the report exports read it: the spectrum, its scores and the method IDs to export in rank
+ * order. Exports read one snapshot from several threads at once, so it never changes after it is created: the
+ * order is copied here, and the spectrum and score arrays must not be written once scoring is done.
+ */
+public final class RankingSnapshot {
+    private final Spectrum spectrum;
+    private final ScoreTable scores;
+    private final int[] order;
+
+    public RankingSnapshot(Spectrum spectrum, ScoreTable scores, int[] order) {
+        this.spectrum = spectrum;
+        this.scores = scores;
+        this.order = order.clone();
+    }
+
+    public Spectrum getSpectrum() {
+        return spectrum;
+    }
+
+    public ScoreTable getScores() {
+        return scores;
+    }
+
+    /**
+     * Method IDs in rank order, shared by every reader and not to be modified.
+     */
+    public int[] getOrder() {
+        return order;
+    }
+
+    /**
+     * Number of ranked (exported) methods.
+     */
+    public int size() {
+        return order.length;
+    }
+}
@@ -0,0 +1,52 @@
+package com.johnp.bean;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Columnar suspiciousness scores, one {@code double[]} per formula indexed by the method ID of the
+ * {@link Spectrum} they were computed from. Columns keep the order the formulas were configured in.
+ */
+public class ScoreTable {
+    private final String[] formulaNames;
+    private final double[][] columns;
+    private final int size;
+
+    public ScoreTable(List<String> formulaNames, int size) {
+        this.formulaNames = formulaNames.toArray(new String[0]);
+        this.columns = new double[this.formulaNames.length][size];
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int formulaCount() {
+        return formulaNames.length;
+    }
+
+    public String getFormulaName(int formula) {
+        return formulaNames[formula];
+    }
+
+    public List<String> getFormulaNames() {
+        return Arrays.asList(formulaNames);
+    }
+
+    public double[] getColumn(int formula) {
+        return columns[formula];
+    }
+
+    /**
+     * @return the scores of the named formula, or {@code null} if it was not computed
+     */
+    public double[] getColumn(String formulaName) {
+        for (int i = 0; i < formulaNames.length; i++) {
+            if (formulaNames[i].equalsIgnoreCase(formulaName)) {
+                return columns[i];
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,77 @@
+package com.johnp.bean;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Aggregated program spectrum: per method ID the number of failing ({@code ef}) and passing ({@code ep}) tests
+ * that covered it, plus the test totals. Method IDs index {@link #getSignatures()} and the count arrays.
+ */
+public class Spectrum {
+    private final String[] signatures;
+    private final int[] failed;
+    private final int[] passed;
+    private final int totalFailedTests;
+    private final int totalPassedTests;
+
+    public Spectrum(String[] signatures, int[] failed, int[] passed, int totalFailedTests, int totalPassedTests) {
+        this.signatures = signatures;
+        this.failed = failed;
+        this.passed = passed;
+        this.totalFailedTests = totalFailedTests;
+        this.totalPassedTests = totalPassedTests;
+    }
+
+    public int size() {
+        return signatures.length;
+    }
+
+    public String[] getSignatures() {
+        return signatures;
+    }
+
+    public int[] getFailed() {
+        return failed;
+    }
+
+    public int[] getPassed() {
+        return passed;
+    }
+
+    public int getTotalFailedTests() {
+        return totalFailedTests;
+    }
+
+    public int getTotalPassedTests() {
+        return totalPassedTests;
+    }
+
+    /**
+     * Creates one {@link MethodInfo} view per method, meant for exporting results only. MethodInfo only has fields
+     * for Tarantula, SBI, Jaccard and Ochiai; scores of formulas that were not computed stay 0.
+     */
+    public Map<String, MethodInfo> toMethodMap(ScoreTable scores) {
+        double[] tarantula = columnOrZeros(scores, "Tarantula");
+        double[] sbi = columnOrZeros(scores, "SBI");
+        double[] jaccard = columnOrZeros(scores, "Jaccard");
+        double[] ochiai = columnOrZeros(scores, "Ochiai");
+
+        Map<String, MethodInfo> methodMap = new HashMap<>(signatures.length * 4 / 3 + 1);
+        for (int id = 0; id < signatures.length; id++) {
+            MethodInfo info = new MethodInfo(signatures[id]);
+            info.setMethodFailures(failed[id]);
+            info.setMethodPasses(passed[id]);
+            info.setSuspiciousnessTarantula(tarantula[id]);
+            info.setSuspiciousnessSbi(sbi[id]);
+            info.setSuspiciousnessJaccard(jaccard[id]);
+            info.setSuspiciousnessOchiai(ochiai[id]);
+            methodMap.put(signatures[id], info);
+        }
+        return methodMap;
+    }
+
+    private double[] columnOrZeros(ScoreTable scores, String formulaName) {
+        double[] column = scores.getColumn(formulaName);
+        return column != null ? column : new double[signatures.length];
+    }
+}
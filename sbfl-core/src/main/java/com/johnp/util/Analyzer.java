@@ -1,112 +1,374 @@
 package com.johnp.util;
 
 import com.johnp.bean.MethodInfo;
-import lombok.AccessLevel;
-import lombok.NoArgsConstructor;
+import com.johnp.bean.ScoreTable;
+import com.johnp.bean.Spectrum;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+/**
+ * Ingests per-test coverage and aggregates pass/fail counts per method, or per source line for line spectra
+ * (their signatures are {@link CoverageFormat#lineSignature line signatures}, counted like any other).
+ * <p>
+ * Each {@link #analyze} call is independent: the input is split into work units (store ranges and per-test
+ * files) that run on a fork-join pool, every worker thread counts into its own {@link Tally} and the tallies are
+ * merged once at the end. Signatures are interned to dense IDs ({@link MethodDictionary}) and counted in plain
+ * {@code int[]} arrays; {@link MethodInfo} objects are only created for the map based result.
+ * <p>
+ * The spectrum store and the method dictionary hold the whole dataset, failing to read them fails the analysis.
+ * An unreadable per-test file of the older layouts is logged and skipped.
+ */
 @Slf4j
-@NoArgsConstructor(access = AccessLevel.PRIVATE)
 public class Analyzer {
 
-    static Map<String, MethodInfo> methodMap = new HashMap<>();
+    // ** Tests of the spectrum store per work unit
+    private static final int STORE_CHUNK = 256;
 
-    public static Map<String, MethodInfo> analyzeFolder(File folder, int failCount) {
+    // ** Work units a task handles itself instead of splitting further
+    private static final int LEAF_UNITS = 4;
 
-        File[] listOfFiles = folder.listFiles((dir, name) -> name.toLowerCase().endsWith(".txt"));
+    private final ForkJoinPool pool;
+    private final PipelineMetrics metrics;
 
+    public Analyzer() {
+        this(ForkJoinPool.commonPool());
+    }
 
-        int flunkCount = 0;
-        int totalFailedTests = 0;
-        int totalPassedTests = 0;
+    public Analyzer(ForkJoinPool pool) {
+        this(pool, new PipelineMetrics());
+    }
+
+    /**
+     * @param metrics receives the {@code ingest} phase of every {@link #analyzeSpectrum} call
+     */
+    public Analyzer(ForkJoinPool pool, PipelineMetrics metrics) {
+        this.pool = pool;
+        this.metrics = metrics;
+    }
+
+    public static Map<String, MethodInfo> analyzeFolder(File folder, int failCount) throws IOException {
+        return new Analyzer().analyze(folder, failCount);
+    }
+
+    /**
+     * @param failCount number of tests, in ingestion order, whose result is forced to failed
+     */
+    public Map<String, MethodInfo> analyze(File folder, int failCount) throws IOException {
+        Spectrum spectrum = analyzeSpectrum(folder, failCount);
+        if (spectrum.size() == 0) {
+            return Collections.emptyMap();
+        }
+
+        // ** Compute Suspicious Formulas over the count columns
+        ScoreTable scores = SuspicionProcessor.calculateAll(spectrum);
+
+        // ** MethodInfo views are only created for the map based export path
+        return spectrum.toMethodMap(scores);
+    }
+
+    /**
+     * Aggregates the coverage in {@code folder} into dictionary encoded counts. Only methods covered by at least
+     * one test are part of the result.
+     *
+     * @param failCount number of tests, in ingestion order, whose result is forced to failed
+     * @throws IOException if the spectrum store or the method dictionary cannot be read
+     */
+    public Spectrum analyzeSpectrum(File folder, int failCount) throws IOException {
+        long start = System.nanoTime();
+
+        File[] listOfFiles = folder.listFiles((dir, name) -> name.toLowerCase().endsWith(".txt")
+                || name.endsWith(CoverageFormat.COVERAGE_EXTENSION) || name.equals(CoverageFormat.STORE_FILE));
+
+        if (listOfFiles == null || listOfFiles.length == 0) {
+            System.out.println("The directory is empty or does not exist.");
+            return new Spectrum(new String[0], new int[0], new int[0], 0, 0);
+        }
+
+        // ** The spectrum store first, per-test files of the older folder layouts after it, in a stable order
+        Arrays.sort(listOfFiles, Comparator.comparing((File file) -> !file.getName().equals(CoverageFormat.STORE_FILE))
+                .thenComparing(File::getName));
+
+        SpectrumStoreReader store = null;
+        try {
+            // ** Signatures known up front are interned once, workers count them by ID without any hashing
+            MethodDictionary dictionary = new MethodDictionary();
+            List<WorkUnit> units = new ArrayList<>();
+            int ordinal = 0;
+            int[] covRemap = null;
 
-        if (listOfFiles != null && listOfFiles.length > 0) {
             for (File file : listOfFiles) {
-                if (file.isFile()) {
-                    try {
-                        List<String> lines = Files.readAllLines(Paths.get(file.getPath()));
-                        if (!lines.isEmpty()) {
-                            String firstLine = lines.get(0);
-                            String[] parts = firstLine.split(" ");
-                            if (parts.length == 2) {
-                                String testName = parts[0];
-                                boolean testResult = Boolean.parseBoolean(parts[1]);
-                                System.out.println("Reading File:- TestName: {}" + testName + ", testResult: " + testResult);
-
-                                //** Manually Updating the First 200 Files to False irrespective of their initial value */
-                                if (flunkCount++ < failCount) {
-                                    System.out.println("Updating TestResult with Failure. prevVal:{}" + testResult + ",  currentVal:{}" + false);
-                                    testResult = false;
-                                }
-
-                                //** Increment Total Pass and Fail
-                                if (testResult) {
-                                    totalPassedTests++;
-                                } else {
-                                    totalFailedTests++;
-                                }
-
-                                constructAndUpdateMethodDetails(lines, testName, testResult);
-                            }
-                        }
-                    } catch (IOException e) {
-                        System.out.println("Error reading File.");
+                if (!file.isFile()) {
+                    continue;
+                }
+                int firstTest = ordinal;
+                if (file.getName().equals(CoverageFormat.STORE_FILE)) {
+                    store = SpectrumStoreReader.open(file.toPath());
+                    SpectrumStoreReader reader = store;
+
+                    // ** Store signatures are interned first and unique, so store IDs equal dictionary IDs
+                    for (String signature : reader.signatures()) {
+                        dictionary.intern(signature);
+                    }
+                    for (int from = 0; from < reader.testCount(); from += STORE_CHUNK) {
+                        int chunkStart = from;
+                        int chunkEnd = Math.min(from + STORE_CHUNK, reader.testCount());
+                        units.add(tally -> readStoreRange(reader, chunkStart, chunkEnd, firstTest, tally));
                     }
+                    ordinal += reader.testCount();
+                } else if (file.getName().endsWith(CoverageFormat.COVERAGE_EXTENSION)) {
+                    if (covRemap == null) {
+                        covRemap = internAll(dictionary, CoverageFileReader.readDictionary(
+                                new File(folder, CoverageFormat.DICTIONARY_FILE).toPath()));
+                    }
+                    int[] remap = covRemap;
+                    units.add(skippable(file, tally -> readBinaryFile(file, remap, firstTest, tally)));
+                    ordinal++;
+                } else {
+                    units.add(skippable(file, tally -> readTextFile(file, firstTest, tally)));
+                    ordinal++;
                 }
             }
 
-            // ** Compute Suspicious Formulas
-            computeSBFLForEachMethod(totalPassedTests, totalFailedTests);
+            // ** One tally per worker thread, merged after the pool is done
+            Map<Thread, Tally> tallies = new ConcurrentHashMap<>();
+            try {
+                pool.invoke(new IngestTask(units, 0, units.size(), failCount, dictionary, tallies));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
 
-            return methodMap;
+            Spectrum spectrum = merge(dictionary, tallies.values());
+            metrics.phase("ingest", System.nanoTime() - start,
+                    spectrum.getTotalFailedTests() + spectrum.getTotalPassedTests(), "tests");
+            return spectrum;
 
-        } else {
-            System.out.println("The directory is empty or does not exist.");
+        } finally {
+            if (store != null) {
+                try {
+                    store.close();
+                } catch (IOException e) {
+                    log.warn("Failed to close spectrum store", e);
+                }
+            }
+        }
+    }
+
+    // ** One test of the older layouts, a file that cannot be read is left out of the spectrum
+    private static WorkUnit skippable(File file, WorkUnit unit) {
+        return tally -> {
+            try {
+                unit.ingest(tally);
+            } catch (IOException e) {
+                log.error("Failed to read " + file + ", its test is left out of the spectrum", e);
+            }
+        };
+    }
+
+    private static int[] internAll(MethodDictionary dictionary, String[] signatures) {
+        int[] ids = new int[signatures.length];
+        for (int i = 0; i < signatures.length; i++) {
+            ids[i] = dictionary.intern(signatures[i]);
+        }
+        return ids;
+    }
+
+    // ** Runs after the parallel phase, the shared dictionary may be extended again
+    private static Spectrum merge(MethodDictionary dictionary, Collection<Tally> tallies) {
+        int baseSize = dictionary.size();
+        int[] failed = new int[baseSize];
+        int[] passed = new int[baseSize];
+        int totalFailedTests = 0;
+        int totalPassedTests = 0;
+
+        for (Tally tally : tallies) {
+            totalFailedTests += tally.totalFailedTests;
+            totalPassedTests += tally.totalPassedTests;
+            for (int id = 0; id < baseSize; id++) {
+                failed[id] += tally.failed[id];
+                passed[id] += tally.passed[id];
+            }
+            for (int local = 0; local < tally.local.size(); local++) {
+                int id = dictionary.intern(tally.local.signature(local));
+                if (id >= failed.length) {
+                    failed = Arrays.copyOf(failed, Math.max(failed.length * 2, id + 1));
+                    passed = Arrays.copyOf(passed, failed.length);
+                }
+                failed[id] += tally.failed[baseSize + local];
+                passed[id] += tally.passed[baseSize + local];
+            }
+        }
+
+        // ** Drop methods that no test covered, e.g. dictionary entries of the store
+        int size = 0;
+        for (int id = 0; id < dictionary.size(); id++) {
+            if (failed[id] + passed[id] > 0) {
+                size++;
+            }
         }
-        return Collections.emptyMap();
+        String[] signatures = new String[size];
+        int[] coveredFailed = new int[size];
+        int[] coveredPassed = new int[size];
+        for (int id = 0, next = 0; id < dictionary.size(); id++) {
+            if (failed[id] + passed[id] > 0) {
+                signatures[next] = dictionary.signature(id);
+                coveredFailed[next] = failed[id];
+                coveredPassed[next] = passed[id];
+                next++;
+            }
+        }
+        return new Spectrum(signatures, coveredFailed, coveredPassed, totalFailedTests, totalPassedTests);
+    }
+
+    private static void readStoreRange(SpectrumStoreReader reader, int from, int to, int firstTest, Tally tally)
+            throws IOException {
+        int[] ordinal = {firstTest + from};
+        reader.readTests(from, to, (testName, passed, methodIds, count) ->
+                tally.record(ordinal[0]++, testName, passed, methodIds, count, null));
     }
 
-    private static void computeSBFLForEachMethod(int totalPassedTests, int totalFailedTests) {
-        methodMap.forEach((methodName, methodInfo) -> {
-            methodInfo.setSuspiciousnessTarantula(SuspicionProcessor.calculateTarantula(methodInfo.getMethodPasses(),
-                    methodInfo.getMethodFailures(), totalFailedTests, totalPassedTests));
+    private static void readBinaryFile(File file, int[] remap, int ordinal, Tally tally) throws IOException {
+        CoverageFileReader.readTest(file.toPath(), (testName, passed, methodIds, count) ->
+                tally.record(ordinal, testName, passed, methodIds, count, remap), null);
+    }
 
-            methodInfo.setSuspiciousnessSbi(SuspicionProcessor.calculateSbi(methodInfo.getMethodPasses(),
-                    methodInfo.getMethodFailures()));
+    // ** Legacy text layout, streamed line by line so memory does not grow with the file size
+    private static void readTextFile(File file, int ordinal, Tally tally) throws IOException {
+        tally.textReader.read(file.toPath(), new TextCoverageReader.LineVisitor() {
+            private boolean testResult;
 
-            methodInfo.setSuspiciousnessJaccard(SuspicionProcessor.calculateJaccard(methodInfo.getMethodPasses(),
-                    methodInfo.getMethodFailures(), totalFailedTests));
+            @Override
+            public boolean visitHeader(String testName, boolean passed) {
+                testResult = tally.recordResult(ordinal, testName, passed);
+                return true;
+            }
 
-            methodInfo.setSuspiciousnessOchiai(SuspicionProcessor.calculateOchiai(methodInfo.getMethodPasses(),
-                    methodInfo.getMethodFailures(), totalFailedTests));
+            @Override
+            public void visitMethod(byte[] bytes, int offset, int length) {
+                tally.countMethod(bytes, offset, length, testResult);
+            }
         });
     }
 
-    private static void constructAndUpdateMethodDetails(List<String> lines, String testName, boolean testResult) {
-        lines.stream().skip(1).forEach(methodName -> {
+    @FunctionalInterface
+    private interface WorkUnit {
+        void ingest(Tally tally) throws IOException;
+    }
+
+    private static final class IngestTask extends RecursiveAction {
+        private final List<WorkUnit> units;
+        private final int from;
+        private final int to;
+        private final int failCount;
+        private final MethodDictionary dictionary;
+        private final Map<Thread, Tally> tallies;
+
+        private IngestTask(List<WorkUnit> units, int from, int to, int failCount, MethodDictionary dictionary,
+                           Map<Thread, Tally> tallies) {
+            this.units = units;
+            this.from = from;
+            this.to = to;
+            this.failCount = failCount;
+            this.dictionary = dictionary;
+            this.tallies = tallies;
+        }
 
-            // ** Constructing DataStructure */
-            methodMap.compute(methodName, (k, v) -> {
-                if (v == null) {
-                    v = new MethodInfo(testName);
+        @Override
+        protected void compute() {
+            if (to - from > LEAF_UNITS) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new IngestTask(units, from, mid, failCount, dictionary, tallies),
+                        new IngestTask(units, mid, to, failCount, dictionary, tallies));
+                return;
+            }
+            Tally tally = tallies.computeIfAbsent(Thread.currentThread(), thread -> new Tally(failCount, dictionary));
+            for (int i = from; i < to; i++) {
+                try {
+                    units.get(i).ingest(tally);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
-                if (testResult) {
-                    v.setMethodFailures(v.getMethodFailures() + 1);
-                } else {
-                    v.setMethodPasses(v.getMethodPasses() + 1);
+            }
+        }
+    }
+
+    /**
+     * Pass/fail counts gathered by one worker thread, indexed by method ID. IDs below the shared dictionary size
+     * are shared IDs, text signatures missing from it get local IDs after them.
+     */
+    private static final class Tally {
+        private final int failCount;
+        private final MethodDictionary shared;
+        private final int sharedSize;
+        private final MethodDictionary local = new MethodDictionary(64);
+        private final TextCoverageReader textReader = new TextCoverageReader();
+        private int[] failed;
+        private int[] passed;
+        private int totalFailedTests = 0;
+        private int totalPassedTests = 0;
+
+        private Tally(int failCount, MethodDictionary shared) {
+            this.failCount = failCount;
+            this.shared = shared;
+            this.sharedSize = shared.size();
+            this.failed = new int[sharedSize + 64];
+            this.passed = new int[failed.length];
+        }
+
+        private void record(int ordinal, String testName, boolean testResult, int[] methodIds, int count,
+                            int[] remap) {
+            int[] counts = recordResult(ordinal, testName, testResult) ? passed : failed;
+            if (remap == null) {
+                for (int i = 0; i < count; i++) {
+                    counts[methodIds[i]]++;
+                }
+            } else {
+                for (int i = 0; i < count; i++) {
+                    counts[remap[methodIds[i]]]++;
                 }
-                return v;
-            });
+            }
+        }
 
-        });
+        private boolean recordResult(int ordinal, String testName, boolean testResult) {
+            log.debug("Reading test: {}, testResult: {}", testName, testResult);
+
+            //** Manually Updating the First N Tests to False irrespective of their initial value */
+            if (ordinal < failCount) {
+                log.debug("Updating TestResult with Failure. prevVal: {}, currentVal: false", testResult);
+                testResult = false;
+            }
+
+            //** Increment Total Pass and Fail
+            if (testResult) {
+                totalPassedTests++;
+            } else {
+                totalFailedTests++;
+            }
+            return testResult;
+        }
+
+        private void countMethod(byte[] bytes, int offset, int length, boolean testResult) {
+            int id = shared.find(bytes, offset, length);
+            if (id < 0) {
+                id = sharedSize + local.intern(bytes, offset, length);
+                if (id >= failed.length) {
+                    failed = Arrays.copyOf(failed, failed.length * 2);
+                    passed = Arrays.copyOf(passed, failed.length);
+                }
+            }
+            (testResult ? passed : failed)[id]++;
+        }
     }
-}
\ No newline at end of file
+}
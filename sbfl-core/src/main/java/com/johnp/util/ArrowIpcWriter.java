@@ -0,0 +1,327 @@
+package com.johnp.util;
+
+import com.johnp.bean.ScoreTable;
+import com.johnp.bean.Spectrum;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a ranked spectrum as an Arrow IPC file (format version V5), one row per ranked method in rank order:
+ * {@code method_id} and {@code ef}, {@code ep}, {@code nf}, {@code np} as int32, {@code signature} as utf8 and
+ * one float64 column per formula, named after the formula. No column has nulls.
+ * <p>
+ * Rows go out in record batches of {@value #BATCH_ROWS}, so memory stays the same for any ranking size. Every
+ * buffer is 8-byte aligned and readers can memory-map the file. The FlatBuffers metadata is written by hand, the
+ * Arrow Java library needs an off-heap allocator and JVM flags a Maven build does not have.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class ArrowIpcWriter {
+
+    static final int BATCH_ROWS = 64 * 1024;
+
+    private static final byte[] MAGIC = "ARROW1".getBytes(StandardCharsets.US_ASCII);
+    private static final int CONTINUATION = 0xFFFFFFFF;
+    private static final int ALIGNMENT = 8;
+
+    // ** Values of the Arrow FlatBuffers schema (Schema.fbs, Message.fbs, File.fbs)
+    private static final int METADATA_V5 = 4;
+    private static final int LITTLE_ENDIAN = 0;
+    private static final int HEADER_SCHEMA = 1;
+    private static final int HEADER_RECORD_BATCH = 3;
+    private static final int TYPE_INT = 2;
+    private static final int TYPE_FLOATING_POINT = 3;
+    private static final int TYPE_UTF8 = 5;
+    private static final int PRECISION_DOUBLE = 2;
+
+    private static final String[] INT_COLUMNS = {"method_id", "ef", "ep", "nf", "np"};
+
+    static void write(Path file, Spectrum spectrum, ScoreTable scores, int[] order) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(ALIGNMENT);
+            header.put(MAGIC).position(ALIGNMENT).flip();
+            writeFully(channel, header);
+
+            FlatBufferBuilder schemaBuilder = new FlatBufferBuilder();
+            byte[] schemaMessage = message(schemaBuilder, HEADER_SCHEMA, schema(schemaBuilder, scores), 0);
+            writeMessage(channel, schemaMessage, null);
+
+            List<long[]> blocks = new ArrayList<>();
+            ByteBuffer body = null;
+            for (int from = 0; from < order.length; from += BATCH_ROWS) {
+                int to = Math.min(order.length, from + BATCH_ROWS);
+                RecordBatch batch = new RecordBatch(spectrum, scores, order, from, to);
+                if (body == null || body.capacity() < batch.bodyLength) {
+                    body = ByteBuffer.allocate(batch.bodyLength).order(ByteOrder.LITTLE_ENDIAN);
+                }
+                body.clear();
+                batch.fill(body);
+                body.flip();
+
+                FlatBufferBuilder metadata = new FlatBufferBuilder();
+                byte[] batchMessage = message(metadata, HEADER_RECORD_BATCH, batch.header(metadata),
+                        batch.bodyLength);
+                long offset = channel.position();
+                int metadataLength = writeMessage(channel, batchMessage, body);
+                blocks.add(new long[]{offset, metadataLength, batch.bodyLength});
+            }
+
+            // ** End of stream marker, then the footer locating the schema and every batch
+            ByteBuffer end = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            end.putInt(CONTINUATION).putInt(0).flip();
+            writeFully(channel, end);
+
+            byte[] footer = footer(scores, blocks);
+            ByteBuffer trailer = ByteBuffer.allocate(footer.length + 4 + MAGIC.length).order(ByteOrder.LITTLE_ENDIAN);
+            trailer.put(footer).putInt(footer.length).put(MAGIC).flip();
+            writeFully(channel, trailer);
+        }
+    }
+
+    // ** Encapsulated message: continuation marker, metadata length, metadata padded to 8 bytes, body
+    private static int writeMessage(FileChannel channel, byte[] metadata, ByteBuffer body) throws IOException {
+        int padded = align(metadata.length);
+        ByteBuffer prefix = ByteBuffer.allocate(8 + padded).order(ByteOrder.LITTLE_ENDIAN);
+        prefix.putInt(CONTINUATION).putInt(padded).put(metadata).position(8 + padded).flip();
+        writeFully(channel, prefix);
+        if (body != null) {
+            writeFully(channel, body);
+        }
+        return 8 + padded;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    private static byte[] message(FlatBufferBuilder builder, int headerType, int header, long bodyLength) {
+        builder.startTable(5);
+        builder.addShort(0, METADATA_V5);
+        builder.addByte(1, headerType);
+        builder.addOffset(2, header);
+        builder.addLong(3, bodyLength);
+        return builder.finish(builder.endTable());
+    }
+
+    private static byte[] footer(ScoreTable scores, List<long[]> blocks) {
+        FlatBufferBuilder builder = new FlatBufferBuilder();
+        int schema = schema(builder, scores);
+        int dictionaries = blockVector(builder, new ArrayList<>());
+        int recordBatches = blockVector(builder, blocks);
+        builder.startTable(5);
+        builder.addShort(0, METADATA_V5);
+        builder.addOffset(1, schema);
+        builder.addOffset(2, dictionaries);
+        builder.addOffset(3, recordBatches);
+        return builder.finish(builder.endTable());
+    }
+
+    // ** Block struct: long offset, int metaDataLength, 4 bytes padding, long bodyLength
+    private static int blockVector(FlatBufferBuilder builder, List<long[]> blocks) {
+        builder.startVector(24, blocks.size(), 8);
+        for (int i = blocks.size() - 1; i >= 0; i--) {
+            long[] block = blocks.get(i);
+            builder.putLong(block[2]);
+            builder.pad(4);
+            builder.putInt((int) block[1]);
+            builder.putLong(block[0]);
+        }
+        return builder.endVector(blocks.size());
+    }
+
+    private static int schema(FlatBufferBuilder builder, ScoreTable scores) {
+        int[] fields = new int[INT_COLUMNS.length + 1 + scores.formulaCount()];
+        int field = 0;
+        fields[field++] = field(builder, INT_COLUMNS[0], TYPE_INT, intType(builder));
+        fields[field++] = field(builder, "signature", TYPE_UTF8, emptyType(builder));
+        for (int i = 1; i < INT_COLUMNS.length; i++) {
+            fields[field++] = field(builder, INT_COLUMNS[i], TYPE_INT, intType(builder));
+        }
+        for (int f = 0; f < scores.formulaCount(); f++) {
+            fields[field++] = field(builder, scores.getFormulaName(f), TYPE_FLOATING_POINT, doubleType(builder));
+        }
+        int fieldVector = builder.createOffsetVector(fields);
+        builder.startTable(4);
+        builder.addShort(0, LITTLE_ENDIAN);
+        builder.addOffset(1, fieldVector);
+        return builder.endTable();
+    }
+
+    private static int field(FlatBufferBuilder builder, String name, int typeType, int type) {
+        int nameOffset = builder.createString(name);
+        // ** Readers such as the C++ one require the children vector even when empty
+        int children = builder.createOffsetVector(new int[0]);
+        builder.startTable(7);
+        builder.addOffset(0, nameOffset);
+        builder.addByte(1, 0);
+        builder.addByte(2, typeType);
+        builder.addOffset(3, type);
+        builder.addOffset(5, children);
+        return builder.endTable();
+    }
+
+    private static int intType(FlatBufferBuilder builder) {
+        builder.startTable(2);
+        builder.addInt(0, 32);
+        builder.addByte(1, 1);
+        return builder.endTable();
+    }
+
+    private static int doubleType(FlatBufferBuilder builder) {
+        builder.startTable(1);
+        builder.addShort(0, PRECISION_DOUBLE);
+        return builder.endTable();
+    }
+
+    private static int emptyType(FlatBufferBuilder builder) {
+        builder.startTable(0);
+        return builder.endTable();
+    }
+
+    private static int align(long length) {
+        return (int) ((length + ALIGNMENT - 1) & -ALIGNMENT);
+    }
+
+    /**
+     * Rows {@code from} to {@code to} of the ranking, laid out column after column in the schema's order. Every
+     * column has an empty validity buffer; the signature column has offsets and UTF-8 data.
+     */
+    private static final class RecordBatch {
+        private final Spectrum spectrum;
+        private final ScoreTable scores;
+        private final int[] order;
+        private final int from;
+        private final int rows;
+        private final byte[][] signatures;
+        private final int bodyLength;
+        private final long[] bufferOffsets;
+        private final long[] bufferLengths;
+        private int buffer;
+        private int start;
+
+        private RecordBatch(Spectrum spectrum, ScoreTable scores, int[] order, int from, int to) {
+            this.spectrum = spectrum;
+            this.scores = scores;
+            this.order = order;
+            this.from = from;
+            this.rows = to - from;
+            this.signatures = new byte[rows][];
+            long signatureBytes = 0;
+            for (int row = 0; row < rows; row++) {
+                signatures[row] = spectrum.getSignatures()[order[from + row]].getBytes(StandardCharsets.UTF_8);
+                signatureBytes += signatures[row].length;
+            }
+            long length = INT_COLUMNS.length * (long) align(rows * 4L) + align((rows + 1) * 4L)
+                    + align(signatureBytes) + (long) scores.formulaCount() * rows * 8;
+            if (length > Integer.MAX_VALUE - ALIGNMENT) {
+                throw new IllegalStateException("Record batch of " + rows + " rows exceeds 2 GB");
+            }
+            this.bodyLength = (int) length;
+            int buffers = 2 * INT_COLUMNS.length + 3 + 2 * scores.formulaCount();
+            this.bufferOffsets = new long[buffers];
+            this.bufferLengths = new long[buffers];
+        }
+
+        private void fill(ByteBuffer body) {
+            int[] failed = spectrum.getFailed();
+            int[] passed = spectrum.getPassed();
+            int totalFailed = spectrum.getTotalFailedTests();
+            int totalPassed = spectrum.getTotalPassedTests();
+
+            validity(body);
+            for (int row = 0; row < rows; row++) {
+                body.putInt(order[from + row]);
+            }
+            endBuffer(body);
+
+            validity(body);
+            int position = 0;
+            for (int row = 0; row < rows; row++) {
+                body.putInt(position);
+                position += signatures[row].length;
+            }
+            body.putInt(position);
+            endBuffer(body);
+            for (byte[] signature : signatures) {
+                body.put(signature);
+            }
+            endBuffer(body);
+
+            counts(body, failed, false, 0);
+            counts(body, passed, false, 0);
+            // ** nf and np, the failing and passing tests that did not cover the method
+            counts(body, failed, true, totalFailed);
+            counts(body, passed, true, totalPassed);
+
+            for (int f = 0; f < scores.formulaCount(); f++) {
+                double[] column = scores.getColumn(f);
+                validity(body);
+                for (int row = 0; row < rows; row++) {
+                    body.putDouble(column[order[from + row]]);
+                }
+                endBuffer(body);
+            }
+        }
+
+        private void counts(ByteBuffer body, int[] counts, boolean complement, int total) {
+            validity(body);
+            for (int row = 0; row < rows; row++) {
+                int count = counts[order[from + row]];
+                body.putInt(complement ? total - count : count);
+            }
+            endBuffer(body);
+        }
+
+        private void validity(ByteBuffer body) {
+            bufferOffsets[buffer] = body.position();
+            bufferLengths[buffer++] = 0;
+            start = body.position();
+        }
+
+        // ** Closes the buffer written since the previous one and zero-pads to the next 8-byte boundary
+        private void endBuffer(ByteBuffer body) {
+            bufferOffsets[buffer] = start;
+            bufferLengths[buffer++] = body.position() - start;
+            while (body.position() % ALIGNMENT != 0) {
+                body.put((byte) 0);
+            }
+            start = body.position();
+        }
+
+        private int header(FlatBufferBuilder builder) {
+            int columns = INT_COLUMNS.length + 1 + scores.formulaCount();
+            // ** FieldNode struct: long length, long null count
+            builder.startVector(16, columns, 8);
+            for (int i = 0; i < columns; i++) {
+                builder.putLong(0);
+                builder.putLong(rows);
+            }
+            int nodes = builder.endVector(columns);
+            // ** Buffer struct: long offset, long length
+            builder.startVector(16, buffer, 8);
+            for (int i = buffer - 1; i >= 0; i--) {
+                builder.putLong(bufferLengths[i]);
+                builder.putLong(bufferOffsets[i]);
+            }
+            int buffers = builder.endVector(buffer);
+
+            builder.startTable(5);
+            builder.addLong(0, rows);
+            builder.addOffset(1, nodes);
+            builder.addOffset(2, buffers);
+            return builder.endTable();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.johnp.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Content hashes of the compiled production classes and test classes, keyed by internal class name
+ * ({@code com/johnp/Foo$1}), as stored with a {@link SpectrumSnapshot}.
+ * <p>
+ * Test results also depend on inputs no class file shows: the other files of both output directories (resources,
+ * fixtures), keyed {@code main/<path>} and {@code test/<path>}, and the test environment, e.g. the dependencies
+ * on the test classpath and the JVM settings, kept as one digest.
+ */
+public final class BytecodeHashes {
+
+    private static final String CLASS_EXTENSION = ".class";
+    private static final String MAIN_RESOURCES = "main/";
+    private static final String TEST_RESOURCES = "test/";
+
+    private final Map<String, Long> classes;
+    private final Map<String, Long> testClasses;
+    private final Map<String, Long> resources;
+    private final long environment;
+
+    BytecodeHashes(Map<String, Long> classes, Map<String, Long> testClasses, Map<String, Long> resources,
+                   long environment) {
+        this.classes = classes;
+        this.testClasses = testClasses;
+        this.resources = resources;
+        this.environment = environment;
+    }
+
+    /**
+     * Hashes every file below both directories, without a test environment; a missing directory has no files.
+     */
+    public static BytecodeHashes scan(Path classesDir, Path testClassesDir) throws IOException {
+        return scan(classesDir, testClassesDir, Collections.emptyList());
+    }
+
+    /**
+     * @param environment description of the test environment, one entry per dependency or setting in a stable order
+     */
+    public static BytecodeHashes scan(Path classesDir, Path testClassesDir, List<String> environment)
+            throws IOException {
+        Map<String, Long> resources = new HashMap<>();
+        Map<String, Long> classes = scanDirectory(classesDir, MAIN_RESOURCES, resources);
+        Map<String, Long> testClasses = scanDirectory(testClassesDir, TEST_RESOURCES, resources);
+        return new BytecodeHashes(classes, testClasses, resources,
+                hash(String.join("\n", environment).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    public Map<String, Long> getClasses() {
+        return classes;
+    }
+
+    public Map<String, Long> getTestClasses() {
+        return testClasses;
+    }
+
+    /**
+     * @return {@code true} if the resources and the test environment are the same as in {@code other}
+     */
+    public boolean sameEnvironment(BytecodeHashes other) {
+        return environment == other.environment && resources.equals(other.resources);
+    }
+
+    void write(Path file) throws IOException {
+        Path tmp = Files.createTempFile(file.getParent(), CoverageFormat.HASHES_FILE, ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(CoverageFormat.HASHES_MAGIC);
+            out.writeByte(CoverageFormat.HASHES_VERSION);
+            writeHashes(out, classes);
+            writeHashes(out, testClasses);
+            writeHashes(out, resources);
+            out.writeLong(environment);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the hashes in {@code file}, or {@code null} if they were written by an older version
+     */
+    static BytecodeHashes read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != CoverageFormat.HASHES_MAGIC) {
+                throw new IOException("Not a bytecode hash file: " + file);
+            }
+            if (in.readByte() != CoverageFormat.HASHES_VERSION) {
+                return null;
+            }
+            Map<String, Long> classes = readHashes(in);
+            Map<String, Long> testClasses = readHashes(in);
+            Map<String, Long> resources = readHashes(in);
+            return new BytecodeHashes(classes, testClasses, resources, in.readLong());
+        }
+    }
+
+    /**
+     * @return the class hashes by class name, the hashes of the other files are added to {@code resources}
+     */
+    private static Map<String, Long> scanDirectory(Path dir, String resourcePrefix, Map<String, Long> resources)
+            throws IOException {
+        if (dir == null || !Files.isDirectory(dir)) {
+            return Collections.emptyMap();
+        }
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+
+        // ** Reading the files dominates, hash them in parallel
+        Map<String, Long> hashes = new ConcurrentHashMap<>(files.size() * 4 / 3 + 1);
+        Map<String, Long> resourceHashes = new ConcurrentHashMap<>();
+        try {
+            files.parallelStream().forEach(file -> {
+                String relative = dir.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+                try {
+                    long hash = hash(Files.readAllBytes(file));
+                    if (relative.endsWith(CLASS_EXTENSION)) {
+                        hashes.put(relative.substring(0, relative.length() - CLASS_EXTENSION.length()), hash);
+                    } else {
+                        resourceHashes.put(resourcePrefix + relative, hash);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        resources.putAll(resourceHashes);
+        return new HashMap<>(hashes);
+    }
+
+    // ** First 64 bits of SHA-256, collisions are not a concern at the size of a code base
+    private static long hash(byte[] bytes) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            long hash = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                hash = hash << 8 | (digest[i] & 0xFF);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static void writeHashes(DataOutputStream out, Map<String, Long> hashes) throws IOException {
+        out.writeInt(hashes.size());
+        for (Map.Entry<String, Long> entry : hashes.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+    }
+
+    private static Map<String, Long> readHashes(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        Map<String, Long> hashes = new HashMap<>(size * 4 / 3 + 1);
+        for (int i = 0; i < size; i++) {
+            hashes.put(in.readUTF(), in.readLong());
+        }
+        return hashes;
+    }
+}
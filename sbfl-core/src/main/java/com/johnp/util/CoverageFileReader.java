@@ -0,0 +1,120 @@
+package com.johnp.util;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Memory-mapped reader for the files described in {@link CoverageFormat}.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class CoverageFileReader {
+
+    /**
+     * Receives one decoded test. {@code methodIds} is only valid for the duration of the call, the reader reuses
+     * the array for the next test.
+     */
+    public interface TestVisitor {
+        void visitTest(String testName, boolean passed, int[] methodIds, int count);
+    }
+
+    public static String[] readDictionary(Path file) throws IOException {
+        return decodeDictionary(map(file), file);
+    }
+
+    static String[] decodeDictionary(ByteBuffer in, Object source) throws IOException {
+        checkHeader(in, CoverageFormat.DICTIONARY_MAGIC, source);
+
+        String[] signatures = new String[CoverageFormat.readVarInt(in)];
+        for (int i = 0; i < signatures.length; i++) {
+            signatures[i] = CoverageFormat.readString(in);
+        }
+        return signatures;
+    }
+
+    /**
+     * Decodes the test record in {@code file}.
+     *
+     * @param buffer scratch array for the IDs, may be {@code null}; the (possibly grown) array is returned so
+     *               callers can keep reusing it
+     */
+    public static int[] readTest(Path file, TestVisitor visitor, int[] buffer) throws IOException {
+        return decodeTest(map(file), file, visitor, buffer);
+    }
+
+    static int[] decodeTest(ByteBuffer in, Object source, TestVisitor visitor, int[] buffer) throws IOException {
+        checkHeader(in, CoverageFormat.COVERAGE_MAGIC, source);
+
+        String testName = CoverageFormat.readString(in);
+        boolean passed = in.get() != 0;
+        byte encoding = in.get();
+
+        int[] ids = buffer == null ? new int[64] : buffer;
+        int count = 0;
+        if (encoding == CoverageFormat.ENCODING_IDS) {
+            int size = CoverageFormat.readVarInt(in);
+            if (ids.length < size) {
+                ids = new int[size];
+            }
+            int previous = 0;
+            for (; count < size; count++) {
+                previous += CoverageFormat.readVarInt(in);
+                ids[count] = previous;
+            }
+        } else if (encoding == CoverageFormat.ENCODING_BITSET) {
+            int words = CoverageFormat.readVarInt(in);
+            for (int w = 0; w < words; w++) {
+                long word = in.getLong();
+                while (word != 0) {
+                    if (count == ids.length) {
+                        ids = Arrays.copyOf(ids, ids.length * 2);
+                    }
+                    ids[count++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+        } else if (encoding == CoverageFormat.ENCODING_RUNS) {
+            int runs = CoverageFormat.readVarInt(in);
+            int end = 0;
+            for (int r = 0; r < runs; r++) {
+                int start = end + CoverageFormat.readVarInt(in);
+                end = start + CoverageFormat.readVarInt(in) + 1;
+                if (ids.length < count + end - start) {
+                    ids = Arrays.copyOf(ids, Math.max(ids.length * 2, count + end - start));
+                }
+                for (int id = start; id < end; id++) {
+                    ids[count++] = id;
+                }
+            }
+        } else {
+            throw new IOException("Unknown coverage encoding " + encoding + " in " + source);
+        }
+
+        visitor.visitTest(testName, passed, ids, count);
+        return ids;
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // ** The mapping stays valid after the channel is closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static void checkHeader(ByteBuffer in, int magic, Object source) throws IOException {
+        if (in.remaining() < 5 || in.getInt() != magic) {
+            throw new IOException("Not a coverage file: " + source);
+        }
+        byte version = in.get();
+        if (version != CoverageFormat.VERSION) {
+            throw new IOException("Unsupported coverage format version " + version + " in " + source);
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package com.johnp.util;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * Binary per-test coverage format shared by the coverage listener (writer) and {@link CoverageFileReader}.
+ * <p>
+ * A coverage folder holds one {@link #DICTIONARY_FILE} with every method signature, and one
+ * {@link #COVERAGE_EXTENSION} file per test that only refers to methods by their dictionary ID. Covered IDs are
+ * stored as a varint delta list, as runs of consecutive IDs (a run-length compressed bitset, compact for the
+ * clustered IDs of line spectra) or as a plain bitset, whichever is smallest.
+ * <p>
+ * The same dictionary and test encodings are used as record payloads of the single-file spectrum store
+ * ({@link #STORE_FILE}), which replaces the one-file-per-test layout for large suites.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class CoverageFormat {
+
+    public static final String DICTIONARY_FILE = "methods.dict";
+    public static final String COVERAGE_EXTENSION = ".cov";
+
+    static final int DICTIONARY_MAGIC = 0x53424644; // SBFD
+    static final int COVERAGE_MAGIC = 0x53424643; // SBFC
+    static final byte VERSION = 1;
+
+    static final byte ENCODING_IDS = 0;
+    static final byte ENCODING_BITSET = 1;
+    static final byte ENCODING_RUNS = 2;
+
+    // ** Line spectra use className:methodName:desc#line as signature, see lineSignature, branch spectra
+    // ** className:methodName:desc#line@branch, see branchSignature
+    public static final char LINE_SEPARATOR = '#';
+    public static final char BRANCH_SEPARATOR = '@';
+
+    // ** Spectrum elements, told apart by their signatures
+    public static final String GRANULARITY_METHOD = "method";
+    public static final String GRANULARITY_LINE = "line";
+    public static final String GRANULARITY_BRANCH = "branch";
+
+    // ** Single-file spectrum store, see SpectrumStoreWriter for the layout
+    public static final String STORE_FILE = "spectrum.sbfl";
+
+    static final int STORE_MAGIC = 0x53424653; // SBFS
+    static final byte RECORD_DICTIONARY = 1;
+    static final byte RECORD_TEST = 2;
+    static final byte RECORD_FOOTER = 3;
+    static final int RECORD_HEADER_SIZE = 1 + Integer.BYTES;
+    static final int STORE_HEADER_SIZE = Integer.BYTES + 1;
+    static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES;
+
+    // ** Fork-unique store partitions, merged into STORE_FILE by SpectrumPartitions
+    static final String PARTITION_PREFIX = "spectrum-";
+    static final String PARTITION_EXTENSION = ".sbfl";
+
+    // ** Incremental snapshot directory under target/, see SpectrumSnapshot
+    public static final String SNAPSHOT_DIR = "sbfl-snapshot";
+    static final String SNAPSHOT_TESTS_FILE = "tests.sbfl";
+    static final String COUNTS_FILE = "spectrum.counts";
+    static final String HASHES_FILE = "bytecode.hashes";
+
+    static final int COUNTS_MAGIC = 0x5342464e; // SBFN
+    static final int HASHES_MAGIC = 0x53424648; // SBFH
+    // ** Version 2 added the resources and the test environment
+    static final byte HASHES_VERSION = 2;
+
+    /**
+     * Name of the spectrum store partition written by one forked test JVM.
+     */
+    public static String partitionFile(String partition) {
+        return PARTITION_PREFIX + partition + PARTITION_EXTENSION;
+    }
+
+    /**
+     * Signature of one source line of a method, the element of line-level spectra.
+     */
+    public static String lineSignature(String methodSignature, int line) {
+        return methodSignature + LINE_SEPARATOR + line;
+    }
+
+    /**
+     * Signature of one branch of a source line, the element of branch-level spectra. The branches of a line are
+     * the outgoing edges of its conditional jumps and switches, numbered in bytecode order.
+     */
+    public static String branchSignature(String methodSignature, int line, int branch) {
+        return lineSignature(methodSignature, line) + BRANCH_SEPARATOR + branch;
+    }
+
+    /**
+     * @return {@code true} for line and branch signatures, both name a source line
+     */
+    public static boolean isLineSignature(String signature) {
+        return signature.indexOf(LINE_SEPARATOR) >= 0;
+    }
+
+    /**
+     * @return {@link #GRANULARITY_METHOD}, {@link #GRANULARITY_LINE} or {@link #GRANULARITY_BRANCH}
+     */
+    public static String granularity(String signature) {
+        int separator = signature.indexOf(LINE_SEPARATOR);
+        if (separator < 0) {
+            return GRANULARITY_METHOD;
+        }
+        return signature.indexOf(BRANCH_SEPARATOR, separator) < 0 ? GRANULARITY_LINE : GRANULARITY_BRANCH;
+    }
+
+    /**
+     * @return the granularity of a dictionary, {@link #GRANULARITY_METHOD} when it is empty
+     */
+    public static String granularity(String[] signatures) {
+        return signatures.length > 0 ? granularity(signatures[0]) : GRANULARITY_METHOD;
+    }
+
+    /**
+     * @return the method signature a line or branch signature belongs to, method signatures are returned as they
+     * are
+     */
+    public static String methodOf(String signature) {
+        int separator = signature.indexOf(LINE_SEPARATOR);
+        return separator < 0 ? signature : signature.substring(0, separator);
+    }
+
+    /**
+     * @return {@code true} if both dictionaries have entries and they were recorded at different granularities
+     */
+    public static boolean granularityDiffers(String[] signatures, String[] otherSignatures) {
+        return signatures.length > 0 && otherSignatures.length > 0
+                && !granularity(signatures[0]).equals(granularity(otherSignatures[0]));
+    }
+
+    public static void writeDictionary(Path file, List<String> signatures) throws IOException {
+        // ** Several test JVMs may write the same dictionary, replace atomically so readers never see half a file
+        Path tmp = Files.createTempFile(file.getParent(), DICTIONARY_FILE, ".tmp");
+        Files.write(tmp, encodeDictionary(signatures));
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // ** Layout: magic, version, count, then (length, UTF-8 bytes) per signature
+    public static byte[] encodeDictionary(List<String> signatures) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(signatures.size() * 48 + 16);
+        writeInt(out, DICTIONARY_MAGIC);
+        out.write(VERSION);
+        writeVarInt(out, signatures.size());
+        for (String signature : signatures) {
+            writeString(out, signature);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 64-bit FNV-1a hash over all signatures, used to tell whether a dictionary changed between test JVMs.
+     */
+    public static long dictionaryHash(List<String> signatures) {
+        long hash = 0xcbf29ce484222325L;
+        for (String signature : signatures) {
+            for (int i = 0; i < signature.length(); i++) {
+                hash = (hash ^ signature.charAt(i)) * 0x100000001b3L;
+            }
+            hash = (hash ^ '\n') * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Encodes one test record.
+     *
+     * @param methodIds      covered dictionary IDs in ascending order, only the first {@code count} are used
+     * @param dictionarySize number of entries in the dictionary the IDs refer to
+     */
+    public static byte[] encodeTest(String testName, boolean passed, int[] methodIds, int count,
+                                    int dictionarySize) {
+        ByteArrayOutputStream ids = new ByteArrayOutputStream(count * 2 + 8);
+        writeVarInt(ids, count);
+        int previous = 0;
+        for (int i = 0; i < count; i++) {
+            writeVarInt(ids, methodIds[i] - previous);
+            previous = methodIds[i];
+        }
+
+        // ** Runs as (gap after the previous run, length - 1) pairs
+        ByteArrayOutputStream runs = new ByteArrayOutputStream(16);
+        int runCount = 0;
+        int end = 0;
+        for (int i = 0; i < count; ) {
+            int start = methodIds[i];
+            int length = 1;
+            while (i + length < count && methodIds[i + length] == start + length) {
+                length++;
+            }
+            writeVarInt(runs, start - end);
+            writeVarInt(runs, length - 1);
+            end = start + length;
+            runCount++;
+            i += length;
+        }
+        int runsSize = varIntSize(runCount) + runs.size();
+
+        int words = (dictionarySize + 63) >>> 6;
+        int bitsetSize = varIntSize(words) + words * Long.BYTES;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(Math.min(ids.size(), runsSize), bitsetSize)
+                + testName.length() + 16);
+        writeInt(out, COVERAGE_MAGIC);
+        out.write(VERSION);
+        writeString(out, testName);
+        out.write(passed ? 1 : 0);
+
+        if (ids.size() <= runsSize && ids.size() <= bitsetSize) {
+            out.write(ENCODING_IDS);
+            out.write(ids.toByteArray(), 0, ids.size());
+        } else if (runsSize <= bitsetSize) {
+            out.write(ENCODING_RUNS);
+            writeVarInt(out, runCount);
+            out.write(runs.toByteArray(), 0, runs.size());
+        } else {
+            long[] bits = new long[words];
+            for (int i = 0; i < count; i++) {
+                bits[methodIds[i] >>> 6] |= 1L << methodIds[i];
+            }
+            out.write(ENCODING_BITSET);
+            writeVarInt(out, words);
+            for (long word : bits) {
+                writeLong(out, word);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    static String readString(ByteBuffer in) {
+        int length = readVarInt(in);
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            in.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            size++;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    private static void writeLong(ByteArrayOutputStream out, long value) {
+        writeInt(out, (int) (value >>> 32));
+        writeInt(out, (int) value);
+    }
+}
@@ -0,0 +1,261 @@
+package com.johnp.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * RFC 4180 CSV writer that formats fields into one reusable char buffer and writes it to the file in large
+ * channel writes, optionally gzip compressed.
+ * <p>
+ * Fields containing a comma, quote or line break are quoted, with quotes doubled. Doubles are formatted without
+ * allocating: the shortest decimal that reads back as the same double, in the plain notation of
+ * {@link Double#toString} (at least one fraction digit). Values that need scientific notation, more than 17
+ * significant digits, NaN and infinities fall back to {@link Double#toString}.
+ */
+public class CsvWriter implements Closeable {
+
+    static final int BUFFER_CHARS = 32 * 1024;
+    private static final int GZIP_BUFFER = 64 * 1024;
+
+    // ** Largest long that is exactly a double, scaled values below it make the round-trip check exact
+    private static final long EXACT_LIMIT = 1L << 53;
+    private static final double[] POWERS_OF_TEN = new double[18];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final WritableByteChannel channel;
+    private final char[] buffer = new char[BUFFER_CHARS];
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_CHARS * 3);
+    // ** Unpaired surrogates become '?', like FileWriter wrote them
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    // ** Digits of a number, written back to front
+    private final char[] digits = new char[20];
+    private int position;
+    private boolean rowStarted;
+
+    private CsvWriter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * @param gzip compress the file, conventionally named {@code *.csv.gz}
+     */
+    public static CsvWriter open(Path file, boolean gzip) throws IOException {
+        if (gzip) {
+            return new CsvWriter(Channels.newChannel(new GZIPOutputStream(Files.newOutputStream(file), GZIP_BUFFER)));
+        }
+        return new CsvWriter(FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    public CsvWriter field(String value) throws IOException {
+        separator();
+        if (!needsQuotes(value)) {
+            append(value);
+            return this;
+        }
+        append('"');
+        int from = 0;
+        for (int quote = value.indexOf('"'); quote >= 0; quote = value.indexOf('"', from)) {
+            append(value, from, quote + 1);
+            append('"');
+            from = quote + 1;
+        }
+        append(value, from, value.length());
+        append('"');
+        return this;
+    }
+
+    public CsvWriter field(long value) throws IOException {
+        separator();
+        appendLong(value);
+        return this;
+    }
+
+    public CsvWriter field(double value) throws IOException {
+        separator();
+        appendDouble(value);
+        return this;
+    }
+
+    public void endRow() throws IOException {
+        append('\n');
+        rowStarted = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+            finish();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void separator() throws IOException {
+        if (rowStarted) {
+            append(',');
+        }
+        rowStarted = true;
+    }
+
+    private static boolean needsQuotes(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void appendDouble(double value) throws IOException {
+        double magnitude = Math.abs(value);
+        // ** Double.toString uses plain notation in [1e-3, 1e7), the same range is formatted here
+        if (magnitude == 0 || (magnitude >= 1e-3 && magnitude < 1e7)) {
+            for (int fractionDigits = 1; fractionDigits < POWERS_OF_TEN.length; fractionDigits++) {
+                double scaled = magnitude * POWERS_OF_TEN[fractionDigits];
+                if (scaled >= EXACT_LIMIT) {
+                    break;
+                }
+                long candidate = Math.round(scaled);
+                // ** Both operands are exact doubles, so the division rounds correctly: equal means it round-trips
+                if (candidate / POWERS_OF_TEN[fractionDigits] == magnitude) {
+                    if (value < 0 || (value == 0 && 1 / value < 0)) {
+                        append('-');
+                    }
+                    appendFixed(candidate, fractionDigits);
+                    return;
+                }
+            }
+        }
+        append(Double.toString(value));
+    }
+
+    // ** unscaled / 10^fractionDigits, with trailing fraction zeros dropped down to one digit
+    private void appendFixed(long unscaled, int fractionDigits) throws IOException {
+        while (fractionDigits > 1 && unscaled % 10 == 0) {
+            unscaled /= 10;
+            fractionDigits--;
+        }
+        int length = 0;
+        for (int i = 0; i < fractionDigits; i++) {
+            digits[digits.length - 1 - length++] = (char) ('0' + unscaled % 10);
+            unscaled /= 10;
+        }
+        digits[digits.length - 1 - length++] = '.';
+        do {
+            digits[digits.length - 1 - length++] = (char) ('0' + unscaled % 10);
+            unscaled /= 10;
+        } while (unscaled > 0);
+        append(digits, digits.length - length, length);
+    }
+
+    private void appendLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            append(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            append('-');
+            value = -value;
+        }
+        int length = 0;
+        do {
+            digits[digits.length - 1 - length++] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        append(digits, digits.length - length, length);
+    }
+
+    private void append(char c) throws IOException {
+        if (position == buffer.length) {
+            flush();
+        }
+        buffer[position++] = c;
+    }
+
+    private void append(String value) throws IOException {
+        append(value, 0, value.length());
+    }
+
+    private void append(String value, int from, int to) throws IOException {
+        while (from < to) {
+            if (position == buffer.length) {
+                flush();
+            }
+            int count = Math.min(to - from, buffer.length - position);
+            value.getChars(from, from + count, buffer, position);
+            position += count;
+            from += count;
+        }
+    }
+
+    private void append(char[] chars, int offset, int length) throws IOException {
+        if (position + length > buffer.length) {
+            flush();
+        }
+        System.arraycopy(chars, offset, buffer, position, length);
+        position += length;
+    }
+
+    private void flush() throws IOException {
+        CharBuffer chars = CharBuffer.wrap(buffer, 0, position);
+        // ** A surrogate pair split over two flushes stays in the buffer for the next one
+        encode(chars, false);
+        int left = chars.remaining();
+        System.arraycopy(buffer, position - left, buffer, 0, left);
+        position = left;
+    }
+
+    // ** End of input: a high surrogate still waiting for its pair is written as '?'
+    private void finish() throws IOException {
+        encode(CharBuffer.wrap(buffer, 0, position), true);
+        position = 0;
+        CoderResult result;
+        do {
+            result = encoder.flush(bytes);
+            writeBytes();
+        } while (result.isOverflow());
+    }
+
+    private void encode(CharBuffer chars, boolean endOfInput) throws IOException {
+        CoderResult result;
+        do {
+            result = encoder.encode(chars, bytes, endOfInput);
+            if (result.isError()) {
+                result.throwException();
+            }
+            writeBytes();
+        } while (result.isOverflow());
+    }
+
+    private void writeBytes() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+}
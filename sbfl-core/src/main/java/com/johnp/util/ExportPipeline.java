@@ -0,0 +1,106 @@
+package com.johnp.util;
+
+import com.johnp.bean.RankingSnapshot;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes one {@link RankingSnapshot} to several report formats at once. Every {@link ExportSink} runs on its own
+ * thread and the export returns when the last of them finishes, so it takes as long as the slowest format rather
+ * than the sum of all of them.
+ */
+public class ExportPipeline {
+
+    private final List<ExportSink> sinks;
+    private final PipelineMetrics metrics;
+
+    /**
+     * @param metrics receives an {@code export-<sink>} phase per sink and the wall time as {@code export}
+     */
+    public ExportPipeline(List<ExportSink> sinks, PipelineMetrics metrics) {
+        this.sinks = new ArrayList<>(sinks);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Runs every sink against {@code ranking}, each writing its {@link ExportSink#fileName() file} in {@code dir}.
+     *
+     * @return the nanoseconds each sink took, by file name in sink order
+     * @throws IOException the first sink failure, once every other sink has finished; further failures are
+     *                     attached as suppressed exceptions
+     */
+    public Map<String, Long> export(RankingSnapshot ranking, Path dir) throws IOException {
+        Map<String, Long> timings = new LinkedHashMap<>();
+        if (sinks.isEmpty()) {
+            return timings;
+        }
+        List<Callable<Long>> tasks = new ArrayList<>(sinks.size());
+        for (ExportSink sink : sinks) {
+            tasks.add(() -> {
+                Thread.currentThread().setName("sbfl-export-" + sink.name());
+                long start = System.nanoTime();
+                sink.export(ranking, dir.resolve(sink.fileName()));
+                return System.nanoTime() - start;
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(sinks.size(), runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+        long start = System.nanoTime();
+        List<Future<Long>> results;
+        try {
+            // ** The one completion barrier: returns when every sink has finished or failed
+            results = executor.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while exporting the ranking");
+        } finally {
+            executor.shutdownNow();
+        }
+        long wall = System.nanoTime() - start;
+
+        IOException failure = null;
+        for (int i = 0; i < sinks.size(); i++) {
+            ExportSink sink = sinks.get(i);
+            try {
+                long nanos = results.get(i).get();
+                metrics.phase("export-" + sink.name(), nanos, ranking.size(), "rows");
+                timings.put(sink.fileName(), nanos);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                IOException sinkFailure = e.getCause() instanceof IOException io ? io
+                        : new IOException("Export to " + sink.fileName() + " failed", e.getCause());
+                if (failure == null) {
+                    failure = sinkFailure;
+                } else {
+                    failure.addSuppressed(sinkFailure);
+                }
+            } catch (InterruptedException e) {
+                // ** Not reached, invokeAll only returns completed futures
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while exporting the ranking");
+            }
+        }
+        metrics.phase("export", wall, ranking.size(), "rows");
+        if (failure != null) {
+            throw failure;
+        }
+        return timings;
+    }
+}
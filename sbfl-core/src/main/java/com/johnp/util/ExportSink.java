@@ -0,0 +1,27 @@
+package com.johnp.util;
+
+import com.johnp.bean.RankingSnapshot;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * A report format written by the {@link ExportPipeline}.
+ * <p>
+ * Sinks run concurrently on the same {@link RankingSnapshot}. They only read it, and should stream their file
+ * rather than build the whole report in memory.
+ */
+public interface ExportSink {
+
+    /**
+     * Name used in the Mojo configuration and in the export timings.
+     */
+    String name();
+
+    /**
+     * File, or directory, written to the export directory.
+     */
+    String fileName();
+
+    void export(RankingSnapshot ranking, Path file) throws IOException;
+}
@@ -0,0 +1,118 @@
+package com.johnp.util;
+
+import com.johnp.bean.RankingSnapshot;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Built-in {@link ExportSink}s, each a {@link FileExportUtil} or {@link HtmlReportExporter} export of the ranking.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class ExportSinks {
+
+    public static final ExportSink CSV = sink("csv", "Suspicion.csv", (ranking, file) ->
+            FileExportUtil.csvExport(file.toString(), ranking.getSpectrum(), ranking.getScores(), ranking.getOrder()));
+
+    public static final ExportSink CSV_GZIP = sink("csv.gz", "Suspicion.csv.gz", (ranking, file) ->
+            FileExportUtil.csvExport(file.toString(), ranking.getSpectrum(), ranking.getScores(), ranking.getOrder(),
+                    true));
+
+    // ** Streamed, memory does not grow with the number of exported rows
+    public static final ExportSink XLSX = sink("xlsx", "Suspicion.xlsx", (ranking, file) ->
+            FileExportUtil.xlsExport(file.toString(), ranking.getSpectrum(), ranking.getScores(), ranking.getOrder()));
+
+    // ** Columnar copy for notebooks and other tools that memory-map it instead of parsing the CSV
+    public static final ExportSink ARROW = sink("arrow", "Suspicion.arrow", (ranking, file) ->
+            FileExportUtil.arrowExport(file.toString(), ranking.getSpectrum(), ranking.getScores(),
+                    ranking.getOrder()));
+
+    public static final ExportSink JSON = sink("json", "Suspicion.json", (ranking, file) ->
+            FileExportUtil.jsonExport(file.toString(), ranking.getSpectrum(), ranking.getScores(), ranking.getOrder()));
+
+    // ** A report directory, open index.html in it
+    public static final ExportSink HTML = sink("html", "Suspicion-report", (ranking, file) ->
+            HtmlReportExporter.export(file, ranking.getSpectrum(), ranking.getScores(), ranking.getOrder()));
+
+    /**
+     * Every built-in format except the compressed CSV.
+     */
+    public static final List<ExportSink> DEFAULTS = Collections.unmodifiableList(Arrays.asList(CSV, XLSX, ARROW,
+            JSON, HTML));
+
+    private static final Map<String, ExportSink> BUILT_IN = new LinkedHashMap<>();
+
+    static {
+        for (ExportSink sink : Arrays.asList(CSV, CSV_GZIP, XLSX, ARROW, JSON, HTML)) {
+            BUILT_IN.put(sink.name(), sink);
+        }
+    }
+
+    /**
+     * Resolves sinks by (case-insensitive) name, keeping the given order. An empty or {@code null} list selects
+     * {@link #DEFAULTS}.
+     *
+     * @param gzipCsv write {@code csv} compressed, as {@code csv.gz} does
+     * @throws IllegalArgumentException for an unknown name
+     */
+    public static List<ExportSink> forNames(List<String> names, boolean gzipCsv) {
+        List<ExportSink> sinks = new ArrayList<>();
+        for (String name : names == null || names.isEmpty() ? availableDefaults() : names) {
+            ExportSink sink = BUILT_IN.get(name.trim().toLowerCase(Locale.ROOT));
+            if (sink == null) {
+                throw new IllegalArgumentException("Unknown export format '" + name.trim() + "', available: "
+                        + BUILT_IN.keySet());
+            }
+            if (sink == CSV && gzipCsv) {
+                sink = CSV_GZIP;
+            }
+            if (!sinks.contains(sink)) {
+                sinks.add(sink);
+            }
+        }
+        return sinks;
+    }
+
+    private static List<String> availableDefaults() {
+        List<String> names = new ArrayList<>();
+        DEFAULTS.forEach(sink -> names.add(sink.name()));
+        return names;
+    }
+
+    private interface FileExport {
+        void export(RankingSnapshot ranking, Path file) throws IOException;
+    }
+
+    private static ExportSink sink(String name, String fileName, FileExport export) {
+        return new ExportSink() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public String fileName() {
+                return fileName;
+            }
+
+            @Override
+            public void export(RankingSnapshot ranking, Path file) throws IOException {
+                export.export(ranking, file);
+            }
+
+            @Override
+            public String toString() {
+                return name;
+            }
+        };
+    }
+}
@@ -1,20 +1,30 @@
 package com.johnp.util;
 
 import com.johnp.bean.MethodInfo;
+import com.johnp.bean.ScoreTable;
+import com.johnp.bean.Spectrum;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
+import org.apache.poi.ss.SpreadsheetVersion;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.util.CellRangeAddress;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
 
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public class FileExportUtil {
@@ -23,109 +33,256 @@ public class FileExportUtil {
     // *? https://www.codejava.net/coding/java-code-example-to-export-data-from-database-to-excel-file
     // */
 
+    // ** XLSX rows kept in memory while streaming
+    private static final int XLSX_WINDOW = 100;
+    // ** Rows of one XLSX sheet, its header included
+    static final int XLSX_SHEET_ROWS = SpreadsheetVersion.EXCEL2007.getMaxRows();
+    static final String XLSX_SHEET = "caluclatedSuspicion";
+    // ** Signatures sampled for the width of the first column, Excel caps a column at 255 characters
+    private static final int WIDTH_SAMPLE = 1000;
+    private static final int MAX_COLUMN_CHARS = 255;
+    // ** Width of a score column, a double prints with up to 20 characters
+    private static final int SCORE_CHARS = 20;
+    // ** Characters buffered by the JSON writer
+    private static final int TEXT_BUFFER = 64 * 1024;
+
+    /**
+     * Streams the sorted methods to an XLSX workbook, see {@link #xlsExport(String, Spectrum, ScoreTable, int[])}.
+     */
     public static void xlsExport(String fileName, List<Map.Entry<String, MethodInfo>> dataList) throws IOException {
-        try (XSSFWorkbook workbook = new XSSFWorkbook()) {
-            XSSFSheet sheet = workbook.createSheet("caluclatedSuspicion");
+        String[] headers = {"Method Name", "Tarantula Suspicion", "SBI Suspicion", "Jaccard Suspicion",
+                "Ochai Suspicion"};
+        writeWorkbook(fileName, headers, dataList.size(), index -> dataList.get(index).getKey(), (index, row) -> {
+            Map.Entry<String, MethodInfo> entry = dataList.get(index);
+            MethodInfo info = entry.getValue();
+            row.createCell(0).setCellValue(entry.getKey());
+            row.createCell(1).setCellValue(info.getSuspiciousnessTarantula());
+            row.createCell(2).setCellValue(info.getSuspiciousnessSbi());
+            row.createCell(3).setCellValue(info.getSuspiciousnessJaccard());
+            row.createCell(4).setCellValue(info.getSuspiciousnessOchiai());
+        }, XLSX_SHEET_ROWS);
+    }
 
-            writeHeaderLine(sheet);
-            writeDataLines(dataList, sheet);
-            beautifyColumns(sheet);
+    /**
+     * Writes the methods (or lines) in {@code order} with one suspicion column per computed formula, like
+     * {@link #csvExport(String, Spectrum, ScoreTable, int[])}.
+     * <p>
+     * The workbook is streamed: only the last {@value #XLSX_WINDOW} rows are held in memory, older ones go to a
+     * compressed temporary file, so memory stays the same for any ranking size. Column widths are estimated from
+     * a sample of the signatures instead of measuring every cell.
+     * <p>
+     * A sheet holds at most 1,048,576 rows, Excel's limit: a longer ranking continues on sheets numbered from 2,
+     * each repeating the header.
+     */
+    public static void xlsExport(String fileName, Spectrum spectrum, ScoreTable scores, int[] order)
+            throws IOException {
+        xlsExport(fileName, spectrum, scores, order, XLSX_SHEET_ROWS);
+    }
 
-            FileOutputStream outputStream = new FileOutputStream(fileName);
-            workbook.write(outputStream);
+    /**
+     * @param sheetRows rows of one sheet, its header included
+     */
+    static void xlsExport(String fileName, Spectrum spectrum, ScoreTable scores, int[] order, int sheetRows)
+            throws IOException {
+        String[] signatures = spectrum.getSignatures();
+        String[] headers = new String[scores.formulaCount() + 1];
+        headers[0] = elementHeader(signatures);
+        for (int f = 0; f < scores.formulaCount(); f++) {
+            headers[f + 1] = scores.getFormulaName(f) + " Suspicion";
         }
+        writeWorkbook(fileName, headers, order.length, index -> signatures[order[index]], (index, row) -> {
+            int id = order[index];
+            row.createCell(0).setCellValue(signatures[id]);
+            for (int f = 0; f < scores.formulaCount(); f++) {
+                row.createCell(f + 1).setCellValue(scores.getColumn(f)[id]);
+            }
+        }, sheetRows);
+    }
+
+    /**
+     * Writes the methods (or lines) in {@code order} as a columnar Arrow IPC file: method ID, signature, the
+     * ef/ep/nf/np counts and one score column per computed formula, see {@link ArrowIpcWriter}.
+     */
+    public static void arrowExport(String fileName, Spectrum spectrum, ScoreTable scores, int[] order)
+            throws IOException {
+        ArrowIpcWriter.write(Paths.get(fileName), spectrum, scores, order);
     }
 
     public static void csvExport(String fileName, List<Map.Entry<String, MethodInfo>> dataList) throws IOException {
-        try (FileWriter writer = new FileWriter(fileName)) {
+        try (CsvWriter writer = CsvWriter.open(Paths.get(fileName), false)) {
             // Write header
-            writer.append("Method Name,Tarantula Suspicion,SBI Suspicion,Jaccard Suspicion,Ochai Suspicion\n");
+            writer.field("Method Name").field("Tarantula Suspicion").field("SBI Suspicion")
+                    .field("Jaccard Suspicion").field("Ochai Suspicion").endRow();
 
             // Write data rows
             for (Map.Entry<String, MethodInfo> entry : dataList) {
                 MethodInfo info = entry.getValue();
-                writer.append(entry.getKey())
-                        .append(',')
-                        .append(String.valueOf(info.getSuspiciousnessTarantula()))
-                        .append(',')
-                        .append(String.valueOf(info.getSuspiciousnessSbi()))
-                        .append(',')
-                        .append(String.valueOf(info.getSuspiciousnessJaccard()))
-                        .append(',')
-                        .append(String.valueOf(info.getSuspiciousnessOchiai()))
-                        .append('\n');
+                writer.field(entry.getKey())
+                        .field(info.getSuspiciousnessTarantula())
+                        .field(info.getSuspiciousnessSbi())
+                        .field(info.getSuspiciousnessJaccard())
+                        .field(info.getSuspiciousnessOchiai())
+                        .endRow();
             }
         }
     }
 
-    private static void beautifyColumns(XSSFSheet sheet) {
-
-        // *? REF: https://stackoverflow.com/a/59718764
-        // ** Set Fixed Width for Column
-        sheet.setColumnWidth(0, 90 * 256);
-
-        // *? REF: https://www.baeldung.com/java-apache-poi-expand-columns
-        // ** Add Auto Width on All Columns
-        sheet.autoSizeColumn(1);
-        sheet.autoSizeColumn(2);
-        sheet.autoSizeColumn(3);
-        sheet.autoSizeColumn(4);
-        sheet.createFreezePane(0, 1);
-
-        // *? REF: https://stackoverflow.com/questions/77938769/how-to-add-filters-for-specific-columns-using-apache-poi
-        sheet.setAutoFilter(CellRangeAddress.valueOf("A1:E1"));
+    /**
+     * Writes the methods (or lines) in {@code order} with one suspicion column per computed formula.
+     */
+    public static void csvExport(String fileName, Spectrum spectrum, ScoreTable scores, int[] order) throws IOException {
+        csvExport(fileName, spectrum, scores, order, false);
     }
 
-    private static void writeHeaderLine(XSSFSheet sheet) {
-
-        Row headerRow = sheet.createRow(0);
-
-        Cell headerCell = headerRow.createCell(0);
-        headerCell.setCellValue("Method Name");
-
-        headerCell = headerRow.createCell(1);
-        headerCell.setCellValue("Tarantula Suspicion");
+    /**
+     * @param gzip compress the file, its name should end with {@code .gz}
+     */
+    public static void csvExport(String fileName, Spectrum spectrum, ScoreTable scores, int[] order, boolean gzip)
+            throws IOException {
+        try (CsvWriter writer = CsvWriter.open(Paths.get(fileName), gzip)) {
+            // Write header
+            String[] signatures = spectrum.getSignatures();
+            writer.field(elementHeader(signatures));
+            for (String formulaName : scores.getFormulaNames()) {
+                writer.field(formulaName + " Suspicion");
+            }
+            writer.endRow();
 
-        headerCell = headerRow.createCell(2);
-        headerCell.setCellValue("SBI Suspicion");
+            // Write data rows, each score column read by reference once instead of per row
+            double[][] columns = new double[scores.formulaCount()][];
+            for (int f = 0; f < columns.length; f++) {
+                columns[f] = scores.getColumn(f);
+            }
+            for (int id : order) {
+                writer.field(signatures[id]);
+                for (double[] column : columns) {
+                    writer.field(column[id]);
+                }
+                writer.endRow();
+            }
+        }
+    }
 
-        headerCell = headerRow.createCell(3);
-        headerCell.setCellValue("Jaccard Suspicion");
+    /**
+     * Writes the methods (or lines) in {@code order} as one JSON document, one ranked method per line: its rank,
+     * method ID, signature, ef/ep/nf/np counts and its scores in the order of {@code formulas}. NaN and infinite
+     * scores are written as {@code null}.
+     */
+    public static void jsonExport(String fileName, Spectrum spectrum, ScoreTable scores, int[] order)
+            throws IOException {
+        String[] signatures = spectrum.getSignatures();
+        int[] failed = spectrum.getFailed();
+        int[] passed = spectrum.getPassed();
+        try (Writer writer = textWriter(fileName)) {
+            writer.append("{\n  \"failedTests\": ").append(String.valueOf(spectrum.getTotalFailedTests()))
+                    .append(",\n  \"passedTests\": ").append(String.valueOf(spectrum.getTotalPassedTests()))
+                    .append(",\n  \"formulas\": [");
+            for (int f = 0; f < scores.formulaCount(); f++) {
+                writer.append(f == 0 ? "" : ", ");
+                JsonText.string(writer, scores.getFormulaName(f));
+            }
+            writer.append("],\n  \"ranking\": [");
+            for (int rank = 0; rank < order.length; rank++) {
+                int id = order[rank];
+                writer.append(rank == 0 ? "\n    " : ",\n    ")
+                        .append("{\"rank\": ").append(String.valueOf(rank + 1))
+                        .append(", \"id\": ").append(String.valueOf(id))
+                        .append(", \"signature\": ");
+                JsonText.string(writer, signatures[id]);
+                writer.append(", \"ef\": ").append(String.valueOf(failed[id]))
+                        .append(", \"ep\": ").append(String.valueOf(passed[id]))
+                        .append(", \"nf\": ").append(String.valueOf(spectrum.getTotalFailedTests() - failed[id]))
+                        .append(", \"np\": ").append(String.valueOf(spectrum.getTotalPassedTests() - passed[id]))
+                        .append(", \"scores\": [");
+                for (int f = 0; f < scores.formulaCount(); f++) {
+                    writer.append(f == 0 ? "" : ", ");
+                    JsonText.number(writer, scores.getColumn(f)[id]);
+                }
+                writer.append("]}");
+            }
+            writer.append(order.length == 0 ? "]\n}\n" : "\n  ]\n}\n");
+        }
+    }
 
-        headerCell = headerRow.createCell(4);
-        headerCell.setCellValue("Ochai Suspicion");
+    /**
+     * @return header of the signature column, named after the element the spectrum was recorded at
+     */
+    static String elementHeader(String[] signatures) {
+        String granularity = CoverageFormat.granularity(signatures);
+        if (CoverageFormat.GRANULARITY_BRANCH.equals(granularity)) {
+            return "Branch";
+        }
+        return CoverageFormat.GRANULARITY_LINE.equals(granularity) ? "Line" : "Method Name";
     }
 
-    private static void writeDataLines(List<Map.Entry<String, MethodInfo>> dataList,
-                                       XSSFSheet sheet) {
-        AtomicInteger rowCount = new AtomicInteger(1);
+    private static Writer textWriter(String fileName) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(Paths.get(fileName)),
+                StandardCharsets.UTF_8), TEXT_BUFFER);
+    }
 
-        dataList.forEach(entry -> {
-            double tarantulaSuspicion = entry.getValue().getSuspiciousnessTarantula();
-            double sbiSuspicion = entry.getValue().getSuspiciousnessSbi();
-            double jaccardSuspicion = entry.getValue().getSuspiciousnessJaccard();
-            double ochaiSuspicion = entry.getValue().getSuspiciousnessOchiai();
+    private static void writeWorkbook(String fileName, String[] headers, int rows, IntFunction<String> names,
+                                      RowWriter rowWriter, int sheetRows) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(XLSX_WINDOW);
+        workbook.setCompressTempFiles(true);
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(fileName))) {
+            int nameChars = nameColumnChars(headers[0], rows, names);
+            int index = 0;
+            int sheetNumber = 1;
+            do {
+                Sheet sheet = workbook.createSheet(sheetNumber == 1 ? XLSX_SHEET : XLSX_SHEET + " " + sheetNumber);
 
-            Row row = sheet.createRow(rowCount.getAndIncrement());
+                writeHeaderLine(sheet, headers);
+                int sheetEnd = (int) Math.min(rows, (long) index + sheetRows - 1);
+                for (int row = 1; index < sheetEnd; index++, row++) {
+                    rowWriter.write(index, sheet.createRow(row));
+                }
+                beautifyColumns(sheet, headers, nameChars);
+                sheetNumber++;
+            } while (index < rows);
 
-            int columnCount = 0;
-            Cell cell = row.createCell(columnCount++);
-            cell.setCellValue(entry.getKey());
+            workbook.write(outputStream);
+        } finally {
+            // ** Deletes the temporary file of the flushed rows
+            workbook.dispose();
+            workbook.close();
+        }
+    }
 
-            cell = row.createCell(columnCount++);
-            cell.setCellValue(tarantulaSuspicion);
+    private static void beautifyColumns(Sheet sheet, String[] headers, int nameChars) {
 
-            cell = row.createCell(columnCount++);
-            cell.setCellValue(sbiSuspicion);
+        // *? REF: https://stackoverflow.com/a/59718764
+        // ** Set Fixed Width for Column, autoSizeColumn would measure every row
+        sheet.setColumnWidth(0, nameChars * 256);
+        for (int column = 1; column < headers.length; column++) {
+            sheet.setColumnWidth(column, (Math.max(headers[column].length(), SCORE_CHARS) + 2) * 256);
+        }
+        sheet.createFreezePane(0, 1);
 
-            cell = row.createCell(columnCount++);
-            cell.setCellValue(jaccardSuspicion);
+        // *? REF: https://stackoverflow.com/questions/77938769/how-to-add-filters-for-specific-columns-using-apache-poi
+        sheet.setAutoFilter(new CellRangeAddress(0, 0, 0, headers.length - 1));
+    }
 
-            cell = row.createCell(columnCount);
-            cell.setCellValue(ochaiSuspicion);
+    // ** Longest of up to WIDTH_SAMPLE names spread evenly over the ranking, the top rows always included
+    private static int nameColumnChars(String header, int rows, IntFunction<String> names) {
+        int longest = header.length();
+        int stride = Math.max(1, rows / WIDTH_SAMPLE);
+        for (int index = 0; index < rows; index += index < WIDTH_SAMPLE / 10 ? 1 : stride) {
+            longest = Math.max(longest, names.apply(index).length());
+        }
+        return Math.min(longest + 2, MAX_COLUMN_CHARS);
+    }
 
-        });
+    private static void writeHeaderLine(Sheet sheet, String[] headers) {
 
+        Row headerRow = sheet.createRow(0);
+        for (int column = 0; column < headers.length; column++) {
+            Cell headerCell = headerRow.createCell(column);
+            headerCell.setCellValue(headers[column]);
+        }
     }
 
-}
\ No newline at end of file
+    @FunctionalInterface
+    private interface RowWriter {
+        void write(int index, Row row);
+    }
+}
@@ -0,0 +1,181 @@
+package com.johnp.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Minimal FlatBuffers builder, enough for the Arrow IPC metadata written by {@link ArrowIpcWriter}: tables of
+ * scalars and offsets, strings, and vectors of offsets or structs.
+ * <p>
+ * Like the reference builder it writes the buffer back to front, so an object has to be finished before the
+ * objects that refer to it are started. Offsets returned by the builder count from the end of the buffer.
+ */
+final class FlatBufferBuilder {
+
+    private byte[] buffer = new byte[1024];
+    // ** The bytes written so far fill buffer[space..]
+    private int space = buffer.length;
+    private int minAlign = 1;
+    // ** Offsets of the fields of the table being built, 0 for fields left out
+    private int[] fields;
+    private int tableStart;
+
+    int offset() {
+        return buffer.length - space;
+    }
+
+    void startTable(int fieldCount) {
+        fields = new int[fieldCount];
+        tableStart = offset();
+    }
+
+    void addByte(int field, int value) {
+        prep(1, 0);
+        putByte(value);
+        fields[field] = offset();
+    }
+
+    void addShort(int field, int value) {
+        prep(2, 0);
+        putShort(value);
+        fields[field] = offset();
+    }
+
+    void addInt(int field, int value) {
+        prep(4, 0);
+        putInt(value);
+        fields[field] = offset();
+    }
+
+    void addLong(int field, long value) {
+        prep(8, 0);
+        putLong(value);
+        fields[field] = offset();
+    }
+
+    void addOffset(int field, int target) {
+        addOffset(target);
+        fields[field] = offset();
+    }
+
+    /**
+     * Writes the table's vtable, not shared with identical vtables as the reference builder does.
+     *
+     * @return offset of the table
+     */
+    int endTable() {
+        prep(4, 0);
+        putInt(0);
+        int table = offset();
+        int used = fields.length;
+        while (used > 0 && fields[used - 1] == 0) {
+            used--;
+        }
+        for (int field = used - 1; field >= 0; field--) {
+            prep(2, 0);
+            putShort(fields[field] == 0 ? 0 : table - fields[field]);
+        }
+        prep(2, 0);
+        putShort(table - tableStart);
+        prep(2, 0);
+        putShort((used + 2) * 2);
+        // ** A table starts with the distance back to its vtable
+        putIntAt(buffer.length - table, offset() - table);
+        fields = null;
+        return table;
+    }
+
+    int createString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        prep(4, bytes.length + 1);
+        putByte(0);
+        space -= bytes.length;
+        System.arraycopy(bytes, 0, buffer, space, bytes.length);
+        putInt(bytes.length);
+        return offset();
+    }
+
+    int createOffsetVector(int[] targets) {
+        prep(4, targets.length * 4);
+        for (int i = targets.length - 1; i >= 0; i--) {
+            addOffset(targets[i]);
+        }
+        putInt(targets.length);
+        return offset();
+    }
+
+    /**
+     * Starts a vector of structs, written last to first with {@link #putLong}, {@link #putInt} and {@link #pad}
+     * and finished with {@link #endVector}.
+     */
+    void startVector(int elementSize, int count, int alignment) {
+        prep(4, elementSize * count);
+        prep(alignment, elementSize * count);
+    }
+
+    int endVector(int count) {
+        putInt(count);
+        return offset();
+    }
+
+    /**
+     * @return the finished buffer, its length a multiple of the largest alignment used
+     */
+    byte[] finish(int root) {
+        prep(minAlign, 4);
+        addOffset(root);
+        return Arrays.copyOfRange(buffer, space, buffer.length);
+    }
+
+    void putLong(long value) {
+        putInt((int) (value >>> 32));
+        putInt((int) value);
+    }
+
+    void putInt(int value) {
+        putShort(value >>> 16);
+        putShort(value);
+    }
+
+    void pad(int bytes) {
+        for (int i = 0; i < bytes; i++) {
+            putByte(0);
+        }
+    }
+
+    // ** Offsets point forward, relative to where they are stored
+    private void addOffset(int target) {
+        prep(4, 0);
+        putInt(offset() + 4 - target);
+    }
+
+    // ** Pads so a value of size bytes, written after additional bytes, is aligned, growing the buffer if needed
+    private void prep(int size, int additional) {
+        minAlign = Math.max(minAlign, size);
+        int padding = -(offset() + additional) & (size - 1);
+        int needed = padding + size + additional;
+        if (space < needed) {
+            int used = offset();
+            byte[] grown = new byte[Math.max(buffer.length * 2, used + needed)];
+            System.arraycopy(buffer, space, grown, grown.length - used, used);
+            space = grown.length - used;
+            buffer = grown;
+        }
+        pad(padding);
+    }
+
+    private void putShort(int value) {
+        putByte(value >>> 8);
+        putByte(value);
+    }
+
+    private void putByte(int value) {
+        buffer[--space] = (byte) value;
+    }
+
+    private void putIntAt(int index, int value) {
+        for (int i = 0; i < 4; i++) {
+            buffer[index + i] = (byte) (value >>> (8 * i));
+        }
+    }
+}
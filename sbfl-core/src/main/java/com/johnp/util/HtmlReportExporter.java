@@ -0,0 +1,203 @@
+package com.johnp.util;
+
+import com.johnp.bean.ScoreTable;
+import com.johnp.bean.Spectrum;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes the ranking as a static HTML report that opens at once for any ranking size. The report directory holds a
+ * fixed {@code index.html} viewer and a {@code data} directory with:
+ * <ul>
+ *     <li>{@code index.js}: totals, columns and the number of pages,</li>
+ *     <li>{@code page-<n>.js}: the ranking in pages of {@value #PAGE_ROWS} rows, in rank order,</li>
+ *     <li>{@code packages.js}: one row per package, ordered by its best-ranked method.</li>
+ * </ul>
+ * The viewer only loads the pages it shows. Each data file is one JSON value wrapped in a call, e.g.
+ * {@code SBFL.page(3, [...]);}, because browsers load scripts next to a page opened from disk but refuse to fetch
+ * JSON there.
+ * <p>
+ * Rows are streamed from the ranking one page file at a time, only the per-package counts are kept in memory.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class HtmlReportExporter {
+
+    public static final int PAGE_ROWS = 1000;
+
+    static final String DATA_DIR = "data";
+
+    private static final String VIEWER = "report.html";
+    private static final String PAGE_PREFIX = "page-";
+    private static final String DEFAULT_PACKAGE = "(default package)";
+    private static final int TEXT_BUFFER = 64 * 1024;
+
+    /**
+     * Writes the report for the methods (or lines) in {@code order} to {@code reportDir}, replacing the pages of a
+     * previous report there.
+     */
+    public static void export(Path reportDir, Spectrum spectrum, ScoreTable scores, int[] order) throws IOException {
+        Path dataDir = reportDir.resolve(DATA_DIR);
+        Files.createDirectories(dataDir);
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(dataDir, PAGE_PREFIX + "*.js")) {
+            for (Path file : stale) {
+                Files.delete(file);
+            }
+        }
+
+        String[] signatures = spectrum.getSignatures();
+        int[] failed = spectrum.getFailed();
+        int[] passed = spectrum.getPassed();
+        // ** The first formula decides the ranking, its score is the one rolled up per package
+        double[] ranking = scores.formulaCount() > 0 ? scores.getColumn(0) : null;
+        Map<String, PackageRollup> packages = new HashMap<>();
+
+        int pages = (order.length + PAGE_ROWS - 1) / PAGE_ROWS;
+        for (int page = 0; page < pages; page++) {
+            int from = page * PAGE_ROWS;
+            int to = Math.min(order.length, from + PAGE_ROWS);
+            try (Writer writer = textWriter(dataDir.resolve(PAGE_PREFIX + page + ".js"))) {
+                writer.append("SBFL.page(").append(String.valueOf(page)).append(", [");
+                for (int rank = from; rank < to; rank++) {
+                    int id = order[rank];
+                    writer.append(rank == from ? "\n[" : ",\n[").append(String.valueOf(rank + 1))
+                            .append(',').append(String.valueOf(id)).append(',');
+                    JsonText.string(writer, signatures[id]);
+                    writer.append(',').append(String.valueOf(failed[id]))
+                            .append(',').append(String.valueOf(passed[id]))
+                            .append(',').append(String.valueOf(spectrum.getTotalFailedTests() - failed[id]))
+                            .append(',').append(String.valueOf(spectrum.getTotalPassedTests() - passed[id]));
+                    for (int f = 0; f < scores.formulaCount(); f++) {
+                        writer.append(',');
+                        score(writer, scores.getColumn(f)[id]);
+                    }
+                    writer.append(']');
+
+                    packages.computeIfAbsent(packageName(signatures[id]), PackageRollup::new)
+                            .add(rank + 1, failed[id] > 0, ranking == null ? Double.NaN : ranking[id]);
+                }
+                writer.append("\n]);\n");
+            }
+        }
+
+        List<PackageRollup> rollups = new ArrayList<>(packages.values());
+        rollups.sort(Comparator.comparingInt(rollup -> rollup.bestRank));
+        try (Writer writer = textWriter(dataDir.resolve("packages.js"))) {
+            writer.append("SBFL.packages([");
+            for (int i = 0; i < rollups.size(); i++) {
+                PackageRollup rollup = rollups.get(i);
+                writer.append(i == 0 ? "\n[" : ",\n[");
+                JsonText.string(writer, rollup.name);
+                writer.append(',').append(String.valueOf(rollup.methods))
+                        .append(',').append(String.valueOf(rollup.coveredByFailing))
+                        .append(',').append(String.valueOf(rollup.bestRank)).append(',');
+                score(writer, rollup.topScore);
+                writer.append(']');
+            }
+            writer.append("\n]);\n");
+        }
+
+        String granularity = CoverageFormat.granularity(signatures);
+        try (Writer writer = textWriter(dataDir.resolve("index.js"))) {
+            writer.append("SBFL.index({\n\"generated\": ");
+            JsonText.string(writer, Instant.now().toString());
+            writer.append(",\n\"granularity\": ");
+            JsonText.string(writer, granularity);
+            writer.append(",\n\"rows\": ").append(String.valueOf(order.length))
+                    .append(",\n\"pageRows\": ").append(String.valueOf(PAGE_ROWS))
+                    .append(",\n\"pages\": ").append(String.valueOf(pages))
+                    .append(",\n\"failedTests\": ").append(String.valueOf(spectrum.getTotalFailedTests()))
+                    .append(",\n\"passedTests\": ").append(String.valueOf(spectrum.getTotalPassedTests()))
+                    .append(",\n\"packages\": ").append(String.valueOf(rollups.size()))
+                    .append(",\n\"formulas\": [");
+            for (int f = 0; f < scores.formulaCount(); f++) {
+                writer.append(f == 0 ? "" : ", ");
+                JsonText.string(writer, scores.getFormulaName(f));
+            }
+            writer.append("],\n\"columns\": [\"Rank\", \"ID\", ");
+            JsonText.string(writer, FileExportUtil.elementHeader(signatures));
+            writer.append(", \"ef\", \"ep\", \"nf\", \"np\"");
+            for (int f = 0; f < scores.formulaCount(); f++) {
+                writer.append(", ");
+                JsonText.string(writer, scores.getFormulaName(f));
+            }
+            writer.append("],\n\"packageColumns\": [\"Package\", ");
+            JsonText.string(writer, CoverageFormat.GRANULARITY_BRANCH.equals(granularity) ? "Branches"
+                    : CoverageFormat.GRANULARITY_LINE.equals(granularity) ? "Lines" : "Methods");
+            writer.append(", \"Covered by failing tests\", \"Best rank\", \"Score\"]\n});\n");
+        }
+
+        try (InputStream viewer = HtmlReportExporter.class.getResourceAsStream(VIEWER)) {
+            if (viewer == null) {
+                throw new IOException("Missing report viewer resource " + VIEWER);
+            }
+            Files.copy(viewer, reportDir.resolve("index.html"), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return the dotted package of a {@code className:methodName:desc} signature, whose class name is slash
+     * separated or, in the text coverage layout, dotted
+     */
+    static String packageName(String signature) {
+        int classEnd = signature.indexOf(':');
+        if (classEnd < 0) {
+            classEnd = signature.length();
+        }
+        int separator = Math.max(signature.lastIndexOf('/', classEnd - 1), signature.lastIndexOf('.', classEnd - 1));
+        return separator <= 0 ? DEFAULT_PACKAGE : signature.substring(0, separator).replace('/', '.');
+    }
+
+    // ** Infinite scores (DStar of a method only failing tests cover) stay visible as strings, JSON has no Infinity
+    private static void score(Writer writer, double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            JsonText.string(writer, Double.toString(value));
+        } else {
+            JsonText.number(writer, value);
+        }
+    }
+
+    private static Writer textWriter(Path file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8),
+                TEXT_BUFFER);
+    }
+
+    private static final class PackageRollup {
+        private final String name;
+        private int methods;
+        private int coveredByFailing;
+        // ** Ranks arrive in ascending order, the first one added is the best
+        private int bestRank;
+        private double topScore;
+
+        private PackageRollup(String name) {
+            this.name = name;
+        }
+
+        private void add(int rank, boolean failing, double score) {
+            if (methods++ == 0) {
+                bestRank = rank;
+                topScore = score;
+            }
+            if (failing) {
+                coveredByFailing++;
+            }
+        }
+    }
+}
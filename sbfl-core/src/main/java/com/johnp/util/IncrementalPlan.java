@@ -0,0 +1,109 @@
+package com.johnp.util;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Tests to re-collect after a change, computed by {@link SpectrumSnapshot#plan(BytecodeHashes)}.
+ * <p>
+ * Test names are {@code <test class>.<method>} as recorded by the coverage listener. A stale test class has every
+ * recorded test dropped and is run as a whole; a stale test is dropped and run alone.
+ */
+public final class IncrementalPlan {
+
+    private final boolean full;
+    private final Set<String> staleTestClasses;
+    private final Set<String> staleTests;
+    private final Set<String> selectedClasses;
+
+    IncrementalPlan(boolean full, Set<String> staleTestClasses, Set<String> staleTests, Set<String> selectedClasses) {
+        this.full = full;
+        this.staleTestClasses = staleTestClasses;
+        this.staleTests = staleTests;
+        this.selectedClasses = selectedClasses;
+    }
+
+    /**
+     * Every test has to run, there is no usable snapshot or a change cannot be traced to the tests it affects.
+     */
+    public static IncrementalPlan full() {
+        return new IncrementalPlan(true, Collections.emptySet(), Collections.emptySet(), Collections.emptySet());
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    /**
+     * @return {@code true} when the snapshot is still valid and no test needs to run
+     */
+    public boolean isEmpty() {
+        return !full && staleTestClasses.isEmpty() && staleTests.isEmpty() && selectedClasses.isEmpty();
+    }
+
+    public boolean isStale(String testName) {
+        return full || staleTests.contains(testName) || staleTestClasses.contains(testClassOf(testName));
+    }
+
+    public int staleTestCount() {
+        return staleTests.size();
+    }
+
+    public Set<String> getSelectedClasses() {
+        return selectedClasses;
+    }
+
+    /**
+     * Surefire {@code test} filter running the selected classes as a whole and the other stale tests by method,
+     * e.g. {@code com.johnp.FooTest,com.johnp.BarTest#first+second}. Only meaningful for a partial plan.
+     */
+    public String testSelection() {
+        StringJoiner selection = new StringJoiner(",");
+        new TreeSet<>(selectedClasses).forEach(selection::add);
+
+        Map<String, Set<String>> methods = new TreeMap<>();
+        for (String testName : staleTests) {
+            String testClass = testClassOf(testName);
+            if (!selectedClasses.contains(testClass)) {
+                methods.computeIfAbsent(testClass, key -> new TreeSet<>()).add(testMethodOf(testName));
+            }
+        }
+        methods.forEach((testClass, names) -> selection.add(testClass + "#" + String.join("+", names)));
+        return selection.toString();
+    }
+
+    @Override
+    public String toString() {
+        if (full) {
+            return "full run";
+        }
+        return staleTests.size() + " stale tests, " + staleTestClasses.size() + " stale and "
+                + selectedClasses.size() + " selected test classes";
+    }
+
+    /**
+     * Top-level test class of a recorded test name, nested test classes are selected through their outer class.
+     */
+    static String testClassOf(String testName) {
+        String base = baseName(testName);
+        int dot = base.lastIndexOf('.');
+        String testClass = dot < 0 ? base : base.substring(0, dot);
+        int nested = testClass.indexOf('$');
+        return nested < 0 ? testClass : testClass.substring(0, nested);
+    }
+
+    private static String testMethodOf(String testName) {
+        String base = baseName(testName);
+        return base.substring(base.lastIndexOf('.') + 1);
+    }
+
+    // ** Parameterized runners append "[...]" to the method name, which may itself contain dots
+    private static String baseName(String testName) {
+        int bracket = testName.indexOf('[');
+        return bracket < 0 ? testName : testName.substring(0, bracket);
+    }
+}
@@ -0,0 +1,43 @@
+package com.johnp.util;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.io.IOException;
+
+/**
+ * JSON values written straight to a stream, for the exports that write JSON without building a document.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class JsonText {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    static void string(Appendable out, String value) throws IOException {
+        out.append('"');
+        int from = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '"' && c != '\\' && c >= 0x20) {
+                continue;
+            }
+            out.append(value, from, i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else {
+                out.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            }
+            from = i + 1;
+        }
+        out.append(value, from, value.length()).append('"');
+    }
+
+    // ** JSON has no NaN or infinity, those become null
+    static void number(Appendable out, double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            out.append("null");
+        } else {
+            out.append(Double.toString(value));
+        }
+    }
+}
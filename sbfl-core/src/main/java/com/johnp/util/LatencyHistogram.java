@@ -0,0 +1,133 @@
+package com.johnp.util;
+
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations in nanoseconds.
+ * <p>
+ * Buckets are logarithmic with {@value #SUB_BUCKETS} linear sub-buckets per power of two, so any value is kept
+ * within 12.5% of its true size in a fixed 488 counters, however many values are recorded. Histograms of several
+ * JVMs are combined with {@link #merge}.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 8;
+    private static final int SUB_BITS = 3;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        buckets.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        totalNanos.addAndGet(value);
+        maxNanos.accumulateAndGet(value, Math::max);
+    }
+
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long hits = other.buckets.get(i);
+            if (hits != 0) {
+                buckets.addAndGet(i, hits);
+            }
+        }
+        count.addAndGet(other.count.get());
+        totalNanos.addAndGet(other.totalNanos.get());
+        maxNanos.accumulateAndGet(other.maxNanos.get(), Math::max);
+    }
+
+    public long count() {
+        return count.get();
+    }
+
+    public long totalNanos() {
+        return totalNanos.get();
+    }
+
+    public long maxNanos() {
+        return maxNanos.get();
+    }
+
+    public double meanNanos() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) totalNanos.get() / n;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return upper bound of the bucket holding the percentile, never above the largest recorded value
+     */
+    public long percentileNanos(double percentile) {
+        long n = count.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(n * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), maxNanos.get());
+            }
+        }
+        return maxNanos.get();
+    }
+
+    /**
+     * Stores the histogram as {@code prefix.count}, {@code prefix.total}, {@code prefix.max} and one
+     * {@code prefix.bucket.<index>} entry per non-empty bucket.
+     */
+    void store(String prefix, Properties properties) {
+        properties.setProperty(prefix + ".count", Long.toString(count.get()));
+        properties.setProperty(prefix + ".total", Long.toString(totalNanos.get()));
+        properties.setProperty(prefix + ".max", Long.toString(maxNanos.get()));
+        for (int i = 0; i < BUCKETS; i++) {
+            long hits = buckets.get(i);
+            if (hits != 0) {
+                properties.setProperty(prefix + ".bucket." + i, Long.toString(hits));
+            }
+        }
+    }
+
+    static LatencyHistogram load(String prefix, Properties properties) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.count.set(Long.parseLong(properties.getProperty(prefix + ".count", "0")));
+        histogram.totalNanos.set(Long.parseLong(properties.getProperty(prefix + ".total", "0")));
+        histogram.maxNanos.set(Long.parseLong(properties.getProperty(prefix + ".max", "0")));
+        String bucketPrefix = prefix + ".bucket.";
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(bucketPrefix)) {
+                int index = Integer.parseInt(key.substring(bucketPrefix.length()));
+                if (index >= 0 && index < BUCKETS) {
+                    histogram.buckets.set(index, Long.parseLong(properties.getProperty(key)));
+                }
+            }
+        }
+        return histogram;
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BITS) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BITS;
+        int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BITS);
+        return ((SUB_BUCKETS + sub) * width) + width - 1;
+    }
+}
@@ -0,0 +1,134 @@
+package com.johnp.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interns method signatures to dense int IDs ({@code 0..size()-1}, in first-seen order).
+ * <p>
+ * Signatures can be looked up by their UTF-8 bytes, so ingestion finds known methods without creating a string.
+ * Not thread-safe for writes; concurrent {@link #find} calls are safe while nobody interns.
+ */
+public final class MethodDictionary {
+
+    private String[] signatures;
+    private byte[][] utf8;
+    private int[] hashes;
+    // ** Open addressing, slots hold id + 1 so that 0 means empty
+    private int[] table;
+    private int size;
+
+    public MethodDictionary() {
+        this(1024);
+    }
+
+    public MethodDictionary(int expectedSize) {
+        int capacity = Math.max(16, Integer.highestOneBit(Math.max(expectedSize, 1) * 2 - 1) << 1);
+        signatures = new String[Math.max(expectedSize, 16)];
+        utf8 = new byte[signatures.length][];
+        hashes = new int[signatures.length];
+        table = new int[capacity];
+    }
+
+    public static MethodDictionary of(String[] signatures) {
+        MethodDictionary dictionary = new MethodDictionary(signatures.length);
+        for (String signature : signatures) {
+            dictionary.intern(signature);
+        }
+        return dictionary;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String signature(int id) {
+        return signatures[id];
+    }
+
+    public String[] toArray() {
+        return Arrays.copyOf(signatures, size);
+    }
+
+    public int intern(String signature) {
+        byte[] bytes = signature.getBytes(StandardCharsets.UTF_8);
+        int id = find(bytes, 0, bytes.length);
+        return id >= 0 ? id : add(signature, bytes, hash(bytes, 0, bytes.length));
+    }
+
+    public int intern(byte[] bytes, int offset, int length) {
+        int id = find(bytes, offset, length);
+        if (id >= 0) {
+            return id;
+        }
+        byte[] copy = Arrays.copyOfRange(bytes, offset, offset + length);
+        return add(new String(copy, StandardCharsets.UTF_8), copy, hash(bytes, offset, length));
+    }
+
+    public int find(String signature) {
+        byte[] bytes = signature.getBytes(StandardCharsets.UTF_8);
+        return find(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @return the ID of the signature, or {@code -1} if it was never interned
+     */
+    public int find(byte[] bytes, int offset, int length) {
+        int hash = hash(bytes, offset, length);
+        int mask = table.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            int id = entry - 1;
+            if (hashes[id] == hash && Arrays.equals(utf8[id], 0, utf8[id].length, bytes, offset, offset + length)) {
+                return id;
+            }
+        }
+    }
+
+    private int add(String signature, byte[] bytes, int hash) {
+        if (size == signatures.length) {
+            int grown = size * 2;
+            signatures = Arrays.copyOf(signatures, grown);
+            utf8 = Arrays.copyOf(utf8, grown);
+            hashes = Arrays.copyOf(hashes, grown);
+        }
+        int id = size++;
+        signatures[id] = signature;
+        utf8[id] = bytes;
+        hashes[id] = hash;
+
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        } else {
+            insert(id);
+        }
+        return id;
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        for (int id = 0; id < size; id++) {
+            insert(id);
+        }
+    }
+
+    private void insert(int id) {
+        int mask = table.length - 1;
+        int slot = hashes[id] & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = id + 1;
+    }
+
+    private static int hash(byte[] bytes, int offset, int length) {
+        int hash = 0x811c9dc5;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (hash ^ bytes[i]) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
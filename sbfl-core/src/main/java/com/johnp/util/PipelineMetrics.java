@@ -0,0 +1,221 @@
+package com.johnp.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Timings of the SBFL pipeline: the duration and item count of each phase (ingest, scoring, ranking, export, ...)
+ * and latency histograms of per-test work in the test JVMs.
+ * <p>
+ * Test JVMs {@link #writeForkMetrics write} their histograms next to their store partition, the SBFL run
+ * {@link #mergeForkMetrics merges} them into its own metrics and {@link #writeJson writes} one summary.
+ */
+@Slf4j
+public class PipelineMetrics {
+
+    public static final String JSON_FILE = "sbfl-metrics.json";
+
+    static final String FORK_PREFIX = "metrics-";
+    static final String FORK_EXTENSION = ".properties";
+
+    private static final String HISTOGRAM_KEY = "histogram.";
+
+    private final Map<String, Phase> phases = new LinkedHashMap<>();
+    private final Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+
+    /**
+     * Records a phase, a phase recorded again adds to its duration and items.
+     *
+     * @param unit what {@code items} counts, e.g. {@code tests}
+     */
+    public synchronized void phase(String name, long nanos, long items, String unit) {
+        phases.computeIfAbsent(name, key -> new Phase(unit)).add(nanos, items);
+    }
+
+    public synchronized LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    public synchronized boolean isEmpty() {
+        return phases.isEmpty() && histograms.isEmpty();
+    }
+
+    /**
+     * One line per phase and histogram, for the build log.
+     */
+    public synchronized List<String> summary() {
+        List<String> lines = new ArrayList<>();
+        phases.forEach((name, phase) -> lines.add(String.format(Locale.ROOT, "%-12s %10.1f ms  %,d %s (%,.0f/s)",
+                name, phase.nanos / 1e6, phase.items, phase.unit, phase.perSecond())));
+        histograms.forEach((name, histogram) -> lines.add(String.format(Locale.ROOT,
+                "%-12s %,d tests  p50 %.1f us  p90 %.1f us  p99 %.1f us  max %.1f us", name, histogram.count(),
+                histogram.percentileNanos(50) / 1e3, histogram.percentileNanos(90) / 1e3,
+                histogram.percentileNanos(99) / 1e3, histogram.maxNanos() / 1e3)));
+        return lines;
+    }
+
+    /**
+     * Writes the histograms of a test JVM to {@code coverageDir}. A file the same partition wrote earlier in
+     * this build, e.g. from another test run of a reused fork, is added to.
+     */
+    public synchronized void writeForkMetrics(Path coverageDir, String partition) throws IOException {
+        Path file = coverageDir.resolve(FORK_PREFIX + partition + FORK_EXTENSION);
+        PipelineMetrics combined = Files.exists(file) ? readForkMetrics(file) : new PipelineMetrics();
+        histograms.forEach((name, histogram) -> combined.histogram(name).merge(histogram));
+
+        Properties properties = new Properties();
+        combined.histograms.forEach((name, histogram) -> histogram.store(HISTOGRAM_KEY + name, properties));
+        Files.createDirectories(coverageDir);
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            properties.store(writer, "SBFL test JVM metrics");
+        }
+    }
+
+    /**
+     * Adds the histograms of every test JVM in {@code coverageDir} to these metrics and deletes their files, so
+     * the next build starts without them.
+     *
+     * @return number of test JVM files merged
+     */
+    public int mergeForkMetrics(Path coverageDir) throws IOException {
+        if (!Files.isDirectory(coverageDir)) {
+            return 0;
+        }
+        int merged = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(coverageDir, FORK_PREFIX + "*" + FORK_EXTENSION)) {
+            for (Path file : files) {
+                PipelineMetrics fork = readForkMetrics(file);
+                fork.histograms.forEach((name, histogram) -> histogram(name).merge(histogram));
+                Files.delete(file);
+                merged++;
+            }
+        }
+        return merged;
+    }
+
+    public static void deleteForkMetrics(Path coverageDir) throws IOException {
+        if (!Files.isDirectory(coverageDir)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(coverageDir, FORK_PREFIX + "*" + FORK_EXTENSION)) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Writes the summary, durations in milliseconds and latencies in microseconds.
+     */
+    public synchronized void writeJson(Path file) throws IOException {
+        StringBuilder json = new StringBuilder(1024);
+        json.append("{\n  \"generated\": \"").append(Instant.now()).append("\",\n  \"phases\": {");
+        String separator = "\n";
+        for (Map.Entry<String, Phase> entry : phases.entrySet()) {
+            Phase phase = entry.getValue();
+            json.append(separator).append("    ").append(quote(entry.getKey())).append(": {")
+                    .append("\"millis\": ").append(number(phase.nanos / 1e6))
+                    .append(", \"items\": ").append(phase.items)
+                    .append(", \"unit\": ").append(quote(phase.unit))
+                    .append(", \"perSecond\": ").append(number(phase.perSecond()))
+                    .append('}');
+            separator = ",\n";
+        }
+        json.append(phases.isEmpty() ? "" : "\n  ").append("},\n  \"histograms\": {");
+        separator = "\n";
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            json.append(separator).append("    ").append(quote(entry.getKey())).append(": {")
+                    .append("\"count\": ").append(histogram.count())
+                    .append(", \"meanMicros\": ").append(number(histogram.meanNanos() / 1e3))
+                    .append(", \"p50Micros\": ").append(number(histogram.percentileNanos(50) / 1e3))
+                    .append(", \"p90Micros\": ").append(number(histogram.percentileNanos(90) / 1e3))
+                    .append(", \"p99Micros\": ").append(number(histogram.percentileNanos(99) / 1e3))
+                    .append(", \"maxMicros\": ").append(number(histogram.maxNanos() / 1e3))
+                    .append('}');
+            separator = ",\n";
+        }
+        json.append(histograms.isEmpty() ? "" : "\n  ").append("}\n}\n");
+
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.write(file, json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static PipelineMetrics readForkMetrics(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        // ** Histogram names are the keys in front of ".count", sorted for a stable order
+        Map<String, LatencyHistogram> loaded = new TreeMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(HISTOGRAM_KEY) && key.endsWith(".count")) {
+                String name = key.substring(HISTOGRAM_KEY.length(), key.length() - ".count".length());
+                try {
+                    loaded.put(name, LatencyHistogram.load(HISTOGRAM_KEY + name, properties));
+                } catch (NumberFormatException e) {
+                    log.warn("Skipping malformed histogram {} in {}", name, file);
+                }
+            }
+        }
+        PipelineMetrics metrics = new PipelineMetrics();
+        metrics.histograms.putAll(loaded);
+        return metrics;
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static final class Phase {
+        private final String unit;
+        private long nanos;
+        private long items;
+
+        private Phase(String unit) {
+            this.unit = unit;
+        }
+
+        private void add(long nanos, long items) {
+            this.nanos += nanos;
+            this.items += items;
+        }
+
+        private double perSecond() {
+            return nanos == 0 ? 0 : items * 1e9 / nanos;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package com.johnp.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Writes synthetic per-test coverage in the coverage listener's format, a spectrum store or one partition per fork,
+ * for scale tests far beyond real suites.
+ * <p>
+ * Method popularity follows a Zipf distribution: the method of popularity rank {@code r} is drawn with weight
+ * {@code 1 / r^s}, ranks are shuffled over the method IDs so popular methods are spread over all classes. Each test
+ * covers {@code density * methods} distinct methods. A {@code failureRate} fraction of the tests fails, each of
+ * them covers one of the planted faulty methods; passing tests may cover a fault too, like coincidentally correct
+ * tests do. The same settings and seed always produce the same files.
+ */
+@Slf4j
+public class SpectrumGenerator {
+
+    // ** Tests per test class and methods per production class of the generated names
+    private static final int TESTS_PER_CLASS = 10;
+    private static final int METHODS_PER_CLASS = 20;
+    private static final int BATCH_SIZE = 256;
+
+    private final int tests;
+    private final int methods;
+    private double density = 0.01;
+    private double zipfExponent = 1.0;
+    private double failureRate = 0.01;
+    private int faults = 1;
+    private int partitions = 1;
+    private long seed = 42;
+
+    public SpectrumGenerator(int tests, int methods) {
+        if (tests < 0 || methods < 1) {
+            throw new IllegalArgumentException("Need at least one method and no negative test count");
+        }
+        this.tests = tests;
+        this.methods = methods;
+    }
+
+    /**
+     * @param density fraction of the methods each test covers, {@code 0.01} by default
+     */
+    public SpectrumGenerator density(double density) {
+        if (density <= 0 || density > 1) {
+            throw new IllegalArgumentException("Density must be in (0, 1]: " + density);
+        }
+        this.density = density;
+        return this;
+    }
+
+    /**
+     * @param zipfExponent skew of the method popularity, {@code 0} is uniform, {@code 1.0} by default
+     */
+    public SpectrumGenerator zipfExponent(double zipfExponent) {
+        if (zipfExponent < 0) {
+            throw new IllegalArgumentException("Zipf exponent must not be negative: " + zipfExponent);
+        }
+        this.zipfExponent = zipfExponent;
+        return this;
+    }
+
+    /**
+     * @param failureRate fraction of failing tests, {@code 0.01} by default
+     */
+    public SpectrumGenerator failureRate(double failureRate) {
+        if (failureRate < 0 || failureRate > 1) {
+            throw new IllegalArgumentException("Failure rate must be in [0, 1]: " + failureRate);
+        }
+        this.failureRate = failureRate;
+        return this;
+    }
+
+    /**
+     * @param faults number of planted faulty methods, {@code 1} by default; without faults tests fail at random
+     */
+    public SpectrumGenerator faults(int faults) {
+        if (faults < 0 || faults > methods) {
+            throw new IllegalArgumentException("Faults must be between 0 and the method count: " + faults);
+        }
+        this.faults = faults;
+        return this;
+    }
+
+    /**
+     * @param partitions number of fork partitions to write, {@code 1} writes the single spectrum store
+     */
+    public SpectrumGenerator partitions(int partitions) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("At least one partition is required: " + partitions);
+        }
+        this.partitions = partitions;
+        return this;
+    }
+
+    public SpectrumGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Signature of a generated method ID, e.g. {@code com/example/m0/p3/Class61:method1234:(Ljava/lang/String;I)V}.
+     */
+    public static String signature(int methodId) {
+        int classId = methodId / METHODS_PER_CLASS;
+        return "com/example/m" + (classId / 500) + "/p" + (classId / 20) + "/Class" + classId + ":method" + methodId
+                + ":(Ljava/lang/String;I)V";
+    }
+
+    /**
+     * Writes the coverage to {@code coverageDir}, replacing a store or partitions written there before.
+     */
+    public Result generate(Path coverageDir) throws IOException {
+        Files.createDirectories(coverageDir);
+        Files.deleteIfExists(coverageDir.resolve(CoverageFormat.STORE_FILE));
+        SpectrumPartitions.delete(coverageDir);
+
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] methodOfRank = shuffledIds(methods, random);
+        double[] cumulative = zipfCumulative(methods, zipfExponent);
+        int[] faultIds = Arrays.copyOf(shuffledIds(methods, random), faults);
+        int perTest = Math.max(1, (int) Math.min(methods, Math.round(methods * density)));
+
+        List<String> signatures = new ArrayList<>(methods);
+        for (int id = 0; id < methods; id++) {
+            signatures.add(signature(id));
+        }
+        SpectrumStoreWriter[] writers = new SpectrumStoreWriter[partitions];
+        List<List<byte[]>> batches = new ArrayList<>(partitions);
+        int failed = 0;
+        long covered = 0;
+        try {
+            for (int p = 0; p < partitions; p++) {
+                Path file = partitions == 1 ? coverageDir.resolve(CoverageFormat.STORE_FILE)
+                        : coverageDir.resolve(CoverageFormat.partitionFile(Integer.toString(p + 1)));
+                writers[p] = SpectrumStoreWriter.open(file, signatures);
+                batches.add(new ArrayList<>(BATCH_SIZE));
+            }
+
+            // ** Marks of the current test, a method is covered if its mark equals the test's number plus one
+            int[] marks = new int[methods];
+            int[] ids = new int[perTest + 1];
+            for (int test = 0; test < tests; test++) {
+                int count = 0;
+                boolean fails = random.nextDouble() < failureRate;
+                if (fails) {
+                    failed++;
+                    if (faults > 0) {
+                        int fault = faultIds[random.nextInt(faults)];
+                        marks[fault] = test + 1;
+                        ids[count++] = fault;
+                    }
+                }
+                // ** Rejection sampling of distinct methods, bounded for skewed popularity at high density
+                for (long attempts = (long) perTest * 20; count < perTest && attempts > 0; attempts--) {
+                    int id = methodOfRank[drawRank(cumulative, random)];
+                    if (marks[id] != test + 1) {
+                        marks[id] = test + 1;
+                        ids[count++] = id;
+                    }
+                }
+                Arrays.sort(ids, 0, count);
+                covered += count;
+
+                int testClass = test / TESTS_PER_CLASS;
+                int partition = testClass % partitions;
+                List<byte[]> batch = batches.get(partition);
+                batch.add(CoverageFormat.encodeTest(testName(test), !fails, ids, count, methods));
+                if (batch.size() == BATCH_SIZE) {
+                    writers[partition].append(batch);
+                    batch.clear();
+                }
+            }
+            for (int p = 0; p < partitions; p++) {
+                if (!batches.get(p).isEmpty()) {
+                    writers[p].append(batches.get(p));
+                }
+            }
+        } finally {
+            for (SpectrumStoreWriter writer : writers) {
+                if (writer != null) {
+                    writer.close();
+                }
+            }
+        }
+
+        List<String> faultSignatures = new ArrayList<>(faults);
+        for (int fault : faultIds) {
+            faultSignatures.add(signature(fault));
+        }
+        log.info("Generated {} tests ({} failing) over {} methods, {} covered methods per test on average",
+                tests, failed, methods, tests == 0 ? 0 : covered / tests);
+        return new Result(tests, failed, covered, Collections.unmodifiableList(faultSignatures));
+    }
+
+    private static String testName(int test) {
+        int testClass = test / TESTS_PER_CLASS;
+        return "com.example.m" + (testClass / 500) + ".Class" + testClass + "Test.test" + test;
+    }
+
+    private static int[] shuffledIds(int size, SplittableRandom random) {
+        int[] ids = new int[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = i;
+        }
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = ids[i];
+            ids[i] = ids[j];
+            ids[j] = swap;
+        }
+        return ids;
+    }
+
+    private static double[] zipfCumulative(int size, double exponent) {
+        double[] cumulative = new double[size];
+        double total = 0;
+        for (int rank = 0; rank < size; rank++) {
+            total += 1 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = total;
+        }
+        return cumulative;
+    }
+
+    private static int drawRank(double[] cumulative, SplittableRandom random) {
+        double target = random.nextDouble() * cumulative[cumulative.length - 1];
+        int rank = Arrays.binarySearch(cumulative, target);
+        return rank >= 0 ? rank : Math.min(-rank - 1, cumulative.length - 1);
+    }
+
+    /**
+     * What {@link #generate} wrote.
+     */
+    public static final class Result {
+        private final int tests;
+        private final int failedTests;
+        private final long coveredEntries;
+        private final List<String> faults;
+
+        private Result(int tests, int failedTests, long coveredEntries, List<String> faults) {
+            this.tests = tests;
+            this.failedTests = failedTests;
+            this.coveredEntries = coveredEntries;
+            this.faults = faults;
+        }
+
+        public int getTests() {
+            return tests;
+        }
+
+        public int getFailedTests() {
+            return failedTests;
+        }
+
+        /**
+         * Sum of the covered methods over all tests.
+         */
+        public long getCoveredEntries() {
+            return coveredEntries;
+        }
+
+        /**
+         * Signatures of the planted faulty methods.
+         */
+        public List<String> getFaults() {
+            return faults;
+        }
+    }
+}
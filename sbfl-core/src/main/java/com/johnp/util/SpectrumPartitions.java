@@ -0,0 +1,152 @@
+package com.johnp.util;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Spectrum store partitions written by parallel test forks.
+ * <p>
+ * Each fork appends to its own {@link CoverageFormat#partitionFile partition} instead of the shared
+ * {@link CoverageFormat#STORE_FILE}, so forks never wait for each other's store lock. {@link #merge} combines all
+ * partitions into a new store before it is scored. Which fork runs a test class depends on scheduling, so merged
+ * tests are ordered by test class (keeping the recorded order within a class) to get the same spectrum on every run.
+ */
+@Slf4j
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class SpectrumPartitions {
+
+    private static final String MERGE_SUFFIX = ".merge";
+
+    /**
+     * @return the partition files in {@code coverageDir}, sorted by name
+     */
+    public static List<Path> list(Path coverageDir) throws IOException {
+        List<Path> partitions = new ArrayList<>();
+        if (!Files.isDirectory(coverageDir)) {
+            return partitions;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(coverageDir,
+                CoverageFormat.PARTITION_PREFIX + "*" + CoverageFormat.PARTITION_EXTENSION)) {
+            files.forEach(partitions::add);
+        }
+        partitions.sort(Comparator.comparing(Path::toString));
+        return partitions;
+    }
+
+    /**
+     * Replaces the spectrum store in {@code coverageDir} with the tests of every partition there and deletes the
+     * partitions. The partitions hold a whole coverage run, a store left next to them is from an earlier one. The
+     * new store is written beside the old one and moved into its place once complete, so a failed merge leaves the
+     * store and the partitions as they were.
+     *
+     * @return number of merged tests
+     */
+    public static int merge(Path coverageDir) throws IOException {
+        List<Path> partitionFiles = list(coverageDir);
+        if (partitionFiles.isEmpty()) {
+            return 0;
+        }
+
+        List<SpectrumStoreReader> partitions = new ArrayList<>(partitionFiles.size());
+        int merged;
+        try {
+            MethodDictionary dictionary = new MethodDictionary();
+            List<int[]> remaps = new ArrayList<>(partitionFiles.size());
+            List<String> testClasses = new ArrayList<>();
+            List<int[]> tests = new ArrayList<>();
+            for (Path partitionFile : partitionFiles) {
+                SpectrumStoreReader partition = SpectrumStoreReader.open(partitionFile);
+                partitions.add(partition);
+
+                String[] signatures = partition.signatures();
+                int[] remap = new int[signatures.length];
+                for (int id = 0; id < signatures.length; id++) {
+                    remap[id] = dictionary.intern(signatures[id]);
+                }
+                remaps.add(remap);
+
+                int partitionIndex = partitions.size() - 1;
+                int[] test = {0};
+                partition.readTests(0, partition.testCount(), (testName, passed, methodIds, count) -> {
+                    testClasses.add(IncrementalPlan.testClassOf(testName));
+                    tests.add(new int[]{partitionIndex, test[0]++});
+                });
+            }
+
+            // ** Stable sort, tests of one class keep their partition and recorded order
+            Integer[] order = new Integer[tests.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparing(testClasses::get));
+
+            Path storeFile = coverageDir.resolve(CoverageFormat.STORE_FILE);
+            Path mergeFile = coverageDir.resolve(CoverageFormat.STORE_FILE + MERGE_SUFFIX);
+            // ** Left over by a merge that failed, it would otherwise be continued
+            SpectrumStoreWriter.reset(mergeFile);
+            int[][] buffer = {new int[64]};
+            try (SpectrumStoreWriter store = SpectrumStoreWriter.open(mergeFile, Arrays.asList(dictionary.toArray()))) {
+                for (Integer i : order) {
+                    int partition = tests.get(i)[0];
+                    int test = tests.get(i)[1];
+                    int[] remap = remaps.get(partition);
+                    partitions.get(partition).readTests(test, test + 1, (testName, passed, methodIds, count) -> {
+                        if (buffer[0].length < count) {
+                            buffer[0] = new int[Math.max(count, buffer[0].length * 2)];
+                        }
+                        for (int m = 0; m < count; m++) {
+                            buffer[0][m] = remap[methodIds[m]];
+                        }
+                        Arrays.sort(buffer[0], 0, count);
+                        try {
+                            store.append(CoverageFormat.encodeTest(testName, passed, buffer[0], count,
+                                    dictionary.size()));
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                }
+            } catch (UncheckedIOException e) {
+                Files.deleteIfExists(mergeFile);
+                throw e.getCause();
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(mergeFile);
+                throw e;
+            }
+            Files.move(mergeFile, storeFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            log.info("Merged {} tests from {} partitions into {}", order.length, partitionFiles.size(), coverageDir);
+            merged = order.length;
+        } finally {
+            for (SpectrumStoreReader partition : partitions) {
+                partition.close();
+            }
+        }
+
+        // ** Only merged partitions are deleted, after a failure they stay for another attempt
+        for (Path partitionFile : partitionFiles) {
+            Files.delete(partitionFile);
+        }
+        return merged;
+    }
+
+    /**
+     * Deletes every partition in {@code coverageDir}.
+     */
+    public static void delete(Path coverageDir) throws IOException {
+        for (Path partition : list(coverageDir)) {
+            Files.deleteIfExists(partition);
+        }
+    }
+}
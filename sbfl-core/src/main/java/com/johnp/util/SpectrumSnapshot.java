@@ -0,0 +1,574 @@
+package com.johnp.util;
+
+import com.johnp.bean.Spectrum;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Spectrum of the previous build, persisted in {@link CoverageFormat#SNAPSHOT_DIR} so the next build only has to
+ * re-collect the tests affected by a change.
+ * <p>
+ * The directory holds a spectrum store with the latest record of every test (in snapshot order), the aggregated
+ * pass/fail counts per method of that store's dictionary, and the {@link BytecodeHashes} the coverage was
+ * collected against. {@link #update} subtracts the records of stale tests from the counts, adds the tests of the
+ * current run and rewrites the snapshot; the counts are scored directly, without re-reading the tests.
+ */
+@Slf4j
+public class SpectrumSnapshot {
+
+    private final Path directory;
+    private final BytecodeHashes hashes;
+    private final String[] signatures;
+    private final int[] failed;
+    private final int[] passed;
+    private final int totalFailedTests;
+    private final int totalPassedTests;
+    private final int testCount;
+
+    private SpectrumSnapshot(Path directory, BytecodeHashes hashes, String[] signatures, int[] failed, int[] passed,
+                             int totalFailedTests, int totalPassedTests, int testCount) {
+        this.directory = directory;
+        this.hashes = hashes;
+        this.signatures = signatures;
+        this.failed = failed;
+        this.passed = passed;
+        this.totalFailedTests = totalFailedTests;
+        this.totalPassedTests = totalPassedTests;
+        this.testCount = testCount;
+    }
+
+    /**
+     * @return the snapshot in {@code directory}, or {@code null} if there is none or it is incomplete
+     */
+    public static SpectrumSnapshot load(Path directory) throws IOException {
+        Path testsFile = directory.resolve(CoverageFormat.SNAPSHOT_TESTS_FILE);
+        Path countsFile = directory.resolve(CoverageFormat.COUNTS_FILE);
+        Path hashesFile = directory.resolve(CoverageFormat.HASHES_FILE);
+        // ** The hashes are written last, without them an interrupted update may have left mismatched files
+        if (!Files.exists(hashesFile) || !Files.exists(countsFile) || !Files.exists(testsFile)) {
+            return null;
+        }
+
+        String[] signatures;
+        int storedTests;
+        try (SpectrumStoreReader tests = SpectrumStoreReader.open(testsFile)) {
+            signatures = tests.signatures();
+            storedTests = tests.testCount();
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(countsFile)))) {
+            if (in.readInt() != CoverageFormat.COUNTS_MAGIC || in.readByte() != CoverageFormat.VERSION) {
+                log.warn("Ignoring snapshot {}, unknown counts format", directory);
+                return null;
+            }
+            long dictionaryHash = in.readLong();
+            int testCount = in.readInt();
+            if (dictionaryHash != CoverageFormat.dictionaryHash(Arrays.asList(signatures)) || testCount != storedTests
+                    || in.readInt() != signatures.length) {
+                log.warn("Ignoring snapshot {}, counts do not match its tests", directory);
+                return null;
+            }
+            int totalFailedTests = in.readInt();
+            int totalPassedTests = in.readInt();
+            int[] failed = new int[signatures.length];
+            int[] passed = new int[signatures.length];
+            for (int id = 0; id < signatures.length; id++) {
+                failed[id] = in.readInt();
+                passed[id] = in.readInt();
+            }
+            BytecodeHashes hashes = BytecodeHashes.read(hashesFile);
+            if (hashes == null) {
+                log.warn("Ignoring snapshot {}, its bytecode hashes were written by an older version", directory);
+                return null;
+            }
+            return new SpectrumSnapshot(directory, hashes, signatures, failed, passed, totalFailedTests,
+                    totalPassedTests, testCount);
+        }
+    }
+
+    /**
+     * Compares the snapshot's bytecode with {@code current}: a test is stale when its test class changed or when
+     * it covered a method of a changed or deleted class. New test classes are selected to run; a change to a test
+     * class that no recorded test belongs to (e.g. a shared helper) cannot be traced and requires a full run, so
+     * does a change to a resource or to the test environment.
+     */
+    public IncrementalPlan plan(BytecodeHashes current) throws IOException {
+        if (!hashes.sameEnvironment(current)) {
+            log.info("Resources or the test environment changed, running every test");
+            return IncrementalPlan.full();
+        }
+        Set<String> changedClasses = changed(hashes.getClasses(), current.getClasses());
+        boolean[] changedMethod = new boolean[signatures.length];
+        for (int id = 0; id < signatures.length; id++) {
+            changedMethod[id] = changedClasses.contains(classOf(signatures[id]));
+        }
+        return plan(current, changedMethod);
+    }
+
+    /**
+     * Like {@link #plan(BytecodeHashes)}, but only tests that covered a changed method are stale. Method hashes are
+     * keyed like coverage signatures, a bare class name keys the hash of the class declaration; a class whose
+     * declaration or set of methods changed counts as changed as a whole.
+     * <p>
+     * A new class, or a changed class none of whose methods was ever covered, has no coverage history to select
+     * tests by and requires a full run, like a change to a resource or to the test environment.
+     *
+     * @param previousMethods method hashes of the bytecode this snapshot was collected against
+     */
+    public IncrementalPlan planByMethod(BytecodeHashes current, Map<String, Long> previousMethods,
+                                       Map<String, Long> currentMethods) throws IOException {
+        if (!hashes.sameEnvironment(current)) {
+            log.info("Resources or the test environment changed, running every test");
+            return IncrementalPlan.full();
+        }
+        Set<String> changedClasses = changed(hashes.getClasses(), current.getClasses());
+        Set<String> coveredClasses = new HashSet<>();
+        for (String signature : signatures) {
+            coveredClasses.add(classOf(signature));
+        }
+        for (String className : changedClasses) {
+            boolean deleted = !current.getClasses().containsKey(className);
+            if (!deleted && (!hashes.getClasses().containsKey(className) || !coveredClasses.contains(className))) {
+                log.info("Class {} changed and has no coverage history, running every test", className);
+                return IncrementalPlan.full();
+            }
+        }
+
+        // ** Classes whose declaration or method set changed, any covered method of theirs is affected
+        Set<String> changedAsWhole = new HashSet<>();
+        previousMethods.forEach((key, hash) -> {
+            String className = classOf(key);
+            if (changedClasses.contains(className) && (key.equals(className)
+                    ? !hash.equals(currentMethods.get(key)) : !currentMethods.containsKey(key))) {
+                changedAsWhole.add(className);
+            }
+        });
+        currentMethods.keySet().forEach(key -> {
+            String className = classOf(key);
+            if (changedClasses.contains(className) && !previousMethods.containsKey(key)) {
+                changedAsWhole.add(className);
+            }
+        });
+
+        boolean[] changedMethod = new boolean[signatures.length];
+        for (int id = 0; id < signatures.length; id++) {
+            String className = classOf(signatures[id]);
+            if (changedClasses.contains(className)) {
+                // ** A line is affected when its method changed, method hashes do not resolve single lines
+                String method = CoverageFormat.methodOf(signatures[id]);
+                Long hash = previousMethods.get(method);
+                changedMethod[id] = changedAsWhole.contains(className) || hash == null
+                        || !hash.equals(currentMethods.get(method));
+            }
+        }
+        return plan(current, changedMethod);
+    }
+
+    /**
+     * @return {@code true} if this snapshot was collected against exactly the {@code current} bytecode, resources
+     * and test environment
+     */
+    public boolean matches(BytecodeHashes current) {
+        return hashes.getClasses().equals(current.getClasses())
+                && hashes.getTestClasses().equals(current.getTestClasses()) && hashes.sameEnvironment(current);
+    }
+
+    private IncrementalPlan plan(BytecodeHashes current, boolean[] changedMethod) throws IOException {
+        boolean anyChangedMethod = false;
+        for (boolean changed : changedMethod) {
+            anyChangedMethod |= changed;
+        }
+
+        Set<String> recordedTestClasses = new HashSet<>();
+        Set<String> staleTests = new HashSet<>();
+        Set<String> nestedStaleClasses = new HashSet<>();
+        boolean scanCoverage = anyChangedMethod;
+        readTests((testName, testPassed, methodIds, count) -> {
+            recordedTestClasses.add(IncrementalPlan.testClassOf(testName));
+            if (scanCoverage) {
+                for (int i = 0; i < count; i++) {
+                    if (changedMethod[methodIds[i]]) {
+                        staleTests.add(testName);
+                        if (testName.indexOf('$') >= 0) {
+                            nestedStaleClasses.add(IncrementalPlan.testClassOf(testName));
+                        }
+                        break;
+                    }
+                }
+            }
+        });
+
+        Set<String> staleTestClasses = new HashSet<>();
+        Set<String> selectedClasses = new HashSet<>(nestedStaleClasses);
+        Set<String> currentTestClasses = outerClasses(current.getTestClasses().keySet());
+        Set<String> previousTestClasses = outerClasses(hashes.getTestClasses().keySet());
+        for (String testClass : outerClasses(changed(hashes.getTestClasses(), current.getTestClasses()))) {
+            if (recordedTestClasses.contains(testClass)) {
+                staleTestClasses.add(testClass);
+                if (currentTestClasses.contains(testClass)) {
+                    selectedClasses.add(testClass);
+                }
+            } else if (!previousTestClasses.contains(testClass)) {
+                if (isTestClassName(testClass)) {
+                    selectedClasses.add(testClass);
+                }
+            } else {
+                log.info("Test source {} changed and is not a recorded test class, running every test", testClass);
+                return IncrementalPlan.full();
+            }
+        }
+        return new IncrementalPlan(false, staleTestClasses, staleTests, selectedClasses);
+    }
+
+    /**
+     * Merges the tests recorded in {@code runStore} into {@code previous} and persists the result in
+     * {@code directory}. Recorded tests replace the snapshot entries of the same name in place, stale tests that
+     * were not recorded again are dropped and new tests are appended.
+     *
+     * @param previous snapshot of the last build, {@code null} to build a new one from the run alone
+     * @param current  bytecode the run was collected against
+     */
+    public static SpectrumSnapshot update(Path directory, SpectrumSnapshot previous, BytecodeHashes current,
+                                          Path runStore) throws IOException {
+        if (previous != null && Files.exists(runStore) && previous.granularityDiffers(runStore)) {
+            log.info("Coverage in {} was collected at another granularity than snapshot {}, starting over",
+                    runStore, directory);
+            previous = null;
+        }
+        IncrementalPlan plan = previous == null ? IncrementalPlan.full() : previous.plan(current);
+        if (!Files.exists(runStore)) {
+            if (previous == null) {
+                log.warn("No coverage recorded in {}", runStore);
+                return new SpectrumSnapshot(directory, current, new String[0], new int[0], new int[0], 0, 0, 0);
+            }
+            if (!plan.isEmpty()) {
+                log.warn("Coverage of {} is stale ({}) but no tests were recorded in {}, keeping the previous snapshot",
+                        directory, plan, runStore);
+                return previous;
+            }
+            current.write(directory.resolve(CoverageFormat.HASHES_FILE));
+            return new SpectrumSnapshot(directory, current, previous.signatures, previous.failed, previous.passed,
+                    previous.totalFailedTests, previous.totalPassedTests, previous.testCount);
+        }
+        log.info("Updating snapshot {}: {}", directory, plan);
+
+        Files.createDirectories(directory);
+        Path hashesFile = directory.resolve(CoverageFormat.HASHES_FILE);
+        Files.deleteIfExists(hashesFile);
+
+        try (SpectrumStoreReader run = SpectrumStoreReader.open(runStore)) {
+            Counts counts = new Counts(previous);
+            MethodDictionary dictionary = previous == null
+                    ? new MethodDictionary() : MethodDictionary.of(previous.signatures);
+
+            // ** Add every recorded test, remembering where each name was first recorded
+            String[] runSignatures = run.signatures();
+            int[] runRemap = new int[runSignatures.length];
+            for (int id = 0; id < runSignatures.length; id++) {
+                runRemap[id] = dictionary.intern(runSignatures[id]);
+            }
+            counts.grow(dictionary.size());
+            Map<String, Integer> recorded = new HashMap<>(run.testCount() * 4 / 3 + 1);
+            int[] ordinal = {0};
+            run.readTests(0, run.testCount(), (testName, testPassed, methodIds, count) -> {
+                recorded.putIfAbsent(testName, ordinal[0]++);
+                counts.add(testPassed, methodIds, count, runRemap, 1);
+            });
+
+            // ** Subtract the snapshot entries that are replaced or stale
+            boolean[] dropped = new boolean[previous == null ? 0 : previous.testCount];
+            if (previous != null) {
+                int[] position = {0};
+                previous.readTests((testName, testPassed, methodIds, count) -> {
+                    int test = position[0]++;
+                    if (recorded.containsKey(testName) || plan.isStale(testName)) {
+                        dropped[test] = true;
+                        counts.add(testPassed, methodIds, count, null, -1);
+                    }
+                });
+            }
+
+            int testCount = run.testCount() + countKept(dropped);
+            SpectrumSnapshot snapshot = counts.compact(directory, current, dictionary, testCount);
+            snapshot.writeTests(previous, dropped, run, recorded, runRemap, counts.remap);
+            snapshot.writeCounts();
+            current.write(hashesFile);
+            log.info("Snapshot {} holds {} tests over {} methods", directory, snapshot.testCount,
+                    snapshot.signatures.length);
+            return snapshot;
+        }
+    }
+
+    /**
+     * The aggregated spectrum; the first {@code failCount} tests in snapshot order are counted as failed, like
+     * {@link Analyzer#analyzeSpectrum} does for the first tests it ingests.
+     */
+    public Spectrum toSpectrum(int failCount) throws IOException {
+        int[] failedCounts = failed.clone();
+        int[] passedCounts = passed.clone();
+        int[] totals = {totalFailedTests, totalPassedTests};
+        int forced = Math.min(failCount, testCount);
+        if (forced > 0) {
+            try (SpectrumStoreReader tests = SpectrumStoreReader.open(testsFile())) {
+                tests.readTests(0, forced, (testName, testPassed, methodIds, count) -> {
+                    if (testPassed) {
+                        for (int i = 0; i < count; i++) {
+                            passedCounts[methodIds[i]]--;
+                            failedCounts[methodIds[i]]++;
+                        }
+                        totals[0]++;
+                        totals[1]--;
+                    }
+                });
+            }
+        }
+        return new Spectrum(signatures, failedCounts, passedCounts, totals[0], totals[1]);
+    }
+
+    public int testCount() {
+        return testCount;
+    }
+
+    /**
+     * @return the granularity of the spectrum in the snapshot, see {@link CoverageFormat#granularity(String[])}
+     */
+    public String granularity() {
+        return CoverageFormat.granularity(signatures);
+    }
+
+    public BytecodeHashes getHashes() {
+        return hashes;
+    }
+
+    private boolean granularityDiffers(Path runStore) throws IOException {
+        try (SpectrumStoreReader run = SpectrumStoreReader.open(runStore)) {
+            return CoverageFormat.granularityDiffers(signatures, run.signatures());
+        }
+    }
+
+    private Path testsFile() {
+        return directory.resolve(CoverageFormat.SNAPSHOT_TESTS_FILE);
+    }
+
+    private void readTests(CoverageFileReader.TestVisitor visitor) throws IOException {
+        try (SpectrumStoreReader tests = SpectrumStoreReader.open(testsFile())) {
+            tests.readTests(0, tests.testCount(), visitor);
+        }
+    }
+
+    private void writeTests(SpectrumSnapshot previous, boolean[] dropped, SpectrumStoreReader run,
+                            Map<String, Integer> recorded, int[] runRemap, int[] remap) throws IOException {
+        Path tmp = Files.createTempFile(directory, CoverageFormat.SNAPSHOT_TESTS_FILE, ".tmp");
+        Files.delete(tmp);
+
+        boolean[] written = new boolean[run.testCount()];
+        int[][] buffer = {new int[64]};
+        try (SpectrumStoreWriter writer = SpectrumStoreWriter.open(tmp, Arrays.asList(signatures))) {
+            CoverageFileReader.TestVisitor runWriter = (testName, testPassed, methodIds, count) ->
+                    append(writer, encode(testName, testPassed, methodIds, count, runRemap, remap, buffer));
+            if (previous != null) {
+                int[] position = {0};
+                previous.readTests((testName, testPassed, methodIds, count) -> {
+                    if (!dropped[position[0]++]) {
+                        append(writer, encode(testName, testPassed, methodIds, count, null, remap, buffer));
+                    } else if (recorded.containsKey(testName) && !written[recorded.get(testName)]) {
+                        // ** Re-collected tests keep their position, so does the failCount override
+                        int test = recorded.get(testName);
+                        written[test] = true;
+                        try {
+                            run.readTests(test, test + 1, runWriter);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+                });
+            }
+            for (int test = 0; test < written.length; test++) {
+                if (!written[test]) {
+                    run.readTests(test, test + 1, runWriter);
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.move(tmp, testsFile(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void writeCounts() throws IOException {
+        Path tmp = Files.createTempFile(directory, CoverageFormat.COUNTS_FILE, ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(CoverageFormat.COUNTS_MAGIC);
+            out.writeByte(CoverageFormat.VERSION);
+            out.writeLong(CoverageFormat.dictionaryHash(Arrays.asList(signatures)));
+            out.writeInt(testCount);
+            out.writeInt(signatures.length);
+            out.writeInt(totalFailedTests);
+            out.writeInt(totalPassedTests);
+            for (int id = 0; id < signatures.length; id++) {
+                out.writeInt(failed[id]);
+                out.writeInt(passed[id]);
+            }
+        }
+        Files.move(tmp, directory.resolve(CoverageFormat.COUNTS_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Re-encodes a record against the compacted dictionary; {@code runRemap} first maps run IDs to merged IDs.
+     */
+    private byte[] encode(String testName, boolean testPassed, int[] methodIds, int count, int[] runRemap,
+                          int[] remap, int[][] buffer) {
+        if (buffer[0].length < count) {
+            buffer[0] = new int[Math.max(count, buffer[0].length * 2)];
+        }
+        int[] ids = buffer[0];
+        for (int i = 0; i < count; i++) {
+            int id = runRemap == null ? methodIds[i] : runRemap[methodIds[i]];
+            ids[i] = remap[id];
+        }
+        Arrays.sort(ids, 0, count);
+        return CoverageFormat.encodeTest(testName, testPassed, ids, count, signatures.length);
+    }
+
+    private static void append(SpectrumStoreWriter writer, byte[] testRecord) {
+        try {
+            writer.append(testRecord);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int countKept(boolean[] dropped) {
+        int kept = 0;
+        for (boolean drop : dropped) {
+            if (!drop) {
+                kept++;
+            }
+        }
+        return kept;
+    }
+
+    // ** Internal class name of a method signature (className:methodName:desc)
+    private static String classOf(String signature) {
+        int separator = signature.indexOf(':');
+        return separator < 0 ? signature : signature.substring(0, separator);
+    }
+
+    private static Set<String> changed(Map<String, Long> previous, Map<String, Long> current) {
+        Set<String> changed = new HashSet<>();
+        previous.forEach((className, hash) -> {
+            if (!hash.equals(current.get(className))) {
+                changed.add(className);
+            }
+        });
+        current.keySet().forEach(className -> {
+            if (!previous.containsKey(className)) {
+                changed.add(className);
+            }
+        });
+        return changed;
+    }
+
+    // ** Internal names to dotted top-level class names, the form test names are recorded in
+    private static Set<String> outerClasses(Set<String> internalNames) {
+        Set<String> outer = new HashSet<>();
+        for (String internalName : internalNames) {
+            int nested = internalName.indexOf('$');
+            outer.add((nested < 0 ? internalName : internalName.substring(0, nested)).replace('/', '.'));
+        }
+        return outer;
+    }
+
+    // ** Surefire's default includes, other new classes in the test tree are helpers of tests that changed too
+    private static boolean isTestClassName(String className) {
+        String simpleName = className.substring(className.lastIndexOf('.') + 1);
+        return simpleName.startsWith("Test") || simpleName.endsWith("Test") || simpleName.endsWith("Tests")
+                || simpleName.endsWith("TestCase");
+    }
+
+    /**
+     * Pass/fail counts being merged, indexed by the IDs of the merged (not yet compacted) dictionary.
+     */
+    private static final class Counts {
+        private int[] failed;
+        private int[] passed;
+        private int totalFailedTests;
+        private int totalPassedTests;
+        private int[] remap;
+
+        private Counts(SpectrumSnapshot previous) {
+            if (previous == null) {
+                failed = new int[0];
+                passed = new int[0];
+            } else {
+                failed = previous.failed.clone();
+                passed = previous.passed.clone();
+                totalFailedTests = previous.totalFailedTests;
+                totalPassedTests = previous.totalPassedTests;
+            }
+        }
+
+        private void grow(int size) {
+            if (failed.length < size) {
+                failed = Arrays.copyOf(failed, size);
+                passed = Arrays.copyOf(passed, size);
+            }
+        }
+
+        private void add(boolean testPassed, int[] methodIds, int count, int[] idRemap, int delta) {
+            int[] counts = testPassed ? passed : failed;
+            for (int i = 0; i < count; i++) {
+                counts[idRemap == null ? methodIds[i] : idRemap[methodIds[i]]] += delta;
+            }
+            if (testPassed) {
+                totalPassedTests += delta;
+            } else {
+                totalFailedTests += delta;
+            }
+        }
+
+        /**
+         * Drops methods no test covers any more and sorts the rest by signature, so method IDs (and with them
+         * ranking ties) do not depend on the order in which builds added methods.
+         */
+        private SpectrumSnapshot compact(Path directory, BytecodeHashes hashes, MethodDictionary dictionary,
+                                         int testCount) {
+            Integer[] covered = new Integer[dictionary.size()];
+            int size = 0;
+            for (int id = 0; id < dictionary.size(); id++) {
+                if (failed[id] + passed[id] > 0) {
+                    covered[size++] = id;
+                }
+            }
+            Arrays.sort(covered, 0, size, (a, b) -> dictionary.signature(a).compareTo(dictionary.signature(b)));
+
+            remap = new int[dictionary.size()];
+            Arrays.fill(remap, -1);
+            String[] signatures = new String[size];
+            int[] compactFailed = new int[size];
+            int[] compactPassed = new int[size];
+            for (int i = 0; i < size; i++) {
+                remap[covered[i]] = i;
+                signatures[i] = dictionary.signature(covered[i]);
+                compactFailed[i] = failed[covered[i]];
+                compactPassed[i] = passed[covered[i]];
+            }
+            return new SpectrumSnapshot(directory, hashes, signatures, compactFailed, compactPassed, totalFailedTests,
+                    totalPassedTests, testCount);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.johnp.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Record offsets of a spectrum store, either read from its footer or rebuilt by scanning the log when the
+ * footer is missing (a test JVM that died before {@link SpectrumStoreWriter#close()}).
+ */
+final class SpectrumStoreIndex {
+
+    long[] dictionaryOffsets = new long[4];
+    int dictionaryCount;
+    long[] testOffsets = new long[256];
+    int[] testDictionaries = new int[256];
+    int testCount;
+
+    // ** End of the last complete data record, the footer (if any) starts here
+    long dataEnd = CoverageFormat.STORE_HEADER_SIZE;
+
+    void addDictionary(long offset) {
+        if (dictionaryCount == dictionaryOffsets.length) {
+            dictionaryOffsets = Arrays.copyOf(dictionaryOffsets, dictionaryCount * 2);
+        }
+        dictionaryOffsets[dictionaryCount++] = offset;
+    }
+
+    void addTest(long offset) {
+        if (testCount == testOffsets.length) {
+            testOffsets = Arrays.copyOf(testOffsets, testCount * 2);
+            testDictionaries = Arrays.copyOf(testDictionaries, testCount * 2);
+        }
+        testOffsets[testCount] = offset;
+        testDictionaries[testCount] = dictionaryCount - 1;
+        testCount++;
+    }
+
+    /**
+     * Footer payload: dictionary count and offsets, test count and (offset, dictionary) pairs, followed by the
+     * trailer (footer record offset, store magic) that ends the file.
+     */
+    ByteBuffer encodeFooter(long footerOffset) {
+        int size = Integer.BYTES + dictionaryCount * Long.BYTES
+                + Integer.BYTES + testCount * (Long.BYTES + Integer.BYTES)
+                + CoverageFormat.TRAILER_SIZE;
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(dictionaryCount);
+        for (int i = 0; i < dictionaryCount; i++) {
+            out.putLong(dictionaryOffsets[i]);
+        }
+        out.putInt(testCount);
+        for (int i = 0; i < testCount; i++) {
+            out.putLong(testOffsets[i]);
+            out.putInt(testDictionaries[i]);
+        }
+        out.putLong(footerOffset);
+        out.putInt(CoverageFormat.STORE_MAGIC);
+        out.flip();
+        return out;
+    }
+
+    static SpectrumStoreIndex load(FileChannel channel) throws IOException {
+        long size = channel.size();
+        SpectrumStoreIndex index = new SpectrumStoreIndex();
+        if (size == 0) {
+            return index;
+        }
+
+        ByteBuffer header = read(channel, 0, CoverageFormat.STORE_HEADER_SIZE);
+        if (header.remaining() < CoverageFormat.STORE_HEADER_SIZE || header.getInt() != CoverageFormat.STORE_MAGIC) {
+            throw new IOException("Not a spectrum store");
+        }
+        byte version = header.get();
+        if (version != CoverageFormat.VERSION) {
+            throw new IOException("Unsupported spectrum store version " + version);
+        }
+
+        if (index.readFooter(channel, size)) {
+            return index;
+        }
+        index.scan(channel, size);
+        return index;
+    }
+
+    private boolean readFooter(FileChannel channel, long size) throws IOException {
+        if (size < CoverageFormat.STORE_HEADER_SIZE + CoverageFormat.RECORD_HEADER_SIZE + CoverageFormat.TRAILER_SIZE) {
+            return false;
+        }
+        ByteBuffer trailer = read(channel, size - CoverageFormat.TRAILER_SIZE, CoverageFormat.TRAILER_SIZE);
+        long footerOffset = trailer.getLong();
+        if (trailer.getInt() != CoverageFormat.STORE_MAGIC
+                || footerOffset < CoverageFormat.STORE_HEADER_SIZE || footerOffset >= size) {
+            return false;
+        }
+
+        ByteBuffer footer = read(channel, footerOffset, (int) (size - footerOffset));
+        if (footer.get() != CoverageFormat.RECORD_FOOTER) {
+            return false;
+        }
+        footer.getInt();
+
+        int dictionaries = footer.getInt();
+        for (int i = 0; i < dictionaries; i++) {
+            addDictionary(footer.getLong());
+        }
+        int tests = footer.getInt();
+        testOffsets = new long[Math.max(tests, 16)];
+        testDictionaries = new int[testOffsets.length];
+        for (int i = 0; i < tests; i++) {
+            testOffsets[i] = footer.getLong();
+            testDictionaries[i] = footer.getInt();
+        }
+        testCount = tests;
+        dataEnd = footerOffset;
+        return true;
+    }
+
+    private void scan(FileChannel channel, long size) throws IOException {
+        long position = CoverageFormat.STORE_HEADER_SIZE;
+        while (position + CoverageFormat.RECORD_HEADER_SIZE <= size) {
+            ByteBuffer recordHeader = read(channel, position, CoverageFormat.RECORD_HEADER_SIZE);
+            byte type = recordHeader.get();
+            int length = recordHeader.getInt();
+            long next = position + CoverageFormat.RECORD_HEADER_SIZE + length;
+            if (length < 0 || next > size) {
+                // ** Torn write at the end of the log
+                break;
+            }
+            if (type == CoverageFormat.RECORD_DICTIONARY) {
+                addDictionary(position);
+            } else if (type == CoverageFormat.RECORD_TEST) {
+                addTest(position);
+            } else if (type != CoverageFormat.RECORD_FOOTER) {
+                break;
+            }
+            if (type != CoverageFormat.RECORD_FOOTER) {
+                dataEnd = next;
+            }
+            position = next;
+        }
+    }
+
+    static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
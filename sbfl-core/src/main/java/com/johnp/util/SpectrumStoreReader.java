@@ -0,0 +1,110 @@
+package com.johnp.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads the single-file spectrum store written by {@link SpectrumStoreWriter}.
+ * <p>
+ * Stores up to 2 GB are memory-mapped once; larger stores map each record on access. Method IDs handed to the
+ * {@link CoverageFileReader.TestVisitor} always refer to {@link #signatures()}, which unions every dictionary in
+ * the store. Reads of distinct test ranges may run concurrently.
+ */
+public class SpectrumStoreReader implements Closeable {
+
+    private final FileChannel channel;
+    private final ByteBuffer mapped;
+    private final SpectrumStoreIndex index;
+    private final String[] signatures;
+    private final int[][] remaps;
+
+    private SpectrumStoreReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.index = SpectrumStoreIndex.load(channel);
+        long end = Math.min(index.dataEnd, channel.size());
+        this.mapped = end <= Integer.MAX_VALUE ? channel.map(FileChannel.MapMode.READ_ONLY, 0, end) : null;
+
+        // ** Union all dictionaries, test IDs are translated only when a store holds more than one
+        Map<String, Integer> union = new LinkedHashMap<>();
+        remaps = new int[index.dictionaryCount][];
+        for (int d = 0; d < index.dictionaryCount; d++) {
+            String[] dictionary = readDictionary(index.dictionaryOffsets[d]);
+            int[] remap = new int[dictionary.length];
+            for (int i = 0; i < dictionary.length; i++) {
+                remap[i] = union.computeIfAbsent(dictionary[i], k -> union.size());
+            }
+            remaps[d] = remap;
+        }
+        signatures = union.keySet().toArray(new String[0]);
+    }
+
+    public static SpectrumStoreReader open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new SpectrumStoreReader(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public String[] signatures() {
+        return signatures;
+    }
+
+    public int testCount() {
+        return index.testCount;
+    }
+
+    /**
+     * Decodes tests {@code from} (inclusive) to {@code to} (exclusive) in log order.
+     */
+    public void readTests(int from, int to, CoverageFileReader.TestVisitor visitor) throws IOException {
+        int[] buffer = null;
+        for (int t = from; t < to; t++) {
+            int[] remap = remaps.length > 1 ? remaps[index.testDictionaries[t]] : null;
+            CoverageFileReader.TestVisitor target = remap == null ? visitor : (testName, passed, methodIds, count) -> {
+                for (int i = 0; i < count; i++) {
+                    methodIds[i] = remap[methodIds[i]];
+                }
+                visitor.visitTest(testName, passed, methodIds, count);
+            };
+            buffer = CoverageFileReader.decodeTest(record(index.testOffsets[t]), this, target, buffer);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return "spectrum store (" + index.testCount + " tests)";
+    }
+
+    private String[] readDictionary(long offset) throws IOException {
+        ByteBuffer payload = record(offset);
+        payload.getLong();
+        return CoverageFileReader.decodeDictionary(payload, this);
+    }
+
+    private ByteBuffer record(long offset) throws IOException {
+        int length;
+        if (mapped != null) {
+            length = mapped.getInt((int) offset + 1);
+            ByteBuffer payload = mapped.duplicate();
+            payload.position((int) offset + CoverageFormat.RECORD_HEADER_SIZE);
+            payload.limit(payload.position() + length);
+            return payload.slice();
+        }
+        length = SpectrumStoreIndex.read(channel, offset + 1, Integer.BYTES).getInt();
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset + CoverageFormat.RECORD_HEADER_SIZE, length);
+    }
+}
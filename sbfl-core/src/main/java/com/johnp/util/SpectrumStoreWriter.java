@@ -0,0 +1,147 @@
+package com.johnp.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Appends test records to the single-file spectrum store ({@link CoverageFormat#STORE_FILE}).
+ * <p>
+ * Layout: a header (magic, version) followed by an append-only log of records, each a type byte, a payload
+ * length and the payload. Dictionary records carry a hash and a {@link CoverageFormat#encodeDictionary}
+ * payload, test records a {@link CoverageFormat#encodeTest} payload that refers to the last dictionary written
+ * before it. {@link #close()} ends the log with a footer record indexing every record; the next writer drops
+ * that footer, appends after the existing records and writes a new footer covering all of them.
+ * <p>
+ * The test JVMs of one coverage run all append to the same store, so a run has to start from an empty one with
+ * {@link #reset}; otherwise the tests of the previous run are counted again.
+ */
+public class SpectrumStoreWriter implements Closeable {
+
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final SpectrumStoreIndex index;
+    private long position;
+
+    private SpectrumStoreWriter(FileChannel channel, FileLock lock, SpectrumStoreIndex index) {
+        this.channel = channel;
+        this.lock = lock;
+        this.index = index;
+        this.position = index.dataEnd;
+    }
+
+    /**
+     * Opens (or creates) the store and holds an exclusive lock on it until {@link #close()}, so test JVMs that
+     * share a store append one after the other.
+     *
+     * @param signatures method dictionary the following test records refer to; only written when it differs
+     *                   from the dictionary already in effect at the end of the store
+     */
+    public static SpectrumStoreWriter open(Path file, List<String> signatures) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            FileLock lock = channel.lock();
+            SpectrumStoreIndex index = SpectrumStoreIndex.load(channel);
+            if (channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(CoverageFormat.STORE_HEADER_SIZE);
+                header.putInt(CoverageFormat.STORE_MAGIC).put(CoverageFormat.VERSION).flip();
+                channel.write(header, 0);
+            }
+            // ** Drop the previous footer (or a torn record), new records continue the log
+            channel.truncate(index.dataEnd);
+
+            SpectrumStoreWriter writer = new SpectrumStoreWriter(channel, lock, index);
+            long hash = CoverageFormat.dictionaryHash(signatures);
+            if (index.dictionaryCount == 0 || writer.lastDictionaryHash() != hash) {
+                writer.appendDictionary(hash, signatures);
+            }
+            return writer;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts a new store: the store at {@code file} is deleted and the next {@link #open} creates it empty.
+     */
+    public static void reset(Path file) throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    public synchronized void append(byte[] testRecord) throws IOException {
+        index.addTest(position);
+        writeRecord(CoverageFormat.RECORD_TEST, ByteBuffer.wrap(testRecord));
+    }
+
+    /**
+     * Appends several test records with a single write.
+     */
+    public synchronized void append(List<byte[]> testRecords) throws IOException {
+        int size = 0;
+        for (byte[] testRecord : testRecords) {
+            size += CoverageFormat.RECORD_HEADER_SIZE + testRecord.length;
+        }
+        ByteBuffer batch = ByteBuffer.allocate(size);
+        for (byte[] testRecord : testRecords) {
+            index.addTest(position + batch.position());
+            batch.put(CoverageFormat.RECORD_TEST).putInt(testRecord.length).put(testRecord);
+        }
+        batch.flip();
+        position += write(batch);
+    }
+
+    public synchronized int testCount() {
+        return index.testCount;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            // ** The footer starts at the current position, which its trailer points back to
+            writeRecord(CoverageFormat.RECORD_FOOTER, index.encodeFooter(position));
+            channel.force(false);
+        } finally {
+            if (lock.isValid()) {
+                lock.release();
+            }
+            channel.close();
+        }
+    }
+
+    private void appendDictionary(long hash, List<String> signatures) throws IOException {
+        byte[] dictionary = CoverageFormat.encodeDictionary(signatures);
+        ByteBuffer payload = ByteBuffer.allocate(Long.BYTES + dictionary.length);
+        payload.putLong(hash).put(dictionary).flip();
+
+        index.addDictionary(position);
+        writeRecord(CoverageFormat.RECORD_DICTIONARY, payload);
+    }
+
+    private long lastDictionaryHash() throws IOException {
+        long offset = index.dictionaryOffsets[index.dictionaryCount - 1];
+        return SpectrumStoreIndex.read(channel, offset + CoverageFormat.RECORD_HEADER_SIZE, Long.BYTES).getLong();
+    }
+
+    private void writeRecord(byte type, ByteBuffer payload) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(CoverageFormat.RECORD_HEADER_SIZE);
+        header.put(type).putInt(payload.remaining()).flip();
+        position += write(header);
+        position += write(payload);
+    }
+
+    private int write(ByteBuffer buffer) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+}
@@ -0,0 +1,81 @@
+package com.johnp.util;
+
+/**
+ * Intermediates of one block of methods, computed once by {@link SuspicionEngine} and shared by every formula.
+ * <p>
+ * {@code nf}/{@code np} are the failing/passing tests that did not cover the method;
+ * {@code totalFailed} ({@code ef + nf}) and {@code totalPassed} ({@code ep + np}) are the same for every method.
+ */
+public final class SpectrumTerms {
+
+    final double[] ef;
+    final double[] ep;
+    final double[] nf;
+    final double[] np;
+    final double[] efPlusEp;
+    final double[] epPlusNf;
+    final double totalFailed;
+    final double totalPassed;
+    int length;
+
+    SpectrumTerms(int blockSize, int totalFailed, int totalPassed) {
+        this.ef = new double[blockSize];
+        this.ep = new double[blockSize];
+        this.nf = new double[blockSize];
+        this.np = new double[blockSize];
+        this.efPlusEp = new double[blockSize];
+        this.epPlusNf = new double[blockSize];
+        this.totalFailed = totalFailed;
+        this.totalPassed = totalPassed;
+    }
+
+    void load(int[] failed, int[] passed, int from, int length) {
+        this.length = length;
+        for (int i = 0; i < length; i++) {
+            double f = failed[from + i];
+            double p = passed[from + i];
+            ef[i] = f;
+            ep[i] = p;
+            nf[i] = totalFailed - f;
+            np[i] = totalPassed - p;
+            efPlusEp[i] = f + p;
+            epPlusNf[i] = p + (totalFailed - f);
+        }
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public double[] ef() {
+        return ef;
+    }
+
+    public double[] ep() {
+        return ep;
+    }
+
+    public double[] nf() {
+        return nf;
+    }
+
+    public double[] np() {
+        return np;
+    }
+
+    public double[] efPlusEp() {
+        return efPlusEp;
+    }
+
+    public double[] epPlusNf() {
+        return epPlusNf;
+    }
+
+    public double totalFailed() {
+        return totalFailed;
+    }
+
+    public double totalPassed() {
+        return totalPassed;
+    }
+}
@@ -0,0 +1,51 @@
+package com.johnp.util;
+
+import com.johnp.bean.ScoreTable;
+import com.johnp.bean.Spectrum;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Evaluates every enabled {@link SuspicionFormula} in a single pass over a {@link Spectrum}.
+ * <p>
+ * The count columns are read once, block by block: each block's shared intermediates ({@link SpectrumTerms}) are
+ * computed once and then every formula scores the block while it is still in cache. Adding a formula adds one
+ * tight loop per block, not another pass over the data.
+ */
+public class SuspicionEngine {
+
+    // ** 6 intermediate columns of 1024 doubles stay well inside L2
+    private static final int BLOCK_SIZE = 1024;
+
+    private final List<SuspicionFormula> formulas;
+
+    public SuspicionEngine(List<SuspicionFormula> formulas) {
+        if (formulas.isEmpty()) {
+            throw new IllegalArgumentException("At least one suspicion formula is required");
+        }
+        this.formulas = new ArrayList<>(formulas);
+    }
+
+    public List<SuspicionFormula> getFormulas() {
+        return formulas;
+    }
+
+    public ScoreTable score(Spectrum spectrum) {
+        List<String> names = new ArrayList<>(formulas.size());
+        formulas.forEach(formula -> names.add(formula.name()));
+        ScoreTable scores = new ScoreTable(names, spectrum.size());
+
+        int size = spectrum.size();
+        SpectrumTerms terms = new SpectrumTerms(Math.min(BLOCK_SIZE, Math.max(size, 1)),
+                spectrum.getTotalFailedTests(), spectrum.getTotalPassedTests());
+
+        for (int from = 0; from < size; from += BLOCK_SIZE) {
+            terms.load(spectrum.getFailed(), spectrum.getPassed(), from, Math.min(BLOCK_SIZE, size - from));
+            for (int f = 0; f < formulas.size(); f++) {
+                formulas.get(f).score(terms, scores.getColumn(f), from);
+            }
+        }
+        return scores;
+    }
+}
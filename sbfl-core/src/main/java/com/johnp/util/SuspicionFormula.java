@@ -0,0 +1,20 @@
+package com.johnp.util;
+
+/**
+ * A suspiciousness formula evaluated by {@link SuspicionEngine}.
+ * <p>
+ * Formulas score one block of methods at a time from the shared {@link SpectrumTerms}; implementations should be
+ * a plain counted loop over {@code terms.length()} so the block stays in cache and the JIT can vectorize it.
+ */
+public interface SuspicionFormula {
+
+    /**
+     * Name used in the Mojo configuration and as the export column prefix.
+     */
+    String name();
+
+    /**
+     * Writes the score of block method {@code i} to {@code out[offset + i]}.
+     */
+    void score(SpectrumTerms terms, double[] out, int offset);
+}
@@ -0,0 +1,178 @@
+package com.johnp.util;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Built-in {@link SuspicionFormula}s.
+ * <p>
+ * Tarantula, SBI, Jaccard and Ochiai keep the exact definitions of the per-method functions in
+ * {@link SuspicionProcessor} as {@code Analyzer} always called them, i.e. with the failed/passed test totals in
+ * the {@code nf}/{@code np} slots. The other formulas use their textbook definitions.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class SuspicionFormulas {
+
+    public static final SuspicionFormula TARANTULA = formula("Tarantula", (t, out, offset) -> {
+        for (int i = 0; i < t.length; i++) {
+            double failRatio = div(t.ef[i], t.ef[i] + t.totalFailed);
+            double passRatio = div(t.ep[i], t.ep[i] + t.totalPassed);
+            out[offset + i] = div(failRatio, failRatio + passRatio);
+        }
+    });
+
+    public static final SuspicionFormula SBI = formula("SBI", (t, out, offset) -> {
+        for (int i = 0; i < t.length; i++) {
+            out[offset + i] = div(t.ef[i], t.efPlusEp[i]);
+        }
+    });
+
+    public static final SuspicionFormula JACCARD = formula("Jaccard", (t, out, offset) -> {
+        for (int i = 0; i < t.length; i++) {
+            out[offset + i] = div(t.ef[i], t.totalFailed + t.ep[i]);
+        }
+    });
+
+    public static final SuspicionFormula OCHIAI = formula("Ochiai", (t, out, offset) -> {
+        for (int i = 0; i < t.length; i++) {
+            out[offset + i] = div(t.ef[i], Math.sqrt(t.totalFailed * t.efPlusEp[i]));
+        }
+    });
+
+    // ** ef^2 / (ep + nf); a method covered by every failing and no passing test scores +Infinity
+    public static final SuspicionFormula DSTAR2 = formula("DStar2", (t, out, offset) -> {
+        for (int i = 0; i < t.length; i++) {
+            out[offset + i] = div(t.ef[i] * t.ef[i], t.epPlusNf[i]);
+        }
+    });
+
+    public static final SuspicionFormula DSTAR3 = formula("DStar3", (t, out, offset) -> {
+        for (int i = 0; i < t.length; i++) {
+            out[offset + i] = div(t.ef[i] * t.ef[i] * t.ef[i], t.epPlusNf[i]);
+        }
+    });
+
+    public static final SuspicionFormula OP2 = formula("Op2", (t, out, offset) -> {
+        double passedPlusOne = t.totalPassed + 1;
+        for (int i = 0; i < t.length; i++) {
+            out[offset + i] = t.ef[i] - t.ep[i] / passedPlusOne;
+        }
+    });
+
+    public static final SuspicionFormula BARINEL = formula("Barinel", (t, out, offset) -> {
+        for (int i = 0; i < t.length; i++) {
+            out[offset + i] = 1.0 - div(t.ep[i], t.efPlusEp[i]);
+        }
+    });
+
+    public static final SuspicionFormula KULCZYNSKI2 = formula("Kulczynski2", (t, out, offset) -> {
+        for (int i = 0; i < t.length; i++) {
+            out[offset + i] = 0.5 * (div(t.ef[i], t.totalFailed) + div(t.ef[i], t.efPlusEp[i]));
+        }
+    });
+
+    // ** ef*np / sqrt((ef+ep)(nf+np)(ef+np)(nf+ep))
+    public static final SuspicionFormula OCHIAI2 = formula("Ochiai2", (t, out, offset) -> {
+        for (int i = 0; i < t.length; i++) {
+            double denominator = t.efPlusEp[i] * (t.nf[i] + t.np[i]) * (t.ef[i] + t.np[i]) * t.epPlusNf[i];
+            out[offset + i] = div(t.ef[i] * t.np[i], Math.sqrt(denominator));
+        }
+    });
+
+    /**
+     * The formulas scored before formulas were configurable, in their ranking order.
+     */
+    public static final List<SuspicionFormula> DEFAULTS =
+            Collections.unmodifiableList(Arrays.asList(TARANTULA, SBI, JACCARD, OCHIAI));
+
+    private static final Map<String, SuspicionFormula> BUILT_IN = new LinkedHashMap<>();
+
+    static {
+        for (SuspicionFormula formula : Arrays.asList(TARANTULA, SBI, JACCARD, OCHIAI, DSTAR2, DSTAR3, OP2,
+                BARINEL, KULCZYNSKI2, OCHIAI2)) {
+            BUILT_IN.put(formula.name().toLowerCase(Locale.ROOT), formula);
+        }
+    }
+
+    /**
+     * Resolves formulas by (case-insensitive) built-in name or by the fully qualified name of a
+     * {@link SuspicionFormula} implementation with a public no-arg constructor, keeping the given order. An empty
+     * or {@code null} list selects {@link #DEFAULTS}.
+     *
+     * @throws IllegalArgumentException for an unknown name
+     */
+    public static List<SuspicionFormula> forNames(List<String> names) {
+        if (names == null || names.isEmpty()) {
+            return DEFAULTS;
+        }
+        List<SuspicionFormula> formulas = new ArrayList<>(names.size());
+        for (String name : names) {
+            SuspicionFormula formula = BUILT_IN.get(name.trim().toLowerCase(Locale.ROOT));
+            if (formula == null) {
+                formula = loadPlugin(name.trim());
+            }
+            if (!formulas.contains(formula)) {
+                formulas.add(formula);
+            }
+        }
+        return formulas;
+    }
+
+    public static List<String> availableNames() {
+        List<String> names = new ArrayList<>();
+        BUILT_IN.values().forEach(formula -> names.add(formula.name()));
+        return names;
+    }
+
+    private static SuspicionFormula loadPlugin(String className) {
+        if (className.indexOf('.') < 0) {
+            throw new IllegalArgumentException("Unknown suspicion formula '" + className + "', available: "
+                    + availableNames());
+        }
+        try {
+            Class<?> type = Class.forName(className, true, Thread.currentThread().getContextClassLoader());
+            return (SuspicionFormula) type.getConstructor().newInstance();
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            throw new IllegalArgumentException("Cannot load suspicion formula " + className, e);
+        }
+    }
+
+    /**
+     * Division that yields 0.0 for 0/0 without a branch: clamping the denominator to the smallest positive double
+     * only changes the result when the denominator is zero.
+     */
+    static double div(double numerator, double denominator) {
+        return numerator / Math.max(denominator, Double.MIN_VALUE);
+    }
+
+    private interface BlockScorer {
+        void score(SpectrumTerms terms, double[] out, int offset);
+    }
+
+    private static SuspicionFormula formula(String name, BlockScorer scorer) {
+        return new SuspicionFormula() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public void score(SpectrumTerms terms, double[] out, int offset) {
+                scorer.score(terms, out, offset);
+            }
+
+            @Override
+            public String toString() {
+                return name;
+            }
+        };
+    }
+}
@@ -1,11 +1,13 @@
 package com.johnp.util;
 
 import com.johnp.bean.MethodInfo;
+import com.johnp.bean.ScoreTable;
+import com.johnp.bean.Spectrum;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -27,23 +29,50 @@ public class SuspicionProcessor {
     }
 
     public static double calculateOchiai(double ef, double ep, double nf) {
-        return ef / Math.sqrt(nf * (ef + ep));
+        return safeDiv(ef, Math.sqrt(nf * (ef + ep)));
+    }
+
+    /**
+     * Scores every method of the spectrum with the {@link SuspicionFormulas#DEFAULTS}, equivalent to calling the
+     * per-method variants with {@code (ef, ep, totalFailed, totalPassed)}.
+     */
+    public static ScoreTable calculateAll(Spectrum spectrum) {
+        return new SuspicionEngine(SuspicionFormulas.DEFAULTS).score(spectrum);
+    }
+
+    /**
+     * Orders method IDs by descending score of the first formula column, ties broken by the following columns
+     * and finally by ascending method ID.
+     */
+    public static int[] rank(ScoreTable scores) {
+        return SuspicionRanker.rankAll(scores);
+    }
+
+    /**
+     * The first {@code limit} method IDs of {@link #rank(ScoreTable)}, or all of them when {@code limit <= 0}.
+     */
+    public static int[] rank(ScoreTable scores, int limit) {
+        return limit <= 0 ? SuspicionRanker.rankAll(scores) : SuspicionRanker.rankTop(scores, limit);
     }
 
     public static List<Map.Entry<String, MethodInfo>> sortSuspicion(Map<String, MethodInfo> data) {
-        List<Map.Entry<String, MethodInfo>> dataList = new ArrayList<>(data.entrySet());
-
-        // ** Sort the data in descending order of Tarantula, SBI, Jaccard, Ochai
-        dataList.sort(Comparator
-                .comparingDouble((Map.Entry<String, MethodInfo> entry) -> entry.getValue().getSuspiciousnessTarantula())
-                .reversed()
-                .thenComparing(Comparator.comparingDouble((Map.Entry<String, MethodInfo> entry) -> entry.getValue().getSuspiciousnessSbi())
-                        .reversed())
-                .thenComparing(Comparator.comparingDouble((Map.Entry<String, MethodInfo> entry) -> entry.getValue().getSuspiciousnessJaccard())
-                        .reversed())
-                .thenComparing(Comparator.comparingDouble((Map.Entry<String, MethodInfo> entry) -> entry.getValue().getSuspiciousnessOchiai())
-                        .reversed())
-        );
+        List<Map.Entry<String, MethodInfo>> entries = new ArrayList<>(data.entrySet());
+
+        // ** Sort the data in descending order of Tarantula, SBI, Jaccard, Ochiai; the ranker breaks the remaining
+        // ** ties by position, which keeps the map's iteration order like the stable sort did
+        ScoreTable scores = new ScoreTable(Arrays.asList("Tarantula", "SBI", "Jaccard", "Ochiai"), entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            MethodInfo info = entries.get(i).getValue();
+            scores.getColumn(0)[i] = info.getSuspiciousnessTarantula();
+            scores.getColumn(1)[i] = info.getSuspiciousnessSbi();
+            scores.getColumn(2)[i] = info.getSuspiciousnessJaccard();
+            scores.getColumn(3)[i] = info.getSuspiciousnessOchiai();
+        }
+
+        List<Map.Entry<String, MethodInfo>> dataList = new ArrayList<>(entries.size());
+        for (int id : SuspicionRanker.rankAll(scores)) {
+            dataList.add(entries.get(id));
+        }
         return dataList;
     }
 
@@ -0,0 +1,203 @@
+package com.johnp.util;
+
+import com.johnp.bean.ScoreTable;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.util.Arrays;
+
+/**
+ * Orders the methods of a {@link ScoreTable} by descending score of the first formula column, ties broken by the
+ * following columns and finally by ascending method ID. Scores compare like {@link Double#compare}.
+ * <p>
+ * Everything runs on primitive keys: a double maps to a {@code long} whose signed order is its
+ * {@link Double#compare} order, so no boxed comparator is ever involved.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public class SuspicionRanker {
+
+    /**
+     * Ranks every method with parallel sorts of {@code (rank << 32 | id)} packed keys, one column at a time: the
+     * first column orders everything, each following column only re-sorts the runs still tied on the previous ones.
+     */
+    public static int[] rankAll(ScoreTable scores) {
+        int size = scores.size();
+        int[] order = new int[size];
+        if (size == 0) {
+            return order;
+        }
+
+        int[] ranks = denseRanks(scores.getColumn(0));
+        long[] packed = new long[size];
+        Arrays.parallelSetAll(packed, id -> pack(ranks[id], id));
+        Arrays.parallelSort(packed);
+
+        // ** tied[i]: order[i] equals order[i - 1] on every column sorted so far
+        boolean[] tied = new boolean[size];
+        boolean anyTie = false;
+        order[0] = (int) packed[0];
+        for (int i = 1; i < size; i++) {
+            order[i] = (int) packed[i];
+            tied[i] = packed[i] >>> 32 == packed[i - 1] >>> 32;
+            anyTie |= tied[i];
+        }
+
+        for (int f = 1; f < scores.formulaCount() && anyTie; f++) {
+            int[] columnRanks = denseRanks(scores.getColumn(f));
+            anyTie = false;
+            int start = 0;
+            while (start < size) {
+                int end = start + 1;
+                while (end < size && tied[end]) {
+                    end++;
+                }
+                if (end - start > 1) {
+                    for (int i = start; i < end; i++) {
+                        packed[i] = pack(columnRanks[order[i]], order[i]);
+                    }
+                    Arrays.parallelSort(packed, start, end);
+                    for (int i = start; i < end; i++) {
+                        order[i] = (int) packed[i];
+                        if (i > start) {
+                            tied[i] = packed[i] >>> 32 == packed[i - 1] >>> 32;
+                            anyTie |= tied[i];
+                        }
+                    }
+                }
+                start = end;
+            }
+        }
+        return order;
+    }
+
+    /**
+     * Selects the {@code limit} best methods in rank order with a bounded max-heap of the kept methods, worst on
+     * top. Most methods are rejected by a single {@code long} comparison against the root; later columns are
+     * only read on ties of the first.
+     *
+     * @return at most {@code limit} method IDs, the same prefix {@link #rankAll(ScoreTable)} would return
+     */
+    public static int[] rankTop(ScoreTable scores, int limit) {
+        int size = scores.size();
+        if (limit >= size) {
+            return rankAll(scores);
+        }
+        if (limit <= 0) {
+            return new int[0];
+        }
+
+        double[] first = scores.getColumn(0);
+        long[] heapKeys = new long[limit];
+        int[] heapIds = new int[limit];
+        int heapSize = 0;
+
+        for (int id = 0; id < size; id++) {
+            long key = descendingKey(first[id]);
+            if (heapSize < limit) {
+                siftUp(scores, heapKeys, heapIds, heapSize++, key, id);
+            } else if (key < heapKeys[0]
+                    || key == heapKeys[0] && compare(scores, key, id, heapKeys[0], heapIds[0]) < 0) {
+                siftDown(scores, heapKeys, heapIds, heapSize, key, id);
+            }
+        }
+
+        // ** popping the worst first fills the result back to front
+        int[] order = new int[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            order[i] = heapIds[0];
+            heapSize--;
+            siftDown(scores, heapKeys, heapIds, heapSize, heapKeys[heapSize], heapIds[heapSize]);
+        }
+        return order;
+    }
+
+    /**
+     * Maps a score to a key whose ascending signed order is the descending {@link Double#compare} order of scores.
+     */
+    static long descendingKey(double score) {
+        long bits = Double.doubleToLongBits(score);
+        return ~(bits ^ ((bits >> 63) & Long.MAX_VALUE));
+    }
+
+    private static long pack(int rank, int id) {
+        return (long) rank << 32 | id;
+    }
+
+    /**
+     * @return for every method, the number of distinct scores of the column that rank strictly before its own
+     */
+    private static int[] denseRanks(double[] column) {
+        long[] keys = new long[column.length];
+        Arrays.parallelSetAll(keys, id -> descendingKey(column[id]));
+        long[] distinct = keys.clone();
+        Arrays.parallelSort(distinct);
+        int count = 0;
+        for (int i = 0; i < distinct.length; i++) {
+            if (i == 0 || distinct[i] != distinct[count - 1]) {
+                distinct[count++] = distinct[i];
+            }
+        }
+        int distinctCount = count;
+        int[] ranks = new int[column.length];
+        Arrays.parallelSetAll(ranks, id -> Arrays.binarySearch(distinct, 0, distinctCount, keys[id]));
+        return ranks;
+    }
+
+    /**
+     * Negative when method {@code a} ranks before method {@code b}.
+     */
+    private static int compare(ScoreTable scores, long keyA, int a, long keyB, int b) {
+        if (keyA != keyB) {
+            return Long.compare(keyA, keyB);
+        }
+        for (int f = 1; f < scores.formulaCount(); f++) {
+            double[] column = scores.getColumn(f);
+            int order = Double.compare(column[b], column[a]);
+            if (order != 0) {
+                return order;
+            }
+        }
+        return Integer.compare(a, b);
+    }
+
+    private static void siftUp(ScoreTable scores, long[] heapKeys, int[] heapIds, int index, long key, int id) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (compare(scores, key, id, heapKeys[parent], heapIds[parent]) <= 0) {
+                break;
+            }
+            heapKeys[index] = heapKeys[parent];
+            heapIds[index] = heapIds[parent];
+            index = parent;
+        }
+        heapKeys[index] = key;
+        heapIds[index] = id;
+    }
+
+    /**
+     * Places {@code (key, id)} at the root of a heap of {@code heapSize} entries and restores the heap order.
+     */
+    private static void siftDown(ScoreTable scores, long[] heapKeys, int[] heapIds, int heapSize, long key, int id) {
+        int index = 0;
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize
+                    && compare(scores, heapKeys[child + 1], heapIds[child + 1], heapKeys[child], heapIds[child]) > 0) {
+                child++;
+            }
+            if (compare(scores, key, id, heapKeys[child], heapIds[child]) >= 0) {
+                break;
+            }
+            heapKeys[index] = heapKeys[child];
+            heapIds[index] = heapIds[child];
+            index = child;
+        }
+        if (heapSize > 0) {
+            heapKeys[index] = key;
+            heapIds[index] = id;
+        }
+    }
+}
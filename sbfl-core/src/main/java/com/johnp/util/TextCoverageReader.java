@@ -0,0 +1,117 @@
+package com.johnp.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Streams the legacy text coverage layout ("testName result" header, then one method signature per line) from a
+ * file channel through a fixed read buffer.
+ * <p>
+ * Lines are handed out as byte ranges, nothing is retained between lines, so memory stays flat whatever the file
+ * size. An instance reuses its buffers and must stay confined to one thread.
+ */
+final class TextCoverageReader {
+
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    interface LineVisitor {
+        /**
+         * @return {@code false} to skip the method lines of this file
+         */
+        boolean visitHeader(String testName, boolean passed);
+
+        /**
+         * The bytes are only valid during the call.
+         */
+        void visitMethod(byte[] bytes, int offset, int length);
+    }
+
+    private final ByteBuffer chunk = ByteBuffer.allocate(CHUNK_SIZE);
+    private byte[] carry = new byte[256];
+    private int carryLength;
+    private boolean headerSeen;
+    private boolean skipFile;
+
+    void read(Path file, LineVisitor visitor) throws IOException {
+        carryLength = 0;
+        headerSeen = false;
+        skipFile = false;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            byte[] bytes = chunk.array();
+            while (!skipFile) {
+                chunk.clear();
+                int read = channel.read(chunk);
+                if (read < 0) {
+                    break;
+                }
+                int lineStart = 0;
+                for (int i = 0; i < read && !skipFile; i++) {
+                    if (bytes[i] != '\n') {
+                        continue;
+                    }
+                    if (carryLength > 0) {
+                        // ** Line started in the previous chunk
+                        append(bytes, lineStart, i - lineStart);
+                        line(carry, 0, carryLength, visitor);
+                        carryLength = 0;
+                    } else {
+                        line(bytes, lineStart, i - lineStart, visitor);
+                    }
+                    lineStart = i + 1;
+                }
+                append(bytes, lineStart, read - lineStart);
+            }
+            if (carryLength > 0 && !skipFile) {
+                line(carry, 0, carryLength, visitor);
+            }
+        }
+    }
+
+    private void line(byte[] bytes, int offset, int length, LineVisitor visitor) {
+        if (length > 0 && bytes[offset + length - 1] == '\r') {
+            length--;
+        }
+        if (!headerSeen) {
+            headerSeen = true;
+            skipFile = !header(bytes, offset, length, visitor);
+        } else if (length > 0) {
+            visitor.visitMethod(bytes, offset, length);
+        }
+    }
+
+    // ** Same rule as the former split(" "): exactly two space separated parts
+    private static boolean header(byte[] bytes, int offset, int length, LineVisitor visitor) {
+        int space = -1;
+        for (int i = offset; i < offset + length; i++) {
+            if (bytes[i] == ' ') {
+                if (space >= 0) {
+                    return false;
+                }
+                space = i;
+            }
+        }
+        if (space <= offset || space == offset + length - 1) {
+            return false;
+        }
+        String testName = new String(bytes, offset, space - offset, StandardCharsets.UTF_8);
+        String result = new String(bytes, space + 1, offset + length - space - 1, StandardCharsets.UTF_8);
+        return visitor.visitHeader(testName, Boolean.parseBoolean(result));
+    }
+
+    private void append(byte[] bytes, int offset, int length) {
+        if (length <= 0) {
+            return;
+        }
+        if (carryLength + length > carry.length) {
+            carry = Arrays.copyOf(carry, Math.max(carry.length * 2, carryLength + length));
+        }
+        System.arraycopy(bytes, offset, carry, carryLength, length);
+        carryLength += length;
+    }
+}
@@ -0,0 +1,36 @@
+package com.johnp.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertThrows;
+
+public class AnalyzerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void corruptStoreFailsTheAnalysis() throws IOException {
+        File coverageDir = folder.getRoot();
+        Files.write(coverageDir.toPath().resolve(CoverageFormat.STORE_FILE),
+                "not a spectrum store".getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(IOException.class, () -> new Analyzer().analyzeSpectrum(coverageDir, 0));
+    }
+
+    @Test
+    public void missingDictionaryFailsTheAnalysis() throws IOException {
+        File coverageDir = folder.getRoot();
+        Files.write(coverageDir.toPath().resolve("CalculatorTest.testAdd" + CoverageFormat.COVERAGE_EXTENSION),
+                new byte[]{1, 2, 3});
+
+        assertThrows(IOException.class, () -> new Analyzer().analyzeSpectrum(coverageDir, 0));
+    }
+}
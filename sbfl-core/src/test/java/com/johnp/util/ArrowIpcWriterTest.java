@@ -0,0 +1,141 @@
+package com.johnp.util;
+
+import com.johnp.bean.ScoreTable;
+import com.johnp.bean.Spectrum;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowFileReader;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Reads the files {@link ArrowIpcWriter} writes back with the Arrow Java library.
+ */
+public class ArrowIpcWriterTest {
+
+    private static final List<String> FORMULAS = Arrays.asList("Tarantula", "Ochiai");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void emptyRankingHasTheSchemaAndNoBatches() throws IOException {
+        String[] signatures = {"com/example/Calculator:add:(II)I"};
+        assertRoundTrip(new Spectrum(signatures, new int[1], new int[1], 0, 0),
+                new ScoreTable(FORMULAS, signatures.length), new int[0]);
+    }
+
+    @Test
+    public void rankingLongerThanABatchSpansSeveralBatches() throws IOException {
+        int methods = 2 * ArrowIpcWriter.BATCH_ROWS + 17;
+        String[] signatures = new String[methods];
+        int[] failed = new int[methods];
+        int[] passed = new int[methods];
+        ScoreTable scores = new ScoreTable(FORMULAS, methods);
+        int[] order = new int[methods];
+        for (int id = 0; id < methods; id++) {
+            signatures[id] = "com/example/Generated" + id + ":run:()V";
+            failed[id] = id % 7;
+            passed[id] = id % 11;
+            scores.getColumn(0)[id] = id * 0.5;
+            scores.getColumn(1)[id] = -id;
+            order[methods - 1 - id] = id;
+        }
+        assertRoundTrip(new Spectrum(signatures, failed, passed, 7, 11), scores, order);
+    }
+
+    @Test
+    public void nonAsciiSignaturesKeepTheirCharacters() throws IOException {
+        // ** Two-, three- and four-byte UTF-8 sequences
+        String[] signatures = {
+                "com/ex\u00E4mple/Gr\u00F6\u00DFe:berechne:()V",
+                "com/\u4F8B\u5B50/\u8BA1\u7B97\u5668:\u52A0:(II)I",
+                "com/example/Emoji:\uD83D\uDE00:()V",
+                "com/example/Plain:run:()V"};
+        ScoreTable scores = new ScoreTable(FORMULAS, signatures.length);
+        assertRoundTrip(new Spectrum(signatures, new int[]{1, 2, 0, 1}, new int[]{0, 3, 4, 1}, 2, 4), scores,
+                new int[]{2, 0, 3, 1});
+    }
+
+    @Test
+    public void specialScoresKeepTheirBits() throws IOException {
+        double[] tarantula = {Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, -0.0, 0.0,
+                Double.MIN_VALUE, Double.MAX_VALUE};
+        String[] signatures = new String[tarantula.length];
+        ScoreTable scores = new ScoreTable(FORMULAS, signatures.length);
+        int[] order = new int[signatures.length];
+        for (int id = 0; id < signatures.length; id++) {
+            signatures[id] = "com/example/Scores:method" + id + ":()V";
+            scores.getColumn(0)[id] = tarantula[id];
+            scores.getColumn(1)[id] = tarantula[tarantula.length - 1 - id];
+            order[id] = id;
+        }
+        assertRoundTrip(new Spectrum(signatures, new int[signatures.length], new int[signatures.length], 1, 1),
+                scores, order);
+    }
+
+    // ** Writes the ranking, then checks the schema, the batch split and every value against the inputs
+    private void assertRoundTrip(Spectrum spectrum, ScoreTable scores, int[] order) throws IOException {
+        Path file = folder.getRoot().toPath().resolve("ranking.arrow");
+        ArrowIpcWriter.write(file, spectrum, scores, order);
+
+        try (BufferAllocator allocator = new RootAllocator();
+             FileChannel channel = FileChannel.open(file);
+             ArrowFileReader reader = new ArrowFileReader(channel, allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            List<Field> fields = root.getSchema().getFields();
+            List<String> names = fields.stream().map(Field::getName).collect(Collectors.toList());
+            assertEquals(Arrays.asList("method_id", "signature", "ef", "ep", "nf", "np", "Tarantula", "Ochiai"),
+                    names);
+            assertEquals(new ArrowType.Int(32, true), fields.get(0).getType());
+            assertEquals(ArrowType.Utf8.INSTANCE, fields.get(1).getType());
+            assertEquals(new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE), fields.get(6).getType());
+            assertEquals((order.length + ArrowIpcWriter.BATCH_ROWS - 1) / ArrowIpcWriter.BATCH_ROWS,
+                    reader.getRecordBlocks().size());
+
+            int rank = 0;
+            while (reader.loadNextBatch()) {
+                IntVector ids = (IntVector) root.getVector("method_id");
+                VarCharVector signatures = (VarCharVector) root.getVector("signature");
+                for (int row = 0; row < root.getRowCount(); row++, rank++) {
+                    int id = order[rank];
+                    assertFalse(ids.isNull(row));
+                    assertEquals(id, ids.get(row));
+                    assertEquals(spectrum.getSignatures()[id],
+                            new String(signatures.get(row), StandardCharsets.UTF_8));
+                    assertEquals(spectrum.getFailed()[id], ((IntVector) root.getVector("ef")).get(row));
+                    assertEquals(spectrum.getPassed()[id], ((IntVector) root.getVector("ep")).get(row));
+                    assertEquals(spectrum.getTotalFailedTests() - spectrum.getFailed()[id],
+                            ((IntVector) root.getVector("nf")).get(row));
+                    assertEquals(spectrum.getTotalPassedTests() - spectrum.getPassed()[id],
+                            ((IntVector) root.getVector("np")).get(row));
+                    for (int f = 0; f < scores.formulaCount(); f++) {
+                        Float8Vector column = (Float8Vector) root.getVector(scores.getFormulaName(f));
+                        assertEquals(Double.doubleToRawLongBits(scores.getColumn(f)[id]),
+                                Double.doubleToRawLongBits(column.get(row)));
+                    }
+                }
+            }
+            assertEquals(order.length, rank);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.johnp.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BytecodeHashesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void resourcesAreHashedApartFromClasses() throws IOException {
+        Path classes = folder.newFolder("classes").toPath();
+        Path testClasses = folder.newFolder("test-classes").toPath();
+        write(classes.resolve("com/example/Calculator.class"), "bytecode");
+        write(testClasses.resolve("fixtures/input.txt"), "1 + 2");
+
+        BytecodeHashes before = BytecodeHashes.scan(classes, testClasses);
+        write(testClasses.resolve("fixtures/input.txt"), "1 + 3");
+        BytecodeHashes after = BytecodeHashes.scan(classes, testClasses);
+
+        assertEquals(Collections.singleton("com/example/Calculator"), after.getClasses().keySet());
+        assertTrue(after.getTestClasses().isEmpty());
+        assertEquals(before.getClasses(), after.getClasses());
+        assertFalse(before.sameEnvironment(after));
+    }
+
+    @Test
+    public void environmentIsPartOfTheHashes() throws IOException {
+        Path classes = folder.newFolder("classes").toPath();
+        BytecodeHashes junit412 = BytecodeHashes.scan(classes, null, Arrays.asList("junit:junit:jar:4.12", "java 17"));
+        BytecodeHashes junit413 = BytecodeHashes.scan(classes, null, Arrays.asList("junit:junit:jar:4.13", "java 17"));
+
+        assertFalse(junit412.sameEnvironment(junit413));
+        assertTrue(junit413.sameEnvironment(BytecodeHashes.scan(classes, null,
+                Arrays.asList("junit:junit:jar:4.13", "java 17"))));
+    }
+
+    @Test
+    public void writtenHashesReadBackTheSame() throws IOException {
+        Path classes = folder.newFolder("classes").toPath();
+        write(classes.resolve("com/example/Calculator.class"), "bytecode");
+        write(classes.resolve("application.properties"), "mode=test");
+        BytecodeHashes hashes = BytecodeHashes.scan(classes, null, Collections.singletonList("java 17"));
+
+        Path file = folder.getRoot().toPath().resolve(CoverageFormat.HASHES_FILE);
+        hashes.write(file);
+        BytecodeHashes read = BytecodeHashes.read(file);
+
+        assertEquals(hashes.getClasses(), read.getClasses());
+        assertTrue(hashes.sameEnvironment(read));
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+}
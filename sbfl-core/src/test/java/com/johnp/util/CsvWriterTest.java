@@ -0,0 +1,128 @@
+package com.johnp.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CsvWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void doublesAtTheNotationBoundariesMatchDoubleToString() throws IOException {
+        double[] values = {0.0, -0.0, 1e-3, -1e-3, Math.nextDown(1e-3), Math.nextUp(1e-3), 1e7, -1e7,
+                Math.nextDown(1e7), 0.1, 1.0 / 3, 2.5, Double.MIN_VALUE, Double.MAX_VALUE, Double.NaN,
+                Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        StringBuilder expected = new StringBuilder();
+        Path file = folder.getRoot().toPath().resolve("doubles.csv");
+        try (CsvWriter writer = CsvWriter.open(file, false)) {
+            for (double value : values) {
+                writer.field(value).endRow();
+                expected.append(Double.toString(value)).append('\n');
+            }
+        }
+        assertEquals(expected.toString(), read(file));
+    }
+
+    @Test
+    public void doublesReadBackAsTheSameValue() throws IOException {
+        Random random = new Random(22);
+        double[] values = new double[20_000];
+        for (int i = 0; i < values.length; i++) {
+            // ** Magnitudes from 1e-5 to 1e9, across both notations
+            values[i] = (random.nextBoolean() ? 1 : -1) * random.nextDouble() * Math.pow(10, random.nextInt(15) - 5);
+        }
+        Path file = folder.getRoot().toPath().resolve("doubles.csv");
+        try (CsvWriter writer = CsvWriter.open(file, false)) {
+            for (double value : values) {
+                writer.field(value).endRow();
+            }
+        }
+
+        String[] lines = read(file).split("\n");
+        assertEquals(values.length, lines.length);
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(lines[i], Double.doubleToRawLongBits(values[i]),
+                    Double.doubleToRawLongBits(Double.parseDouble(lines[i])));
+            // ** Never longer than Double.toString, which is the shortest or one digit more
+            assertTrue(lines[i], lines[i].length() <= Double.toString(values[i]).length());
+            double magnitude = Math.abs(values[i]);
+            assertEquals(lines[i], magnitude >= 1e-3 && magnitude < 1e7, !lines[i].contains("E"));
+        }
+    }
+
+    @Test
+    public void fieldsWithSeparatorsAreQuoted() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("quoted.csv");
+        try (CsvWriter writer = CsvWriter.open(file, false)) {
+            writer.field("plain").field("a,b").field("say \"hi\"").field("two\nlines").field("cr\r").field(42)
+                    .endRow();
+            writer.field("").field("\"").endRow();
+        }
+        assertEquals("plain,\"a,b\",\"say \"\"hi\"\"\",\"two\nlines\",\"cr\r\",42\n"
+                + ",\"\"\"\"\n", read(file));
+    }
+
+    @Test
+    public void surrogatePairSplitByTheBufferIsKept() throws IOException {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < CsvWriter.BUFFER_CHARS - 1; i++) {
+            value.append('x');
+        }
+        // ** The high surrogate fills the buffer, the low one starts the next
+        value.append("\uD83D\uDE00").append('y');
+        Path file = folder.getRoot().toPath().resolve("split.csv");
+        try (CsvWriter writer = CsvWriter.open(file, false)) {
+            writer.field(value.toString()).endRow();
+        }
+        assertEquals(value + "\n", read(file));
+    }
+
+    @Test
+    public void unpairedSurrogatesBecomeQuestionMarks() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("unpaired.csv");
+        try (CsvWriter writer = CsvWriter.open(file, false)) {
+            writer.field("low\uDE00").endRow();
+            // ** Left for a low surrogate that never comes, close() has to write it
+            writer.field("end\uD83D");
+        }
+        assertEquals("low?\nend?", read(file));
+    }
+
+    @Test
+    public void gzipOutputHoldsTheSameRows() throws IOException {
+        Path plain = folder.getRoot().toPath().resolve("ranking.csv");
+        Path gzip = folder.getRoot().toPath().resolve("ranking.csv.gz");
+        for (Path file : new Path[]{plain, gzip}) {
+            try (CsvWriter writer = CsvWriter.open(file, file == gzip)) {
+                for (int row = 0; row < 10_000; row++) {
+                    writer.field("com/example/Calculator:method" + row + ":()V").field(row / 7.0).endRow();
+                }
+            }
+        }
+
+        String rows = read(plain);
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(gzip))) {
+            assertEquals(rows, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+        assertFalse(rows.isEmpty());
+        assertTrue(Files.size(gzip) < Files.size(plain));
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,80 @@
+package com.johnp.util;
+
+import com.johnp.bean.ScoreTable;
+import com.johnp.bean.Spectrum;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class FileExportUtilTest {
+
+    private static final String[] SIGNATURES = {
+            "com/example/Calculator:add:(II)I",
+            "com/example/Calculator:divide:(II)I",
+            "com/example/Parser:parse:(Ljava/lang/String;)I",
+            "com/example/Parser:next:()C"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void rankingFillingOneSheetStaysOnIt() throws IOException {
+        try (XSSFWorkbook workbook = export(3, 2)) {
+            assertEquals(1, workbook.getNumberOfSheets());
+            assertRanks(workbook.getSheetAt(0), 0, 1);
+        }
+    }
+
+    @Test
+    public void rankingLongerThanASheetContinuesOnTheNext() throws IOException {
+        try (XSSFWorkbook workbook = export(3, 4)) {
+            assertEquals(2, workbook.getNumberOfSheets());
+            assertEquals(FileExportUtil.XLSX_SHEET, workbook.getSheetName(0));
+            assertEquals(FileExportUtil.XLSX_SHEET + " 2", workbook.getSheetName(1));
+            assertRanks(workbook.getSheetAt(0), 0, 1);
+            assertRanks(workbook.getSheetAt(1), 2, 3);
+        }
+    }
+
+    @Test
+    public void emptyRankingWritesTheHeader() throws IOException {
+        try (XSSFWorkbook workbook = export(3, 0)) {
+            assertEquals(1, workbook.getNumberOfSheets());
+            assertRanks(workbook.getSheetAt(0));
+        }
+    }
+
+    // ** Exports the first methods in reverse ID order, Tarantula scoring method i with i
+    private XSSFWorkbook export(int sheetRows, int methods) throws IOException {
+        Spectrum spectrum = new Spectrum(SIGNATURES, new int[4], new int[4], 0, 0);
+        ScoreTable scores = new ScoreTable(Collections.singletonList("Tarantula"), SIGNATURES.length);
+        int[] order = new int[methods];
+        for (int rank = 0; rank < methods; rank++) {
+            order[rank] = SIGNATURES.length - 1 - rank;
+            scores.getColumn(0)[order[rank]] = order[rank];
+        }
+        String fileName = folder.getRoot().toPath().resolve("ranking.xlsx").toString();
+        FileExportUtil.xlsExport(fileName, spectrum, scores, order, sheetRows);
+        return new XSSFWorkbook(fileName);
+    }
+
+    // ** The header, then the methods at the given ranks
+    private static void assertRanks(Sheet sheet, int... ranks) {
+        assertEquals("Method Name", sheet.getRow(0).getCell(0).getStringCellValue());
+        assertEquals("Tarantula Suspicion", sheet.getRow(0).getCell(1).getStringCellValue());
+        for (int row = 1; row <= ranks.length; row++) {
+            int id = SIGNATURES.length - 1 - ranks[row - 1];
+            assertEquals(SIGNATURES[id], sheet.getRow(row).getCell(0).getStringCellValue());
+            assertEquals(id, sheet.getRow(row).getCell(1).getNumericCellValue(), 0);
+        }
+        assertNull(sheet.getRow(ranks.length + 1));
+    }
+}
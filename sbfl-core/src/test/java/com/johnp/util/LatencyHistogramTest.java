@@ -0,0 +1,88 @@
+package com.johnp.util;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    private static final double[] PERCENTILES = {0, 1, 10, 50, 90, 99, 99.9, 100};
+
+    @Test
+    public void percentilesStayWithinTheBucketBound() {
+        Random random = new Random(18);
+        for (int round = 0; round < 50; round++) {
+            // ** Log-uniform from 1 ns to about 100 s, so every bucket range gets values
+            long[] values = new long[1 + random.nextInt(5000)];
+            LatencyHistogram histogram = new LatencyHistogram();
+            for (int i = 0; i < values.length; i++) {
+                values[i] = (long) Math.pow(10, random.nextDouble() * 11);
+                histogram.record(values[i]);
+            }
+            assertWithinBound(values, histogram);
+        }
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 0; nanos < 8; nanos++) {
+            histogram.record(nanos);
+        }
+        for (int value = 0; value < 8; value++) {
+            assertEquals(value, histogram.percentileNanos(100.0 * (value + 1) / 8));
+        }
+    }
+
+    @Test
+    public void negativeDurationsCountAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.count());
+        assertEquals(0, histogram.totalNanos());
+        assertEquals(0, histogram.percentileNanos(50));
+    }
+
+    @Test
+    public void mergedAndReloadedHistogramsKeepTheirPercentiles() {
+        Random random = new Random(81);
+        long[] values = new long[4000];
+        LatencyHistogram[] forks = {new LatencyHistogram(), new LatencyHistogram(), new LatencyHistogram()};
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.pow(10, random.nextDouble() * 9);
+            forks[i % forks.length].record(values[i]);
+        }
+
+        // ** One histogram per forked JVM, stored to properties and merged by the parent
+        LatencyHistogram merged = new LatencyHistogram();
+        for (int f = 0; f < forks.length; f++) {
+            Properties properties = new Properties();
+            forks[f].store("fork" + f, properties);
+            merged.merge(LatencyHistogram.load("fork" + f, properties));
+        }
+
+        assertEquals(values.length, merged.count());
+        assertEquals(Arrays.stream(values).sum(), merged.totalNanos());
+        assertEquals(Arrays.stream(values).max().getAsLong(), merged.maxNanos());
+        assertWithinBound(values, merged);
+    }
+
+    // ** Never below the exact nearest-rank percentile and less than 12.5% above it
+    private static void assertWithinBound(long[] values, LatencyHistogram histogram) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (double percentile : PERCENTILES) {
+            long rank = Math.max(1, (long) Math.ceil(sorted.length * percentile / 100));
+            long exact = sorted[(int) rank - 1];
+            long estimate = histogram.percentileNanos(percentile);
+            String message = "p" + percentile + " of " + sorted.length + ": exact " + exact + ", got " + estimate;
+            assertTrue(message, estimate >= exact);
+            assertTrue(message, estimate < exact * 1.125 || estimate == exact);
+        }
+    }
+}
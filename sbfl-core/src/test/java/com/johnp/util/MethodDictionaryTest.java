@@ -0,0 +1,63 @@
+package com.johnp.util;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class MethodDictionaryTest {
+
+    private static final int METHODS = 50_000;
+
+    @Test
+    public void growingPastTheExpectedSizeKeepsEveryId() {
+        // ** Starts with 16 slots, so interning rehashes the table and grows the arrays many times over
+        MethodDictionary dictionary = new MethodDictionary(1);
+        String[] signatures = signatures();
+        for (int id = 0; id < METHODS; id++) {
+            assertEquals(id, dictionary.intern(signatures[id]));
+            assertEquals(id + 1, dictionary.size());
+        }
+
+        for (int id = 0; id < METHODS; id++) {
+            assertEquals(id, dictionary.intern(signatures[id]));
+            assertEquals(id, dictionary.find(signatures[id]));
+            assertEquals(signatures[id], dictionary.signature(id));
+        }
+        assertEquals(METHODS, dictionary.size());
+        assertArrayEquals(signatures, dictionary.toArray());
+        assertEquals(-1, dictionary.find("com/example/Missing:run:()V"));
+    }
+
+    @Test
+    public void bytesAreFoundInsideLargerArrays() {
+        MethodDictionary dictionary = MethodDictionary.of(signatures());
+        String signature = "com/ex\u00E4mple/Gr\u00F6\u00DFe:berechne:()V";
+        byte[] line = ("12 " + signature + "\r\n").getBytes(StandardCharsets.UTF_8);
+        int length = signature.getBytes(StandardCharsets.UTF_8).length;
+
+        assertEquals(-1, dictionary.find(line, 3, length));
+        int id = dictionary.intern(line, 3, length);
+        assertEquals(METHODS, id);
+        // ** The dictionary keeps its own copy, the caller's buffer is reused for the next line
+        Arrays.fill(line, (byte) 'x');
+        assertEquals(signature, dictionary.signature(id));
+        assertEquals(id, dictionary.find(signature));
+        assertEquals(id, dictionary.intern(signature));
+
+        byte[] known = ("prefix com/example/Generated7:run:()V").getBytes(StandardCharsets.UTF_8);
+        assertEquals(7, dictionary.find(known, 7, known.length - 7));
+        assertEquals(-1, dictionary.find(known, 7, known.length - 8));
+    }
+
+    private static String[] signatures() {
+        String[] signatures = new String[METHODS];
+        for (int id = 0; id < METHODS; id++) {
+            signatures[id] = "com/example/Generated" + id + ":run:()V";
+        }
+        return signatures;
+    }
+}
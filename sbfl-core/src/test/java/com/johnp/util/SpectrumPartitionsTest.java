@@ -0,0 +1,98 @@
+package com.johnp.util;
+
+import com.johnp.bean.Spectrum;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SpectrumPartitionsTest {
+
+    private static final List<String> SIGNATURES = Arrays.asList(
+            "com/example/Calculator:add:(II)I",
+            "com/example/Calculator:divide:(II)I",
+            "com/example/Parser:parse:(Ljava/lang/String;)I");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void mergingTwiceKeepsTheCounts() throws IOException {
+        File coverageDir = folder.getRoot();
+
+        writePartitions(coverageDir.toPath());
+        assertEquals(3, SpectrumPartitions.merge(coverageDir.toPath()));
+        Spectrum first = new Analyzer().analyzeSpectrum(coverageDir, 0);
+
+        // ** The next run of the same suite, its partitions merged next to the store of the first one
+        writePartitions(coverageDir.toPath());
+        assertEquals(3, SpectrumPartitions.merge(coverageDir.toPath()));
+        Spectrum second = new Analyzer().analyzeSpectrum(coverageDir, 0);
+
+        assertEquals(1, first.getTotalFailedTests());
+        assertEquals(2, first.getTotalPassedTests());
+        assertEquals(first.getTotalFailedTests(), second.getTotalFailedTests());
+        assertEquals(first.getTotalPassedTests(), second.getTotalPassedTests());
+        assertArrayEquals(first.getSignatures(), second.getSignatures());
+        assertArrayEquals(first.getFailed(), second.getFailed());
+        assertArrayEquals(first.getPassed(), second.getPassed());
+    }
+
+    @Test
+    public void mergeDeletesThePartitions() throws IOException {
+        Path coverageDir = folder.getRoot().toPath();
+
+        writePartitions(coverageDir);
+        SpectrumPartitions.merge(coverageDir);
+
+        assertTrue(SpectrumPartitions.list(coverageDir).isEmpty());
+        assertEquals(0, SpectrumPartitions.merge(coverageDir));
+        try (SpectrumStoreReader store = SpectrumStoreReader.open(coverageDir.resolve(CoverageFormat.STORE_FILE))) {
+            assertEquals(3, store.testCount());
+        }
+    }
+
+    @Test
+    public void mergedTestsAreOrderedByTestClass() throws IOException {
+        Path coverageDir = folder.getRoot().toPath();
+
+        writePartitions(coverageDir);
+        SpectrumPartitions.merge(coverageDir);
+
+        List<String> names = new ArrayList<>();
+        try (SpectrumStoreReader store = SpectrumStoreReader.open(coverageDir.resolve(CoverageFormat.STORE_FILE))) {
+            store.readTests(0, store.testCount(), (testName, passed, methodIds, count) -> names.add(testName));
+        }
+        assertEquals(Arrays.asList("com.example.CalculatorTest.testAdd", "com.example.CalculatorTest.testDivide",
+                "com.example.ParserTest.testParse"), names);
+        assertTrue(Files.notExists(coverageDir.resolve(CoverageFormat.STORE_FILE + ".merge")));
+    }
+
+    // ** Two forks of one run with their own dictionaries, the first partition holds the last test class
+    private static void writePartitions(Path coverageDir) throws IOException {
+        try (SpectrumStoreWriter writer = SpectrumStoreWriter.open(
+                coverageDir.resolve(CoverageFormat.partitionFile("1")), SIGNATURES)) {
+            writer.append(test("com.example.CalculatorTest.testAdd", true, 0));
+            writer.append(test("com.example.CalculatorTest.testDivide", false, 0, 1));
+        }
+        try (SpectrumStoreWriter writer = SpectrumStoreWriter.open(
+                coverageDir.resolve(CoverageFormat.partitionFile("0")), SIGNATURES.subList(2, 3))) {
+            writer.append(CoverageFormat.encodeTest("com.example.ParserTest.testParse", true, new int[]{0}, 1, 1));
+        }
+    }
+
+    private static byte[] test(String name, boolean passed, int... methodIds) {
+        return CoverageFormat.encodeTest(name, passed, methodIds, methodIds.length, SIGNATURES.size());
+    }
+}
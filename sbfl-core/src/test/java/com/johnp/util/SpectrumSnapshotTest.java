@@ -0,0 +1,234 @@
+package com.johnp.util;
+
+import com.johnp.bean.Spectrum;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class SpectrumSnapshotTest {
+
+    private static final List<String> SIGNATURES = Arrays.asList(
+            "com/example/Calculator:add:(II)I",
+            "com/example/Calculator:divide:(II)I",
+            "com/example/Parser:parse:(Ljava/lang/String;)I");
+
+    private static final String TEST_ADD = "com.example.CalculatorTest.testAdd";
+    private static final String TEST_DIVIDE = "com.example.CalculatorTest.testDivide";
+    private static final String TEST_PARSE = "com.example.ParserTest.testParse";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path snapshotDir;
+    private Map<String, Long> classes;
+    private Map<String, Long> testClasses;
+    private SpectrumSnapshot snapshot;
+
+    @Before
+    public void recordFirstBuild() throws IOException {
+        snapshotDir = folder.getRoot().toPath().resolve(CoverageFormat.SNAPSHOT_DIR);
+        classes = new HashMap<>();
+        classes.put("com/example/Calculator", 1L);
+        classes.put("com/example/Parser", 1L);
+        testClasses = new HashMap<>();
+        testClasses.put("com/example/CalculatorTest", 1L);
+        testClasses.put("com/example/ParserTest", 1L);
+        // ** A helper no recorded test is named after
+        testClasses.put("com/example/TestSupport", 1L);
+
+        Path run = runStore(SIGNATURES,
+                test(TEST_ADD, true, 0),
+                test(TEST_DIVIDE, false, 0, 1),
+                test(TEST_PARSE, true, 2));
+        snapshot = SpectrumSnapshot.update(snapshotDir, null, hashes(), run);
+    }
+
+    @Test
+    public void unchangedBuildHasNothingToRun() throws IOException {
+        assertTrue(snapshot.matches(hashes()));
+        assertTrue(snapshot.plan(hashes()).isEmpty());
+        assertEquals(3, SpectrumSnapshot.load(snapshotDir).testCount());
+    }
+
+    @Test
+    public void changedClassReplacesTheTestsThatCoveredIt() throws IOException {
+        classes.put("com/example/Parser", 2L);
+
+        IncrementalPlan plan = snapshot.plan(hashes());
+        assertFalse(plan.isFull());
+        assertEquals(1, plan.staleTestCount());
+        assertTrue(plan.isStale(TEST_PARSE));
+        assertFalse(plan.isStale(TEST_ADD));
+        assertEquals("com.example.ParserTest#testParse", plan.testSelection());
+
+        // ** The re-run fails now: its passing record is subtracted and the failing one added
+        Path run = runStore(SIGNATURES, test(TEST_PARSE, false, 2));
+        SpectrumSnapshot updated = SpectrumSnapshot.update(snapshotDir, snapshot, hashes(), run);
+
+        Spectrum spectrum = SpectrumSnapshot.load(snapshotDir).toSpectrum(0);
+        assertEquals(3, updated.testCount());
+        assertEquals(2, spectrum.getTotalFailedTests());
+        assertEquals(1, spectrum.getTotalPassedTests());
+        assertArrayEquals(SIGNATURES.toArray(new String[0]), spectrum.getSignatures());
+        assertArrayEquals(new int[]{1, 1, 1}, spectrum.getFailed());
+        assertArrayEquals(new int[]{1, 0, 0}, spectrum.getPassed());
+        assertTrue(updated.matches(hashes()));
+    }
+
+    @Test
+    public void deletedTestClassDropsItsTests() throws IOException {
+        testClasses.remove("com/example/ParserTest");
+
+        IncrementalPlan plan = snapshot.plan(hashes());
+        assertFalse(plan.isFull());
+        assertTrue(plan.isStale(TEST_PARSE));
+        assertTrue(plan.getSelectedClasses().isEmpty());
+
+        SpectrumSnapshot updated = SpectrumSnapshot.update(snapshotDir, snapshot, hashes(),
+                runStore(Collections.emptyList()));
+
+        Spectrum spectrum = updated.toSpectrum(0);
+        assertEquals(2, updated.testCount());
+        assertArrayEquals(SIGNATURES.subList(0, 2).toArray(new String[0]), spectrum.getSignatures());
+        assertEquals(1, spectrum.getTotalFailedTests());
+        assertEquals(1, spectrum.getTotalPassedTests());
+    }
+
+    @Test
+    public void changedHelperRunsEveryTest() throws IOException {
+        testClasses.put("com/example/TestSupport", 2L);
+
+        assertTrue(snapshot.plan(hashes()).isFull());
+    }
+
+    @Test
+    public void changedResourceRunsEveryTest() throws IOException {
+        Map<String, Long> resources = Collections.singletonMap("test/fixtures/input.txt", 1L);
+
+        assertTrue(snapshot.plan(new BytecodeHashes(classes, testClasses, resources, 0)).isFull());
+        assertFalse(snapshot.matches(new BytecodeHashes(classes, testClasses, resources, 0)));
+    }
+
+    @Test
+    public void changedTestEnvironmentRunsEveryTest() throws IOException {
+        BytecodeHashes upgraded = new BytecodeHashes(classes, testClasses, Collections.emptyMap(), 42);
+
+        assertTrue(snapshot.plan(upgraded).isFull());
+        assertTrue(snapshot.planByMethod(upgraded, Collections.emptyMap(), Collections.emptyMap()).isFull());
+        assertFalse(snapshot.matches(upgraded));
+    }
+
+    @Test
+    public void changedGranularityStartsOver() throws IOException {
+        List<String> lines = Arrays.asList(
+                CoverageFormat.lineSignature("com/example/Calculator:add:(II)I", 12),
+                CoverageFormat.lineSignature("com/example/Calculator:add:(II)I", 13));
+        Path run = runStore(lines, CoverageFormat.encodeTest(TEST_ADD, true, new int[]{0, 1}, 2, lines.size()));
+
+        SpectrumSnapshot updated = SpectrumSnapshot.update(snapshotDir, snapshot, hashes(), run);
+
+        SpectrumSnapshot loaded = SpectrumSnapshot.load(snapshotDir);
+        assertNotNull(loaded);
+        assertEquals(1, updated.testCount());
+        assertEquals(1, loaded.testCount());
+        assertEquals(CoverageFormat.GRANULARITY_LINE, loaded.granularity());
+        assertArrayEquals(lines.toArray(new String[0]), loaded.toSpectrum(0).getSignatures());
+    }
+
+    @Test
+    public void changedMethodBodyOnlyStalesTheTestsCoveringIt() throws IOException {
+        Map<String, Long> methods = methodHashes();
+        classes.put("com/example/Calculator", 2L);
+        methods.put(SIGNATURES.get(1), 2L);
+
+        IncrementalPlan plan = snapshot.planByMethod(hashes(), methodHashes(), methods);
+
+        assertFalse(plan.isFull());
+        assertTrue(plan.isStale(TEST_DIVIDE));
+        assertFalse(plan.isStale(TEST_ADD));
+        assertFalse(plan.isStale(TEST_PARSE));
+    }
+
+    @Test
+    public void changedDeclarationStalesEveryTestCoveringTheClass() throws IOException {
+        Map<String, Long> methods = methodHashes();
+        classes.put("com/example/Calculator", 2L);
+        methods.put("com/example/Calculator", 2L);
+
+        IncrementalPlan plan = snapshot.planByMethod(hashes(), methodHashes(), methods);
+
+        assertTrue(plan.isStale(TEST_ADD));
+        assertTrue(plan.isStale(TEST_DIVIDE));
+        assertFalse(plan.isStale(TEST_PARSE));
+    }
+
+    @Test
+    public void addedMethodStalesEveryTestCoveringTheClass() throws IOException {
+        Map<String, Long> methods = methodHashes();
+        classes.put("com/example/Calculator", 2L);
+        methods.put("com/example/Calculator:negate:(I)I", 1L);
+
+        IncrementalPlan plan = snapshot.planByMethod(hashes(), methodHashes(), methods);
+
+        assertEquals(2, plan.staleTestCount());
+        assertFalse(plan.isStale(TEST_PARSE));
+    }
+
+    @Test
+    public void newClassRunsEveryTest() throws IOException {
+        Map<String, Long> methods = methodHashes();
+        classes.put("com/example/Formatter", 1L);
+        methods.put("com/example/Formatter", 1L);
+
+        assertTrue(snapshot.planByMethod(hashes(), methodHashes(), methods).isFull());
+    }
+
+    @Test
+    public void unchangedMethodsHaveNothingToRun() throws IOException {
+        assertTrue(snapshot.planByMethod(hashes(), methodHashes(), methodHashes()).isEmpty());
+    }
+
+    private BytecodeHashes hashes() {
+        return new BytecodeHashes(new HashMap<>(classes), new HashMap<>(testClasses), Collections.emptyMap(), 0);
+    }
+
+    // ** Method hashes of the first build, keyed like coverage signatures plus one per class declaration
+    private static Map<String, Long> methodHashes() {
+        Map<String, Long> methods = new HashMap<>();
+        for (String signature : SIGNATURES) {
+            methods.put(signature, 1L);
+            methods.put(signature.substring(0, signature.indexOf(':')), 1L);
+        }
+        return methods;
+    }
+
+    private Path runStore(List<String> signatures, byte[]... tests) throws IOException {
+        Path store = folder.getRoot().toPath().resolve(CoverageFormat.STORE_FILE);
+        SpectrumStoreWriter.reset(store);
+        try (SpectrumStoreWriter writer = SpectrumStoreWriter.open(store, signatures)) {
+            for (byte[] test : tests) {
+                writer.append(test);
+            }
+        }
+        return store;
+    }
+
+    private static byte[] test(String name, boolean passed, int... methodIds) {
+        return CoverageFormat.encodeTest(name, passed, methodIds, methodIds.length, SIGNATURES.size());
+    }
+}
@@ -0,0 +1,72 @@
+package com.johnp.util;
+
+import com.johnp.bean.Spectrum;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SpectrumStoreWriterTest {
+
+    private static final List<String> SIGNATURES = Arrays.asList(
+            "com/example/Calculator:add:(II)I",
+            "com/example/Calculator:divide:(II)I",
+            "com/example/Parser:parse:(Ljava/lang/String;)I");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void rerunningTheSameSuiteKeepsTheCounts() throws IOException {
+        File coverageDir = folder.getRoot();
+
+        recordSuite(coverageDir.toPath());
+        Spectrum first = new Analyzer().analyzeSpectrum(coverageDir, 0);
+        recordSuite(coverageDir.toPath());
+        Spectrum second = new Analyzer().analyzeSpectrum(coverageDir, 0);
+
+        assertEquals(1, first.getTotalFailedTests());
+        assertEquals(2, first.getTotalPassedTests());
+        assertEquals(first.getTotalFailedTests(), second.getTotalFailedTests());
+        assertEquals(first.getTotalPassedTests(), second.getTotalPassedTests());
+        assertArrayEquals(first.getSignatures(), second.getSignatures());
+        assertArrayEquals(first.getFailed(), second.getFailed());
+        assertArrayEquals(first.getPassed(), second.getPassed());
+    }
+
+    @Test
+    public void testJvmsOfOneRunAppendToTheSameStore() throws IOException {
+        Path store = folder.getRoot().toPath().resolve(CoverageFormat.STORE_FILE);
+
+        recordSuite(folder.getRoot().toPath());
+
+        try (SpectrumStoreReader reader = SpectrumStoreReader.open(store)) {
+            assertEquals(3, reader.testCount());
+        }
+    }
+
+    // ** One coverage run as the coverage Mojos start it, its tests spread over two test JVMs
+    private static void recordSuite(Path coverageDir) throws IOException {
+        Path store = coverageDir.resolve(CoverageFormat.STORE_FILE);
+        SpectrumStoreWriter.reset(store);
+        try (SpectrumStoreWriter writer = SpectrumStoreWriter.open(store, SIGNATURES)) {
+            writer.append(test("com.example.CalculatorTest.testAdd", true, 0));
+            writer.append(test("com.example.CalculatorTest.testDivide", false, 0, 1));
+        }
+        try (SpectrumStoreWriter writer = SpectrumStoreWriter.open(store, SIGNATURES)) {
+            writer.append(test("com.example.ParserTest.testParse", true, 0, 2));
+        }
+    }
+
+    private static byte[] test(String name, boolean passed, int... methodIds) {
+        return CoverageFormat.encodeTest(name, passed, methodIds, methodIds.length, SIGNATURES.size());
+    }
+}
@@ -0,0 +1,86 @@
+package com.johnp.util;
+
+import com.johnp.bean.ScoreTable;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the primitive-key rankings against the boxed {@link Comparator} chain they replace.
+ */
+public class SuspicionRankerTest {
+
+    // ** Few distinct values so most methods tie on some column, with every special case of Double.compare
+    private static final double[] SCORES = {Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0.0,
+            -0.0, 0.5, 1.0, -1.0, Double.MIN_VALUE, -Double.MIN_VALUE};
+
+    @Test
+    public void everyPrefixMatchesTheComparatorChain() {
+        Random random = new Random(9);
+        for (int round = 0; round < 200; round++) {
+            ScoreTable scores = table(random, random.nextInt(60), 1 + random.nextInt(3), 2 + random.nextInt(8));
+            int[] expected = reference(scores);
+
+            assertArrayEquals(expected, SuspicionRanker.rankAll(scores));
+            for (int k = 0; k <= scores.size() + 1; k++) {
+                assertArrayEquals("top " + k + " of " + scores.size(),
+                        Arrays.copyOf(expected, Math.min(k, scores.size())),
+                        SuspicionRanker.rankTop(scores, k));
+            }
+        }
+    }
+
+    @Test
+    public void tablesAboveTheParallelSortThresholdMatchTheComparatorChain() {
+        Random random = new Random(90);
+        // ** Large enough for Arrays.parallelSort to split the work
+        ScoreTable scores = table(random, 50_000, 3, SCORES.length);
+        int[] expected = reference(scores);
+
+        assertArrayEquals(expected, SuspicionRanker.rankAll(scores));
+        for (int k : new int[]{1, 10, 1000, 8192, 49_999}) {
+            assertArrayEquals("top " + k, Arrays.copyOf(expected, k), SuspicionRanker.rankTop(scores, k));
+        }
+    }
+
+    @Test
+    public void negativeLimitRanksNothing() {
+        assertEquals(0, SuspicionRanker.rankTop(table(new Random(1), 5, 1, 3), -1).length);
+    }
+
+    // ** Scores drawn from the first distinct values of SCORES
+    private static ScoreTable table(Random random, int size, int formulas, int distinct) {
+        List<String> names = new ArrayList<>();
+        for (int f = 0; f < formulas; f++) {
+            names.add("Formula" + f);
+        }
+        ScoreTable scores = new ScoreTable(names, size);
+        for (int f = 0; f < formulas; f++) {
+            double[] column = scores.getColumn(f);
+            for (int id = 0; id < size; id++) {
+                column[id] = SCORES[random.nextInt(distinct)];
+            }
+        }
+        return scores;
+    }
+
+    // ** Descending Double.compare on each column in turn, then ascending method ID
+    private static int[] reference(ScoreTable scores) {
+        Comparator<Integer> order = null;
+        for (int f = 0; f < scores.formulaCount(); f++) {
+            double[] column = scores.getColumn(f);
+            Comparator<Integer> byColumn = (a, b) -> Double.compare(column[b], column[a]);
+            order = order == null ? byColumn : order.thenComparing(byColumn);
+        }
+        order = order.thenComparing(Comparator.naturalOrder());
+        return IntStream.range(0, scores.size()).boxed().sorted(order).mapToInt(Integer::intValue).toArray();
+    }
+}
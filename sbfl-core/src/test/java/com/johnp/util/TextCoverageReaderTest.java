@@ -0,0 +1,119 @@
+package com.johnp.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class TextCoverageReaderTest {
+
+    private static final String HEADER = "CalculatorTest.testAdd true";
+    private static final String METHOD = "com/example/Calculator:add:(II)I";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final TextCoverageReader reader = new TextCoverageReader();
+
+    @Test
+    public void recordCutAtEveryOffsetByTheReadBuffer() throws IOException {
+        String record = METHOD + "\r\n";
+        for (int cut = 0; cut <= record.length(); cut++) {
+            // ** The filler line ends so that the first read stops cut bytes into the record
+            int fillerLength = TextCoverageReader.CHUNK_SIZE - (HEADER.length() + 1) - 1 - cut;
+            String filler = "f".repeat(fillerLength);
+            Path file = write(HEADER + "\n" + filler + "\n" + record + "com/example/Calculator:divide:(II)I\n");
+
+            assertEquals("cut " + cut, Arrays.asList(HEADER, filler, METHOD, "com/example/Calculator:divide:(II)I"),
+                    read(file));
+        }
+    }
+
+    @Test
+    public void randomRecordsAcrossSeveralBuffers() throws IOException {
+        Random random = new Random(5);
+        for (int round = 0; round < 20; round++) {
+            StringBuilder content = new StringBuilder(HEADER).append('\n');
+            List<String> expected = new ArrayList<>(Collections.singletonList(HEADER));
+            while (content.length() < 3 * TextCoverageReader.CHUNK_SIZE) {
+                String method = "com/example/Generated" + expected.size() + ":" + "m".repeat(random.nextInt(400))
+                        + ":()V";
+                content.append(method).append(random.nextBoolean() ? "\r\n" : "\n");
+                expected.add(method);
+                if (random.nextInt(10) == 0) {
+                    // ** Blank lines carry no method
+                    content.append('\n');
+                }
+            }
+            // ** Last record without a line break
+            content.append(METHOD);
+            expected.add(METHOD);
+
+            assertEquals("round " + round, expected, read(write(content.toString())));
+        }
+    }
+
+    @Test
+    public void lineLongerThanTheReadBufferGrowsTheCarry() throws IOException {
+        String longMethod = "com/example/Long:" + "x".repeat(2 * TextCoverageReader.CHUNK_SIZE + 100) + ":()V";
+        Path file = write(HEADER + "\n" + METHOD + "\n" + longMethod + "\n" + METHOD + "\n");
+
+        assertEquals(Arrays.asList(HEADER, METHOD, longMethod, METHOD), read(file));
+    }
+
+    @Test
+    public void rejectedOrMalformedHeaderSkipsTheMethods() throws IOException {
+        String methods = "\n" + METHOD + "\n" + "y".repeat(TextCoverageReader.CHUNK_SIZE) + "\n";
+        List<String> skipped = new ArrayList<>();
+        reader.read(write("CalculatorTest.testAdd false" + methods), new TextCoverageReader.LineVisitor() {
+            @Override
+            public boolean visitHeader(String testName, boolean passed) {
+                skipped.add(testName + " " + passed);
+                return false;
+            }
+
+            @Override
+            public void visitMethod(byte[] bytes, int offset, int length) {
+                skipped.add(new String(bytes, offset, length, StandardCharsets.UTF_8));
+            }
+        });
+        assertEquals(Collections.singletonList("CalculatorTest.testAdd false"), skipped);
+
+        assertEquals(Collections.emptyList(), read(write("CalculatorTest testAdd true" + methods)));
+    }
+
+    // ** The header as "testName result", then the method lines
+    private List<String> read(Path file) throws IOException {
+        List<String> lines = new ArrayList<>();
+        reader.read(file, new TextCoverageReader.LineVisitor() {
+            @Override
+            public boolean visitHeader(String testName, boolean passed) {
+                lines.add(testName + " " + passed);
+                return true;
+            }
+
+            @Override
+            public void visitMethod(byte[] bytes, int offset, int length) {
+                lines.add(new String(bytes, offset, length, StandardCharsets.UTF_8));
+            }
+        });
+        return lines;
+    }
+
+    private Path write(String content) throws IOException {
+        Path file = folder.getRoot().toPath().resolve("CalculatorTest.testAdd.txt");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}